@@ -26,6 +26,22 @@ dependencies {
     implementation(libs.kotlin.reflect)
 
     compileOnly(files(project.rootProject.file("android_sdk/xposed-api-82.jar")))
+
+    testImplementation(libs.junit)
+    testImplementation(libs.jmh.core)
+    testAnnotationProcessor(libs.jmh.generator.annprocess)
+    // XmlUtils links against the SDK, kxml2 parses for it on the JVM.
+    testImplementation(project(":android_framework:hidden-api"))
+    testImplementation(libs.kxml2)
+}
+
+// Run the JMH benchmarks under src/test, e.g. -Pjmh.includes=JsonObjectSetRepoFlushBenchmark
+val jmh by tasks.registering(JavaExec::class) {
+    group = "benchmark"
+    dependsOn("testClasses")
+    classpath = sourceSets.test.get().runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    args((findProperty("jmh.includes") as String?) ?: ".*Benchmark")
 }
 
 
@@ -506,6 +506,11 @@ public class ActivityManager {
         return server.getRecentTaskExcludeSettingForPackage(pkg);
     }
 
+    @SneakyThrows
+    public RecentTaskExcludeVerdicts getRecentTaskExcludeSettingForPackages(List<Pkg> pkgs) {
+        return server.getRecentTaskExcludeSettingForPackages(pkgs);
+    }
+
     @SneakyThrows
     @Deprecated
     public void setRecentTaskExcludeSettingForPackage(String pkgName, int setting) {
@@ -0,0 +1,249 @@
+package github.tornaco.android.thanos.core.app;
+
+import android.content.IntentFilter;
+import android.os.IBinder;
+import android.os.IInterface;
+import android.os.ParcelFileDescriptor;
+import android.os.RemoteException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import github.tornaco.android.thanos.core.IPluginLogger;
+import github.tornaco.android.thanos.core.IThanos;
+import github.tornaco.android.thanos.core.app.activity.IActivityStackSupervisor;
+import github.tornaco.android.thanos.core.app.event.IEventSubscriber;
+import github.tornaco.android.thanos.core.app.infinite.InfiniteZ;
+import github.tornaco.android.thanos.core.app.usage.IUsageStatsManager;
+import github.tornaco.android.thanos.core.audio.IAudioManager;
+import github.tornaco.android.thanos.core.backup.IBackupAgent;
+import github.tornaco.android.thanos.core.input.IInputManager;
+import github.tornaco.android.thanos.core.n.INotificationManager;
+import github.tornaco.android.thanos.core.net.INetworkManager;
+import github.tornaco.android.thanos.core.ops.IOps;
+import github.tornaco.android.thanos.core.os.IServiceManager;
+import github.tornaco.android.thanos.core.plus.IRS;
+import github.tornaco.android.thanos.core.pm.IPkgManager;
+import github.tornaco.android.thanos.core.power.IPowerManager;
+import github.tornaco.android.thanos.core.pref.IPrefManager;
+import github.tornaco.android.thanos.core.profile.IProfileManager;
+import github.tornaco.android.thanos.core.push.IPushManager;
+import github.tornaco.android.thanos.core.push.wechat.IPushDelegateManager;
+import github.tornaco.android.thanos.core.secure.IPrivacyManager;
+import github.tornaco.android.thanos.core.secure.ops.IAppOpsService;
+import github.tornaco.android.thanos.core.wm.IWindowManager;
+
+/**
+ * {@link IThanos} of a remote server, with sub services and the server answer cached,
+ * so {@link ThanosManager} getters called in loops cost no transaction after the first one.
+ * <p>
+ * A cached binder lives as long as the server, {@link ThanosManagerNative} drops this
+ * whole object when the server dies.
+ */
+final class CachedThanos implements IThanos {
+
+    private interface RemoteGetter<T> {
+        T get() throws RemoteException;
+    }
+
+    private final IThanos remote;
+    private final Map<String, IInterface> services = new ConcurrentHashMap<>();
+    private volatile String whoAreYou;
+
+    CachedThanos(IThanos remote) {
+        this.remote = remote;
+    }
+
+    void clear() {
+        services.clear();
+        whoAreYou = null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends IInterface> T cached(String name, RemoteGetter<T> getter) throws RemoteException {
+        T service = (T) services.get(name);
+        if (service == null) {
+            service = getter.get();
+            if (service != null) {
+                services.put(name, service);
+            }
+        }
+        return service;
+    }
+
+    @Override
+    public IBinder asBinder() {
+        return remote.asBinder();
+    }
+
+    @Override
+    public IServiceManager getServiceManager() throws RemoteException {
+        return cached("getServiceManager", remote::getServiceManager);
+    }
+
+    @Override
+    public IPrefManager getPrefManager() throws RemoteException {
+        return cached("getPrefManager", remote::getPrefManager);
+    }
+
+    @Override
+    public IActivityManager getActivityManager() throws RemoteException {
+        return cached("getActivityManager", remote::getActivityManager);
+    }
+
+    @Override
+    public IPkgManager getPkgManager() throws RemoteException {
+        return cached("getPkgManager", remote::getPkgManager);
+    }
+
+    @Override
+    public IActivityStackSupervisor getActivityStackSupervisor() throws RemoteException {
+        return cached("getActivityStackSupervisor", remote::getActivityStackSupervisor);
+    }
+
+    @Override
+    public IPrivacyManager getPrivacyManager() throws RemoteException {
+        return cached("getPrivacyManager", remote::getPrivacyManager);
+    }
+
+    @Override
+    public IAppOpsService getAppOpsService() throws RemoteException {
+        return cached("getAppOpsService", remote::getAppOpsService);
+    }
+
+    @Override
+    public IPushManager getPushManager() throws RemoteException {
+        return cached("getPushManager", remote::getPushManager);
+    }
+
+    @Override
+    public INotificationManager getNotificationManager() throws RemoteException {
+        return cached("getNotificationManager", remote::getNotificationManager);
+    }
+
+    @Override
+    public IAudioManager getAudioManager() throws RemoteException {
+        return cached("getAudioManager", remote::getAudioManager);
+    }
+
+    @Override
+    public IProfileManager getProfileManager() throws RemoteException {
+        return cached("getProfileManager", remote::getProfileManager);
+    }
+
+    @Override
+    public IBackupAgent getBackupAgent() throws RemoteException {
+        return cached("getBackupAgent", remote::getBackupAgent);
+    }
+
+    @Override
+    public IWindowManager getWindowManager() throws RemoteException {
+        return cached("getWindowManager", remote::getWindowManager);
+    }
+
+    @Override
+    public IPowerManager getPowerManager() throws RemoteException {
+        return cached("getPowerManager", remote::getPowerManager);
+    }
+
+    @Override
+    public IInputManager getInputManager() throws RemoteException {
+        return cached("getInputManager", remote::getInputManager);
+    }
+
+    @Override
+    public void registerEventSubscriber(IntentFilter filter, IEventSubscriber subscriber) throws RemoteException {
+        remote.registerEventSubscriber(filter, subscriber);
+    }
+
+    @Override
+    public void unRegisterEventSubscriber(IEventSubscriber subscriber) throws RemoteException {
+        remote.unRegisterEventSubscriber(subscriber);
+    }
+
+    @Override
+    public String fingerPrint() throws RemoteException {
+        return remote.fingerPrint();
+    }
+
+    @Override
+    public String getVersionName() throws RemoteException {
+        return remote.getVersionName();
+    }
+
+    @Override
+    public String whoAreYou() throws RemoteException {
+        String answer = whoAreYou;
+        if (answer == null) {
+            answer = remote.whoAreYou();
+            whoAreYou = answer;
+        }
+        return answer;
+    }
+
+    @Override
+    public boolean isLoggingEnabled() throws RemoteException {
+        return remote.isLoggingEnabled();
+    }
+
+    @Override
+    public void setLoggingEnabled(boolean enable) throws RemoteException {
+        remote.setLoggingEnabled(enable);
+    }
+
+    @Override
+    public boolean hasFeature(String feature) throws RemoteException {
+        return remote.hasFeature(feature);
+    }
+
+    @Override
+    public boolean hasFrameworkInitializeError() throws RemoteException {
+        return remote.hasFrameworkInitializeError();
+    }
+
+    @Override
+    public IPluginLogger getPluginLogger(String pluginAlias) throws RemoteException {
+        return remote.getPluginLogger(pluginAlias);
+    }
+
+    @Override
+    public InfiniteZ getInfiniteZ() throws RemoteException {
+        return cached("getInfiniteZ", remote::getInfiniteZ);
+    }
+
+    @Override
+    public List<String> getPatchingSource() throws RemoteException {
+        return remote.getPatchingSource();
+    }
+
+    @Override
+    public IRS getRS() throws RemoteException {
+        return cached("getRS", remote::getRS);
+    }
+
+    @Override
+    public IUsageStatsManager getUsageStatsManager() throws RemoteException {
+        return cached("getUsageStatsManager", remote::getUsageStatsManager);
+    }
+
+    @Override
+    public IPushDelegateManager getPushDelegateManager() throws RemoteException {
+        return cached("getPushDelegateManager", remote::getPushDelegateManager);
+    }
+
+    @Override
+    public INetworkManager getNetworkManager() throws RemoteException {
+        return cached("getNetworkManager", remote::getNetworkManager);
+    }
+
+    @Override
+    public IOps getOpsManager() throws RemoteException {
+        return cached("getOpsManager", remote::getOpsManager);
+    }
+
+    @Override
+    public void writeLogsTo(ParcelFileDescriptor pfd) throws RemoteException {
+        remote.writeLogsTo(pfd);
+    }
+}
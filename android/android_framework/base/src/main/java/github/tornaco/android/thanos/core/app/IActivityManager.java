@@ -529,6 +529,24 @@ public interface IActivityManager extends android.os.IInterface
     @Override public void setSmartStandByUnbindServiceEnabled(boolean enable) throws android.os.RemoteException
     {
     }
+    @Override public github.tornaco.android.thanos.core.app.RecentTaskExcludeVerdicts getRecentTaskExcludeSettingForPackages(java.util.List<github.tornaco.android.thanos.core.pm.Pkg> pkgs) throws android.os.RemoteException
+    {
+      return null;
+    }
+    @Override public long registerProviderVerdictChangeListener(github.tornaco.android.thanos.core.app.IProviderVerdictChangeListener listener) throws android.os.RemoteException
+    {
+      return 0L;
+    }
+    @Override public void unRegisterProviderVerdictChangeListener(github.tornaco.android.thanos.core.app.IProviderVerdictChangeListener listener) throws android.os.RemoteException
+    {
+    }
+    @Override public long registerBroadcastVerdictChangeListener(github.tornaco.android.thanos.core.app.IBroadcastVerdictChangeListener listener) throws android.os.RemoteException
+    {
+      return 0L;
+    }
+    @Override public void unRegisterBroadcastVerdictChangeListener(github.tornaco.android.thanos.core.app.IBroadcastVerdictChangeListener listener) throws android.os.RemoteException
+    {
+    }
     @Override
     public android.os.IBinder asBinder() {
       return null;
@@ -1760,6 +1778,49 @@ public interface IActivityManager extends android.os.IInterface
           reply.writeNoException();
           break;
         }
+        case TRANSACTION_getRecentTaskExcludeSettingForPackages:
+        {
+          java.util.List<github.tornaco.android.thanos.core.pm.Pkg> _arg0;
+          _arg0 = data.createTypedArrayList(github.tornaco.android.thanos.core.pm.Pkg.CREATOR);
+          github.tornaco.android.thanos.core.app.RecentTaskExcludeVerdicts _result = this.getRecentTaskExcludeSettingForPackages(_arg0);
+          reply.writeNoException();
+          _Parcel.writeTypedObject(reply, _result, android.os.Parcelable.PARCELABLE_WRITE_RETURN_VALUE);
+          break;
+        }
+        case TRANSACTION_registerProviderVerdictChangeListener:
+        {
+          github.tornaco.android.thanos.core.app.IProviderVerdictChangeListener _arg0;
+          _arg0 = github.tornaco.android.thanos.core.app.IProviderVerdictChangeListener.Stub.asInterface(data.readStrongBinder());
+          long _result = this.registerProviderVerdictChangeListener(_arg0);
+          reply.writeNoException();
+          reply.writeLong(_result);
+          break;
+        }
+        case TRANSACTION_unRegisterProviderVerdictChangeListener:
+        {
+          github.tornaco.android.thanos.core.app.IProviderVerdictChangeListener _arg0;
+          _arg0 = github.tornaco.android.thanos.core.app.IProviderVerdictChangeListener.Stub.asInterface(data.readStrongBinder());
+          this.unRegisterProviderVerdictChangeListener(_arg0);
+          reply.writeNoException();
+          break;
+        }
+        case TRANSACTION_registerBroadcastVerdictChangeListener:
+        {
+          github.tornaco.android.thanos.core.app.IBroadcastVerdictChangeListener _arg0;
+          _arg0 = github.tornaco.android.thanos.core.app.IBroadcastVerdictChangeListener.Stub.asInterface(data.readStrongBinder());
+          long _result = this.registerBroadcastVerdictChangeListener(_arg0);
+          reply.writeNoException();
+          reply.writeLong(_result);
+          break;
+        }
+        case TRANSACTION_unRegisterBroadcastVerdictChangeListener:
+        {
+          github.tornaco.android.thanos.core.app.IBroadcastVerdictChangeListener _arg0;
+          _arg0 = github.tornaco.android.thanos.core.app.IBroadcastVerdictChangeListener.Stub.asInterface(data.readStrongBinder());
+          this.unRegisterBroadcastVerdictChangeListener(_arg0);
+          reply.writeNoException();
+          break;
+        }
         default:
         {
           return super.onTransact(code, data, reply, flags);
@@ -4129,6 +4190,90 @@ public interface IActivityManager extends android.os.IInterface
           _data.recycle();
         }
       }
+      @Override public github.tornaco.android.thanos.core.app.RecentTaskExcludeVerdicts getRecentTaskExcludeSettingForPackages(java.util.List<github.tornaco.android.thanos.core.pm.Pkg> pkgs) throws android.os.RemoteException
+      {
+        android.os.Parcel _data = android.os.Parcel.obtain();
+        android.os.Parcel _reply = android.os.Parcel.obtain();
+        github.tornaco.android.thanos.core.app.RecentTaskExcludeVerdicts _result;
+        try {
+          _data.writeInterfaceToken(DESCRIPTOR);
+          _Parcel.writeTypedList(_data, pkgs, 0);
+          boolean _status = mRemote.transact(Stub.TRANSACTION_getRecentTaskExcludeSettingForPackages, _data, _reply, 0);
+          _reply.readException();
+          _result = _Parcel.readTypedObject(_reply, github.tornaco.android.thanos.core.app.RecentTaskExcludeVerdicts.CREATOR);
+        }
+        finally {
+          _reply.recycle();
+          _data.recycle();
+        }
+        return _result;
+      }
+      @Override public long registerProviderVerdictChangeListener(github.tornaco.android.thanos.core.app.IProviderVerdictChangeListener listener) throws android.os.RemoteException
+      {
+        android.os.Parcel _data = android.os.Parcel.obtain();
+        android.os.Parcel _reply = android.os.Parcel.obtain();
+        long _result;
+        try {
+          _data.writeInterfaceToken(DESCRIPTOR);
+          _data.writeStrongInterface(listener);
+          boolean _status = mRemote.transact(Stub.TRANSACTION_registerProviderVerdictChangeListener, _data, _reply, 0);
+          _reply.readException();
+          _result = _reply.readLong();
+        }
+        finally {
+          _reply.recycle();
+          _data.recycle();
+        }
+        return _result;
+      }
+      @Override public void unRegisterProviderVerdictChangeListener(github.tornaco.android.thanos.core.app.IProviderVerdictChangeListener listener) throws android.os.RemoteException
+      {
+        android.os.Parcel _data = android.os.Parcel.obtain();
+        android.os.Parcel _reply = android.os.Parcel.obtain();
+        try {
+          _data.writeInterfaceToken(DESCRIPTOR);
+          _data.writeStrongInterface(listener);
+          boolean _status = mRemote.transact(Stub.TRANSACTION_unRegisterProviderVerdictChangeListener, _data, _reply, 0);
+          _reply.readException();
+        }
+        finally {
+          _reply.recycle();
+          _data.recycle();
+        }
+      }
+      @Override public long registerBroadcastVerdictChangeListener(github.tornaco.android.thanos.core.app.IBroadcastVerdictChangeListener listener) throws android.os.RemoteException
+      {
+        android.os.Parcel _data = android.os.Parcel.obtain();
+        android.os.Parcel _reply = android.os.Parcel.obtain();
+        long _result;
+        try {
+          _data.writeInterfaceToken(DESCRIPTOR);
+          _data.writeStrongInterface(listener);
+          boolean _status = mRemote.transact(Stub.TRANSACTION_registerBroadcastVerdictChangeListener, _data, _reply, 0);
+          _reply.readException();
+          _result = _reply.readLong();
+        }
+        finally {
+          _reply.recycle();
+          _data.recycle();
+        }
+        return _result;
+      }
+      @Override public void unRegisterBroadcastVerdictChangeListener(github.tornaco.android.thanos.core.app.IBroadcastVerdictChangeListener listener) throws android.os.RemoteException
+      {
+        android.os.Parcel _data = android.os.Parcel.obtain();
+        android.os.Parcel _reply = android.os.Parcel.obtain();
+        try {
+          _data.writeInterfaceToken(DESCRIPTOR);
+          _data.writeStrongInterface(listener);
+          boolean _status = mRemote.transact(Stub.TRANSACTION_unRegisterBroadcastVerdictChangeListener, _data, _reply, 0);
+          _reply.readException();
+        }
+        finally {
+          _reply.recycle();
+          _data.recycle();
+        }
+      }
     }
     static final int TRANSACTION_getCurrentFrontApp = (android.os.IBinder.FIRST_CALL_TRANSACTION + 0);
     static final int TRANSACTION_forceStopPackage = (android.os.IBinder.FIRST_CALL_TRANSACTION + 1);
@@ -4268,6 +4413,11 @@ public interface IActivityManager extends android.os.IInterface
     static final int TRANSACTION_getPkgRecentTaskBlurMode = (android.os.IBinder.FIRST_CALL_TRANSACTION + 135);
     static final int TRANSACTION_isSmartStandByUnbindServiceEnabled = (android.os.IBinder.FIRST_CALL_TRANSACTION + 136);
     static final int TRANSACTION_setSmartStandByUnbindServiceEnabled = (android.os.IBinder.FIRST_CALL_TRANSACTION + 137);
+    static final int TRANSACTION_getRecentTaskExcludeSettingForPackages = (android.os.IBinder.FIRST_CALL_TRANSACTION + 138);
+    static final int TRANSACTION_registerProviderVerdictChangeListener = (android.os.IBinder.FIRST_CALL_TRANSACTION + 139);
+    static final int TRANSACTION_unRegisterProviderVerdictChangeListener = (android.os.IBinder.FIRST_CALL_TRANSACTION + 140);
+    static final int TRANSACTION_registerBroadcastVerdictChangeListener = (android.os.IBinder.FIRST_CALL_TRANSACTION + 141);
+    static final int TRANSACTION_unRegisterBroadcastVerdictChangeListener = (android.os.IBinder.FIRST_CALL_TRANSACTION + 142);
   }
   /** @hide */
   public static final java.lang.String DESCRIPTOR = "github.tornaco.android.thanos.core.app.IActivityManager";
@@ -4430,6 +4580,11 @@ public interface IActivityManager extends android.os.IInterface
   public int getPkgRecentTaskBlurMode(github.tornaco.android.thanos.core.pm.Pkg pkg) throws android.os.RemoteException;
   public boolean isSmartStandByUnbindServiceEnabled() throws android.os.RemoteException;
   public void setSmartStandByUnbindServiceEnabled(boolean enable) throws android.os.RemoteException;
+  public github.tornaco.android.thanos.core.app.RecentTaskExcludeVerdicts getRecentTaskExcludeSettingForPackages(java.util.List<github.tornaco.android.thanos.core.pm.Pkg> pkgs) throws android.os.RemoteException;
+  public long registerProviderVerdictChangeListener(github.tornaco.android.thanos.core.app.IProviderVerdictChangeListener listener) throws android.os.RemoteException;
+  public void unRegisterProviderVerdictChangeListener(github.tornaco.android.thanos.core.app.IProviderVerdictChangeListener listener) throws android.os.RemoteException;
+  public long registerBroadcastVerdictChangeListener(github.tornaco.android.thanos.core.app.IBroadcastVerdictChangeListener listener) throws android.os.RemoteException;
+  public void unRegisterBroadcastVerdictChangeListener(github.tornaco.android.thanos.core.app.IBroadcastVerdictChangeListener listener) throws android.os.RemoteException;
   /** @hide */
   static class _Parcel {
     static private <T> T readTypedObject(
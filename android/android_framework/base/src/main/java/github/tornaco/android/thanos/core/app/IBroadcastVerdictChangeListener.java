@@ -0,0 +1,134 @@
+/*
+ * This file is auto-generated.  DO NOT MODIFY.
+ * Using: /home/tornaco/Android/Sdk/build-tools/35.0.0/aidl -I/home/tornaco/Documents/Thanox/android/android_framework/base/src/main/java -p/home/tornaco/Documents/Thanox/android/android_sdk/framework.aidl -p/home/tornaco/Documents/Thanox/android/android_sdk/thanos.aidl /home/tornaco/Documents/Thanox/android/android_framework/base/src/main/java/github/tornaco/android/thanos/core/app/IBroadcastVerdictChangeListener.aidl
+ */
+package github.tornaco.android.thanos.core.app;
+public interface IBroadcastVerdictChangeListener extends android.os.IInterface
+{
+  /** Default implementation for IBroadcastVerdictChangeListener. */
+  public static class Default implements github.tornaco.android.thanos.core.app.IBroadcastVerdictChangeListener
+  {
+    @Override public void onBroadcastVerdictChanged(long generation) throws android.os.RemoteException
+    {
+    }
+    @Override public void dump(github.tornaco.android.thanos.core.IPrinter p) throws android.os.RemoteException
+    {
+    }
+    @Override
+    public android.os.IBinder asBinder() {
+      return null;
+    }
+  }
+  /** Local-side IPC implementation stub class. */
+  public static abstract class Stub extends android.os.Binder implements github.tornaco.android.thanos.core.app.IBroadcastVerdictChangeListener
+  {
+    /** Construct the stub at attach it to the interface. */
+    @SuppressWarnings("this-escape")
+    public Stub()
+    {
+      this.attachInterface(this, DESCRIPTOR);
+    }
+    /**
+     * Cast an IBinder object into an github.tornaco.android.thanos.core.app.IBroadcastVerdictChangeListener interface,
+     * generating a proxy if needed.
+     */
+    public static github.tornaco.android.thanos.core.app.IBroadcastVerdictChangeListener asInterface(android.os.IBinder obj)
+    {
+      if ((obj==null)) {
+        return null;
+      }
+      android.os.IInterface iin = obj.queryLocalInterface(DESCRIPTOR);
+      if (((iin!=null)&&(iin instanceof github.tornaco.android.thanos.core.app.IBroadcastVerdictChangeListener))) {
+        return ((github.tornaco.android.thanos.core.app.IBroadcastVerdictChangeListener)iin);
+      }
+      return new github.tornaco.android.thanos.core.app.IBroadcastVerdictChangeListener.Stub.Proxy(obj);
+    }
+    @Override public android.os.IBinder asBinder()
+    {
+      return this;
+    }
+    @Override public boolean onTransact(int code, android.os.Parcel data, android.os.Parcel reply, int flags) throws android.os.RemoteException
+    {
+      java.lang.String descriptor = DESCRIPTOR;
+      if (code >= android.os.IBinder.FIRST_CALL_TRANSACTION && code <= android.os.IBinder.LAST_CALL_TRANSACTION) {
+        data.enforceInterface(descriptor);
+      }
+      if (code == INTERFACE_TRANSACTION) {
+        reply.writeString(descriptor);
+        return true;
+      }
+      switch (code)
+      {
+        case TRANSACTION_onBroadcastVerdictChanged:
+        {
+          long _arg0;
+          _arg0 = data.readLong();
+          this.onBroadcastVerdictChanged(_arg0);
+          break;
+        }
+        case TRANSACTION_dump:
+        {
+          github.tornaco.android.thanos.core.IPrinter _arg0;
+          _arg0 = github.tornaco.android.thanos.core.IPrinter.Stub.asInterface(data.readStrongBinder());
+          this.dump(_arg0);
+          reply.writeNoException();
+          break;
+        }
+        default:
+        {
+          return super.onTransact(code, data, reply, flags);
+        }
+      }
+      return true;
+    }
+    private static class Proxy implements github.tornaco.android.thanos.core.app.IBroadcastVerdictChangeListener
+    {
+      private android.os.IBinder mRemote;
+      Proxy(android.os.IBinder remote)
+      {
+        mRemote = remote;
+      }
+      @Override public android.os.IBinder asBinder()
+      {
+        return mRemote;
+      }
+      public java.lang.String getInterfaceDescriptor()
+      {
+        return DESCRIPTOR;
+      }
+      @Override public void onBroadcastVerdictChanged(long generation) throws android.os.RemoteException
+      {
+        android.os.Parcel _data = android.os.Parcel.obtain();
+        try {
+          _data.writeInterfaceToken(DESCRIPTOR);
+          _data.writeLong(generation);
+          boolean _status = mRemote.transact(Stub.TRANSACTION_onBroadcastVerdictChanged, _data, null, android.os.IBinder.FLAG_ONEWAY);
+        }
+        finally {
+          _data.recycle();
+        }
+      }
+      @Override public void dump(github.tornaco.android.thanos.core.IPrinter p) throws android.os.RemoteException
+      {
+        android.os.Parcel _data = android.os.Parcel.obtain();
+        android.os.Parcel _reply = android.os.Parcel.obtain();
+        try {
+          _data.writeInterfaceToken(DESCRIPTOR);
+          _data.writeStrongInterface(p);
+          boolean _status = mRemote.transact(Stub.TRANSACTION_dump, _data, _reply, 0);
+          _reply.readException();
+        }
+        finally {
+          _reply.recycle();
+          _data.recycle();
+        }
+      }
+    }
+    static final int TRANSACTION_onBroadcastVerdictChanged = (android.os.IBinder.FIRST_CALL_TRANSACTION + 0);
+    static final int TRANSACTION_dump = (android.os.IBinder.FIRST_CALL_TRANSACTION + 1);
+  }
+  /** @hide */
+  public static final java.lang.String DESCRIPTOR = "github.tornaco.android.thanos.core.app.IBroadcastVerdictChangeListener";
+  public void onBroadcastVerdictChanged(long generation) throws android.os.RemoteException;
+  public void dump(github.tornaco.android.thanos.core.IPrinter p) throws android.os.RemoteException;
+}
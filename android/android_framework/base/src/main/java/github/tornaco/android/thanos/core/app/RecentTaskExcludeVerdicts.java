@@ -0,0 +1,61 @@
+package github.tornaco.android.thanos.core.app;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import java.util.Arrays;
+
+import github.tornaco.android.thanos.core.annotation.Keep;
+import github.tornaco.android.thanos.core.pm.Pkg;
+
+/**
+ * Answer of {@link IActivityManager#getRecentTaskExcludeSettingForPackages}, in one transaction.
+ */
+@Keep
+public class RecentTaskExcludeVerdicts implements Parcelable {
+    // Nullable.
+    public Pkg frontPkg;
+    // One of ActivityManager.ExcludeRecentSetting, settings[i] is for pkgs[i] of the query.
+    public int[] settings;
+
+    public RecentTaskExcludeVerdicts(Pkg frontPkg, int[] settings) {
+        this.frontPkg = frontPkg;
+        this.settings = settings;
+    }
+
+    protected RecentTaskExcludeVerdicts(Parcel in) {
+        frontPkg = in.readParcelable(Pkg.class.getClassLoader());
+        settings = in.createIntArray();
+    }
+
+    public static final Creator<RecentTaskExcludeVerdicts> CREATOR = new Creator<RecentTaskExcludeVerdicts>() {
+        @Override
+        public RecentTaskExcludeVerdicts createFromParcel(Parcel in) {
+            return new RecentTaskExcludeVerdicts(in);
+        }
+
+        @Override
+        public RecentTaskExcludeVerdicts[] newArray(int size) {
+            return new RecentTaskExcludeVerdicts[size];
+        }
+    };
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel parcel, int i) {
+        parcel.writeParcelable(frontPkg, i);
+        parcel.writeIntArray(settings);
+    }
+
+    @Override
+    public String toString() {
+        return "RecentTaskExcludeVerdicts{" +
+                "frontPkg=" + frontPkg +
+                ", settings=" + Arrays.toString(settings) +
+                '}';
+    }
+}
@@ -15,7 +15,6 @@ import com.elvishew.xlog.XLog;
 
 import github.tornaco.android.thanos.core.IThanos;
 import github.tornaco.android.thanos.core.T;
-import util.Singleton;
 
 public class ThanosManagerNative {
     private static IThanos localService;
@@ -25,59 +24,99 @@ public class ThanosManagerNative {
         ThanosManagerNative.localService = localService;
     }
 
-    private static final Singleton<IThanos> sIThanosSingleton = new Singleton<>() {
-        @Override
-        protected IThanos create() {
-            if (localService != null) {
-                return localService;
-            }
+    private static final Object sLock = new Object();
+    private static volatile IThanos sThanos;
+
+    private static IThanos createRemote() {
+        IThanos thanos = IThanos.Stub.asInterface(
+                ServiceManager.getService(T.serviceInstallName()));
+        if (thanos != null) {
+            return thanos;
+        }
 
-            IThanos thanos = IThanos.Stub.asInterface(
-                    ServiceManager.getService(T.serviceInstallName()));
+        try {
+            IAppWidgetService appWidgetService = IAppWidgetService.Stub.asInterface(ServiceManager.getService(Context.APPWIDGET_SERVICE));
+            ParceledListSlice list = appWidgetService.startListening(null, "thanox", 6, new int[]{2, 0, 2, 3});
+            XLog.d("IAppWidgetService thanox list: " + list);
+            Bundle bundle = (Bundle) list.getList().get(0);
+            IBinder thanox = bundle.getBinder("thanox-binder");
+            XLog.d("IAppWidgetService thanox binder: " + thanox);
+            thanos = IThanos.Stub.asInterface(thanox);
             if (thanos != null) {
                 return thanos;
             }
+        } catch (Throwable e) {
+            XLog.e(e, "call IAppWidgetService");
+        }
 
-            try {
-                IAppWidgetService appWidgetService = IAppWidgetService.Stub.asInterface(ServiceManager.getService(Context.APPWIDGET_SERVICE));
-                ParceledListSlice list = appWidgetService.startListening(null, "thanox", 6, new int[]{2, 0, 2, 3});
-                XLog.d("IAppWidgetService thanox list: " + list);
-                Bundle bundle = (Bundle) list.getList().get(0);
-                IBinder thanox = bundle.getBinder("thanox-binder");
-                XLog.d("IAppWidgetService thanox binder: " + thanox);
-                thanos = IThanos.Stub.asInterface(thanox);
-                if (thanos != null) {
-                    return thanos;
-                }
-            } catch (Throwable e) {
-                XLog.e(e, "call IAppWidgetService");
+        Parcel data = Parcel.obtain();
+        Parcel reply = Parcel.obtain();
+        try {
+            IBinder backup = ServiceManager.getService(PROXIED_ANDROID_SERVICE_NAME);
+            if (backup == null) {
+                XLog.w("Get Thanos from IPC_TRANS_CODE_THANOS_SERVER, service is null.");
+                return null;
             }
+            data.writeInterfaceToken(IThanos.class.getName());
+            backup.transact(ThanosManager.IPC_TRANS_CODE_THANOS_SERVER, data, reply, 0);
+            IBinder binder = reply.readStrongBinder();
+            XLog.d("Get Thanos from IPC_TRANS_CODE_THANOS_SERVER: %s", binder);
+            return IThanos.Stub.asInterface(binder);
+        } catch (RemoteException e) {
+            XLog.e("Get Thanos from IPC_TRANS_CODE_THANOS_SERVER err", e);
+        } finally {
+            data.recycle();
+            reply.recycle();
+        }
+        return null;
+    }
 
-            Parcel data = Parcel.obtain();
-            Parcel reply = Parcel.obtain();
-            try {
-                IBinder backup = ServiceManager.getService(PROXIED_ANDROID_SERVICE_NAME);
-                if (backup == null) {
-                    XLog.w("Get Thanos from IPC_TRANS_CODE_THANOS_SERVER, service is null.");
-                    return null;
+    private static IThanos connect() {
+        if (localService != null) {
+            return localService;
+        }
+        IThanos remote = createRemote();
+        if (remote == null) {
+            return null;
+        }
+        IBinder binder = remote.asBinder();
+        CachedThanos cached = new CachedThanos(remote);
+        try {
+            binder.linkToDeath(new IBinder.DeathRecipient() {
+                @Override
+                public void binderDied() {
+                    XLog.w("ThanosManagerNative, server died, drop cached binders.");
+                    binder.unlinkToDeath(this, 0);
+                    cached.clear();
+                    synchronized (sLock) {
+                        if (sThanos == cached) {
+                            sThanos = null;
+                        }
+                    }
                 }
-                data.writeInterfaceToken(IThanos.class.getName());
-                backup.transact(ThanosManager.IPC_TRANS_CODE_THANOS_SERVER, data, reply, 0);
-                IBinder binder = reply.readStrongBinder();
-                XLog.d("Get Thanos from IPC_TRANS_CODE_THANOS_SERVER: %s", binder);
-                return IThanos.Stub.asInterface(binder);
-            } catch (RemoteException e) {
-                XLog.e("Get Thanos from IPC_TRANS_CODE_THANOS_SERVER err", e);
-            } finally {
-                data.recycle();
-                reply.recycle();
-            }
+            }, 0);
+        } catch (RemoteException e) {
+            XLog.w("ThanosManagerNative, server already died.");
             return null;
         }
-    };
+        return cached;
+    }
 
+    /**
+     * For a remote server, sub services got from the returned {@link IThanos} are cached until
+     * the server dies.
+     */
     public static IThanos getDefault() {
-        return sIThanosSingleton.get();
+        IThanos thanos = sThanos;
+        if (thanos != null) {
+            return thanos;
+        }
+        synchronized (sLock) {
+            if (sThanos == null) {
+                sThanos = connect();
+            }
+            return sThanos;
+        }
     }
 
     public static IThanos getLocalService() {
@@ -0,0 +1,185 @@
+package github.tornaco.android.thanos.core.persist;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Iterators;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Immutable string set for persist repos, which mostly hold package names and "pkg|user" keys.
+ * <p>
+ * Elements are kept in a sorted, deduplicated array and interned, so the same package name
+ * loaded by many repos is one string in memory, and equal sets always iterate, and so are
+ * written, in the same order. Lookups go through an open-addressing int index that keeps the
+ * cached {@link String#hashCode()} of each slot, so a miss never touches the strings, and
+ * never allocate.
+ */
+final class CompactStringSet extends AbstractSet<String> {
+
+  static final CompactStringSet EMPTY = new CompactStringSet(new String[0], new int[2], new int[2]);
+
+  // Shared by all repos.
+  private static final Interner<String> INTERNER = Interners.newWeakInterner();
+
+  // Sorted.
+  private final String[] table;
+  // Slot -> position in table + 1, 0 means empty slot.
+  private final int[] index;
+  // Slot -> hash code of the element there.
+  private final int[] hashes;
+
+  private CompactStringSet(String[] table, int[] index, int[] hashes) {
+    this.table = table;
+    this.index = index;
+    this.hashes = hashes;
+  }
+
+  /**
+   * @param table Sorted, distinct and already interned elements.
+   */
+  private static CompactStringSet ofTable(String[] table) {
+    if (table.length == 0) {
+      return EMPTY;
+    }
+    int capacity = tableSizeFor(Math.max(2, table.length * 2));
+    int[] index = new int[capacity];
+    int[] hashes = new int[capacity];
+    int mask = capacity - 1;
+    for (int i = 0; i < table.length; i++) {
+      int slot = find(table, index, hashes, mask, table[i]);
+      index[slot] = i + 1;
+      hashes[slot] = table[i].hashCode();
+    }
+    return new CompactStringSet(table, index, hashes);
+  }
+
+  static CompactStringSet copyOf(Collection<String> elements) {
+    if (elements instanceof CompactStringSet) {
+      return (CompactStringSet) elements;
+    }
+    if (elements.isEmpty()) {
+      return EMPTY;
+    }
+    String[] sorted = new String[elements.size()];
+    int count = 0;
+    for (String s : elements) {
+      if (s != null) {
+        sorted[count++] = INTERNER.intern(s);
+      }
+    }
+    Arrays.sort(sorted, 0, count);
+    // Duplicates are only possible if elements is not a set.
+    int unique = 0;
+    for (int i = 0; i < count; i++) {
+      if (unique == 0 || !sorted[i].equals(sorted[unique - 1])) {
+        sorted[unique++] = sorted[i];
+      }
+    }
+    return ofTable(unique == sorted.length ? sorted : Arrays.copyOf(sorted, unique));
+  }
+
+  /**
+   * Copy of this set with s added, only s is interned, the others are shared with this set.
+   */
+  CompactStringSet with(String s) {
+    int pos = Arrays.binarySearch(table, s);
+    if (pos >= 0) {
+      return this;
+    }
+    pos = -pos - 1;
+    String[] next = new String[table.length + 1];
+    System.arraycopy(table, 0, next, 0, pos);
+    next[pos] = INTERNER.intern(s);
+    System.arraycopy(table, pos, next, pos + 1, table.length - pos);
+    return ofTable(next);
+  }
+
+  /**
+   * Copy of this set with s removed.
+   */
+  CompactStringSet without(String s) {
+    int pos = index[find(table, index, hashes, index.length - 1, s)] - 1;
+    if (pos < 0) {
+      return this;
+    }
+    String[] next = new String[table.length - 1];
+    System.arraycopy(table, 0, next, 0, pos);
+    System.arraycopy(table, pos + 1, next, pos, table.length - pos - 1);
+    return ofTable(next);
+  }
+
+  /**
+   * @return Slot of s in index, or the empty slot to put it.
+   */
+  private static int find(String[] table, int[] index, int[] hashes, int mask, String s) {
+    int hash = s.hashCode();
+    int slot = spread(hash) & mask;
+    int pos;
+    while ((pos = index[slot]) != 0) {
+      if (hashes[slot] == hash) {
+        String element = table[pos - 1];
+        if (element == s || element.equals(s)) {
+          return slot;
+        }
+      }
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return o instanceof String && index[find(table, index, hashes, index.length - 1, (String) o)] != 0;
+  }
+
+  /**
+   * One pass over the same table and index for all elements, instead of a lookup of the
+   * repo snapshot per element.
+   *
+   * @param elements May contain null element.
+   * @return True if any element is in this set.
+   */
+  boolean containsAny(String[] elements) {
+    if (elements == null || table.length == 0) {
+      return false;
+    }
+    String[] table = this.table;
+    int[] index = this.index;
+    int[] hashes = this.hashes;
+    int mask = index.length - 1;
+    for (String s : elements) {
+      if (s != null && index[find(table, index, hashes, mask, s)] != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public Iterator<String> iterator() {
+    return Iterators.forArray(table);
+  }
+
+  @Override
+  public int size() {
+    return table.length;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return table.length == 0;
+  }
+
+  private static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  private static int tableSizeFor(int n) {
+    int size = Integer.highestOneBit(n);
+    return size == n ? size : size << 1;
+  }
+}
@@ -0,0 +1,110 @@
+package github.tornaco.android.thanos.core.persist;
+
+import com.elvishew.xlog.XLog;
+import com.google.common.collect.MapMaker;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import github.tornaco.android.thanos.core.util.GsonUtils;
+import github.tornaco.android.thanos.core.util.function.Supplier;
+
+/**
+ * Json form of {@link JsonObjectSetRepo} elements.
+ * <p>
+ * The json of an element is kept by identity of the element, from the json it was loaded from
+ * or the first time it is written, so a flush only serializes elements added since the last
+ * one. Elements must not be mutated in place, the repo drops the json of an element when it is
+ * removed, a changed element is removed and added again as a new one.
+ */
+final class JsonElementCodec<T> {
+
+    private final Supplier<TypeToken> typeToken;
+    // Weak keys are compared by identity.
+    private final Map<T, String> jsonCache = new MapMaker().weakKeys().makeMap();
+
+    private volatile TypeAdapter<T> typeAdapter;
+
+    JsonElementCodec(Supplier<TypeToken> typeToken) {
+        this.typeToken = typeToken;
+    }
+
+    String toJson(T t) {
+        String json = jsonCache.get(t);
+        if (json == null) {
+            json = GsonUtils.GSON.toJson(t);
+            jsonCache.put(t, json);
+        }
+        return json;
+    }
+
+    T fromJson(String s) {
+        if (s == null) {
+            return null;
+        }
+        try {
+            T box = typeAdapter().fromJson(s);
+            if (box == null) {
+                XLog.w("JsonObjectSetRepo, T is null fromJson: " + s);
+            } else {
+                jsonCache.put(box, s);
+            }
+            return box;
+        } catch (Throwable e) {
+            XLog.w("JsonObjectSetRepo, fail fromJson: " + s, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return Json of each element, serializing only those not seen before.
+     */
+    Set<String> encode(Collection<T> elements) {
+        Set<String> out = new HashSet<>(elements.size() * 4 / 3 + 1);
+        for (T t : elements) {
+            out.add(toJson(t));
+        }
+        return out;
+    }
+
+    /**
+     * @return Elements keyed by the json they are decoded from, in order, broken ones skipped.
+     */
+    Map<String, T> decode(Collection<String> jsons) {
+        Map<String, T> out = new LinkedHashMap<>(jsons.size() * 4 / 3 + 1);
+        for (String s : jsons) {
+            T box = fromJson(s);
+            if (box != null) {
+                out.put(s, box);
+            }
+        }
+        return out;
+    }
+
+    void invalidate(T t) {
+        jsonCache.remove(t);
+    }
+
+    void invalidateAll() {
+        jsonCache.clear();
+    }
+
+    int cachedSize() {
+        return jsonCache.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private TypeAdapter<T> typeAdapter() {
+        TypeAdapter<T> adapter = typeAdapter;
+        if (adapter == null) {
+            adapter = (TypeAdapter<T>) GsonUtils.GSON.getAdapter(typeToken.get());
+            typeAdapter = adapter;
+        }
+        return adapter;
+    }
+}
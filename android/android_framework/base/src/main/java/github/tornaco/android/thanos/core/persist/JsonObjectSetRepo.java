@@ -5,36 +5,44 @@ import android.util.AtomicFile;
 import android.util.Log;
 
 import com.elvishew.xlog.XLog;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.io.Files;
-import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+import github.tornaco.android.thanos.core.annotation.GuardedBy;
 import github.tornaco.android.thanos.core.persist.i.SetRepo;
 import github.tornaco.android.thanos.core.util.FileUtils;
-import github.tornaco.android.thanos.core.util.GsonUtils;
 import github.tornaco.android.thanos.core.util.XmlUtils;
 import github.tornaco.android.thanos.core.util.function.Predicate;
 import lombok.Cleanup;
-import util.CollectionUtils;
+import org.xmlpull.v1.XmlPullParserException;
 
 /**
  * Created by guohao4 on 2017/12/11. Email: Tornaco@163.com
+ * <p>
+ * Elements must not be mutated after they are added, remove the old one and add a new one
+ * instead. The journal only records adds and removes, an element changed in place is written
+ * by the next full snapshot at the earliest.
  */
 
 public abstract class JsonObjectSetRepo<T> implements SetRepo<T> {
 
   private static final int FLUSH_DELAY = 5000;
   private static final int FLUSH_DELAY_FAST = 100;
+  private static final int ESTIMATED_ELEMENT_BYTES = 128;
 
   private static final ExecutorService IO = Executors.newSingleThreadExecutor();
   private Handler mHandler;
@@ -42,10 +50,25 @@ public abstract class JsonObjectSetRepo<T> implements SetRepo<T> {
 
   private AtomicFile mFile;
 
+  private final RepoBackend mBackend;
+  private final RepoJournal mJournal;
+  private final RepoBinarySnapshot mBinarySnapshot;
+  private final RepoStats mStats = new RepoStats();
+  private final JsonElementCodec<T> mCodec = new JsonElementCodec<>(this::onCreateTypeToken);
+  // Write snapshot as binary instead of xml, loading always prefers a valid binary snapshot.
+  private volatile boolean mUseBinarySnapshot;
+
   public JsonObjectSetRepo(File file, Handler handler, ExecutorService service) {
+    this(file, handler, service, RepoBackend.XML);
+  }
+
+  public JsonObjectSetRepo(File file, Handler handler, ExecutorService service, RepoBackend backend) {
     this.mFile = new AtomicFile(file);
     this.mExe = service;
     this.mHandler = handler;
+    this.mBackend = backend;
+    this.mJournal = new RepoJournal(file);
+    this.mBinarySnapshot = new RepoBinarySnapshot(file);
 
     try {
       if (!this.mFile.getBaseFile().exists()) {
@@ -60,49 +83,127 @@ public abstract class JsonObjectSetRepo<T> implements SetRepo<T> {
     reload();
   }
 
-  private final Set<T> mStorage = new HashSet<>();
+  /**
+   * Immutable snapshot of current elements, readers never lock, writers publish a new one.
+   */
+  private volatile ImmutableSet<T> mStorage = ImmutableSet.of();
 
+  // Guard file io.
   private final Object sync = new Object();
+  // Serialize writers of mStorage.
+  private final Object mWriteLock = new Object();
+
+  // Changes not written to journal yet, only used with RepoBackend.JOURNAL.
+  @GuardedBy("mWriteLock")
+  private List<RepoJournal.Op> mPendingOps = new ArrayList<>();
 
   @Override
   public Set<T> getAll() {
     return new HashSet<>(mStorage);
   }
 
-  @SuppressWarnings("unchecked")
+  /**
+   * @return An immutable snapshot of current elements, it will not reflect later changes.
+   */
+  @Override
+  public Set<T> snapshot() {
+    return mStorage;
+  }
+
+  @GuardedBy("mWriteLock")
+  private void publish(Set<T> next) {
+    mStorage = ImmutableSet.copyOf(next);
+  }
+
+  @GuardedBy("mWriteLock")
+  private void recordOp(byte code, T t) {
+    if (mBackend == RepoBackend.JOURNAL) {
+      if (code == RepoJournal.OP_CLEAR) {
+        mPendingOps.clear();
+      }
+      mPendingOps.add(new RepoJournal.Op(code, t == null ? null : mCodec.toJson(t), null));
+    }
+  }
+
   @Override
   public void reload() {
+    long startTime = System.nanoTime();
+    reloadInternal();
+    mStats.onReload(System.nanoTime() - startTime);
+  }
+
+  @SuppressWarnings("unchecked")
+  private void reloadInternal() {
     synchronized (sync) {
+      Collection<String> h = mBinarySnapshot.readSet();
+      if (h != null) {
+        XLog.d("Loaded binary snapshot: " + name());
+      } else {
+        Set<String> xml = new HashSet<>();
+        loadXml(xml);
+        h = xml;
+      }
+
+      // Keyed by json, so replaying does not depend on equals of T.
+      Map<String, T> t = mCodec.decode(h);
+
+      // Changes after the last snapshot.
       try {
+        mJournal.replay((code, key, value) -> {
+          if (code == RepoJournal.OP_ADD) {
+            if (!t.containsKey(key)) {
+              T box = mCodec.fromJson(key);
+              if (box != null) {
+                t.put(key, box);
+              }
+            }
+          } else if (code == RepoJournal.OP_REMOVE) {
+            if (t.remove(key) == null) {
+              // Snapshot holds another json of it, remove it the way remove(T) matched it.
+              T box = mCodec.fromJson(key);
+              if (box != null) {
+                t.values().remove(box);
+              }
+            }
+          } else if (code == RepoJournal.OP_CLEAR) {
+            t.clear();
+          }
+        });
+      } catch (Throwable e) {
+        XLog.w("Fail replay journal: " + mJournal.getFile() + "\n" + Log.getStackTraceString(e));
+      }
 
-        if (!mFile.getBaseFile().exists()) {
-          XLog.w("getBaseFile not exists, skip load: " + name());
-          return;
-        }
+      if (t.isEmpty()) {
+        return;
+      }
+      synchronized (mWriteLock) {
+        Set<T> next = new HashSet<>(mStorage);
+        next.addAll(t.values());
+        publish(next);
+      }
+    }
+  }
 
-        if (mFile.getBaseFile().isDirectory()) {
-          XLog.w("getBaseFile isDirectory, clean up: " + name());
-          FileUtils.deleteDirQuiet(mFile.getBaseFile());
-          mFile.delete();
-        }
+  @SuppressWarnings("unchecked")
+  private void loadXml(Set<String> h) {
+    try {
 
+      if (mFile.getBaseFile().isDirectory()) {
+        XLog.w("getBaseFile isDirectory, clean up: " + name());
+        FileUtils.deleteDirQuiet(mFile.getBaseFile());
+        mFile.delete();
+      }
+
+      if (!mFile.getBaseFile().exists()) {
+        XLog.w("getBaseFile not exists, skip load: " + name());
+      } else {
         @Cleanup
         InputStream inputStream = mFile.openRead();
-        Set<String> h = new HashSet(XmlUtils.readSetXml(inputStream));
-        Set<T> t = new HashSet<>();
-        CollectionUtils.consumeRemaining(h, s -> {
-          T box = GsonUtils.GSON.fromJson(s, onCreateTypeToken().getType());
-          if (box != null) {
-            t.add(box);
-          } else {
-            XLog.w("JsonObjectSetRepo, T is null fromJson: " + s);
-          }
-        });
-        mStorage.addAll(t);
-
-      } catch (Throwable e) {
-        XLog.w("Fail reload@IOException: " + mFile + "\n" + Log.getStackTraceString(e));
+        h.addAll(XmlUtils.readSetXml(inputStream));
       }
+
+    } catch (Throwable e) {
+      XLog.w("Fail reload@IOException: " + mFile + "\n" + Log.getStackTraceString(e));
     }
   }
 
@@ -121,28 +222,111 @@ public abstract class JsonObjectSetRepo<T> implements SetRepo<T> {
   @Override
   public void flush() {
     XLog.i("flush");
+    if (mBackend == RepoBackend.JOURNAL) {
+      flushJournal();
+    } else {
+      writeSnapshot();
+    }
+  }
+
+  private void flushJournal() {
     synchronized (sync) {
+      List<RepoJournal.Op> ops;
+      synchronized (mWriteLock) {
+        ops = mPendingOps;
+        mPendingOps = new ArrayList<>();
+      }
+      if (ops.isEmpty()) {
+        return;
+      }
+      long startTime = System.nanoTime();
+      long lengthBefore = mJournal.length();
       try {
-        Set<String> out = new HashSet<>();
-        Object[] arrLocal = mStorage.toArray();
-        CollectionUtils.consumeRemaining(arrLocal, o -> {
-          String str = GsonUtils.GSON.toJson(o);
-          out.add(str);
-        });
-        @Cleanup
-        FileOutputStream fos = mFile.startWrite();
-        XmlUtils.writeSetXml(out, fos);
-        mFile.finishWrite(fos);
+        mJournal.append(ops);
+        mStats.onFlush(System.nanoTime() - startTime, mJournal.length() - lengthBefore);
+      } catch (Throwable e) {
+        XLog.w("Fail append journal, write snapshot instead: " + mJournal.getFile() + "\n" + Log.getStackTraceString(e));
+        writeSnapshot();
+        return;
+      }
+      if (mJournal.length() > RepoJournal.COMPACT_THRESHOLD_BYTES) {
+        Runnable compact = this::writeSnapshot;
+        if (mExe == null) {
+          IO.execute(compact);
+        } else {
+          mExe.execute(compact);
+        }
+      }
+    }
+  }
+
+  /**
+   * Write all elements to the xml file, and drop the journal that is merged into it.
+   */
+  private void writeSnapshot() {
+    synchronized (sync) {
+      // Read inside sync, so everything already appended to the journal is included.
+      Set<T> snapshot = mStorage;
+      long startTime = System.nanoTime();
+      try {
+        // Only elements added since the last flush are serialized.
+        Set<String> out = mCodec.encode(snapshot);
+        if (mUseBinarySnapshot) {
+          mBinarySnapshot.writeSet(out);
+          // Xml is written on every flush, a corrupted snapshot must not lose data.
+          writeXml(out);
+        } else {
+          // Drop binary snapshot first, a stale one must never shadow the xml.
+          mBinarySnapshot.delete();
+          writeXml(out);
+        }
+        mJournal.delete();
+        mStats.onFlush(System.nanoTime() - startTime,
+            mUseBinarySnapshot ? mBinarySnapshot.getFile().length() : mFile.getBaseFile().length());
       } catch (Throwable e) {
         XLog.w("Fail flush@IOException: " + mFile + "\n" + Log.getStackTraceString(e));
       }
     }
   }
 
+  private void writeXml(Set<String> out) throws XmlPullParserException, IOException {
+    @Cleanup
+    FileOutputStream fos = mFile.startWrite();
+    XmlUtils.writeSetXml(out, fos);
+    mFile.finishWrite(fos);
+  }
+
   private Runnable mFlusher = JsonObjectSetRepo.this::flush;
 
   private Runnable mFlushCaller = this::flushAsync;
 
+  /**
+   * Shared by repos created from {@link RepoFactory}, null means flush by our own handler.
+   */
+  private volatile RepoFlushScheduler mFlushScheduler;
+
+  RepoStats getStats() {
+    return mStats;
+  }
+
+  void setUseBinarySnapshot(boolean useBinarySnapshot) {
+    this.mUseBinarySnapshot = useBinarySnapshot;
+  }
+
+  void setFlushScheduler(RepoFlushScheduler scheduler) {
+    this.mFlushScheduler = scheduler;
+  }
+
+  private void scheduleFlush(int bytes, boolean fast) {
+    RepoFlushScheduler scheduler = mFlushScheduler;
+    if (scheduler != null) {
+      scheduler.markDirty(this, bytes, fast);
+    } else if (mHandler != null) {
+      mHandler.removeCallbacks(mFlushCaller);
+      mHandler.postDelayed(mFlushCaller, fast ? FLUSH_DELAY_FAST : FLUSH_DELAY);
+    }
+  }
+
   @Override
   public void flushAsync() {
     XLog.i("flush async");
@@ -158,10 +342,20 @@ public abstract class JsonObjectSetRepo<T> implements SetRepo<T> {
     if (s == null) {
       return false;
     }
-    boolean added = mStorage.add(s);
-    if (added && mHandler != null) {
-      mHandler.removeCallbacks(mFlushCaller);
-      mHandler.postDelayed(mFlushCaller, FLUSH_DELAY);
+    boolean added;
+    synchronized (mWriteLock) {
+      if (mStorage.contains(s)) {
+        return false;
+      }
+      Set<T> next = new HashSet<>(mStorage);
+      added = next.add(s);
+      publish(next);
+      // It may be a removed element changed and added back.
+      mCodec.invalidate(s);
+      recordOp(RepoJournal.OP_ADD, s);
+    }
+    if (added) {
+      scheduleFlush(ESTIMATED_ELEMENT_BYTES, false);
     }
     return added;
   }
@@ -171,10 +365,22 @@ public abstract class JsonObjectSetRepo<T> implements SetRepo<T> {
     if (c == null) {
       return false;
     }
-    boolean added = mStorage.addAll(c);
-    if (added && mHandler != null) {
-      mHandler.removeCallbacks(mFlushCaller);
-      mHandler.postDelayed(mFlushCaller, FLUSH_DELAY);
+    boolean added;
+    synchronized (mWriteLock) {
+      Set<T> next = new HashSet<>(mStorage);
+      for (T t : c) {
+        if (t != null && next.add(t)) {
+          mCodec.invalidate(t);
+          recordOp(RepoJournal.OP_ADD, t);
+        }
+      }
+      added = next.size() != mStorage.size();
+      if (added) {
+        publish(next);
+      }
+    }
+    if (added) {
+      scheduleFlush(c.size() * ESTIMATED_ELEMENT_BYTES, false);
     }
     return added;
   }
@@ -184,26 +390,41 @@ public abstract class JsonObjectSetRepo<T> implements SetRepo<T> {
     if (s == null) {
       return false;
     }
-    boolean removed = mStorage.remove(s);
-    if (removed && mHandler != null) {
-      mHandler.removeCallbacks(mFlushCaller);
-      mHandler.postDelayed(mFlushCaller, FLUSH_DELAY);
+    synchronized (mWriteLock) {
+      if (!mStorage.contains(s)) {
+        return false;
+      }
+      // Journal the stored element, s may only be equal to it in some fields.
+      T removed = null;
+      Set<T> next = new HashSet<>(mStorage.size());
+      for (T t : mStorage) {
+        if (removed == null && t.equals(s)) {
+          removed = t;
+        } else {
+          next.add(t);
+        }
+      }
+      publish(next);
+      recordOp(RepoJournal.OP_REMOVE, removed);
+      mCodec.invalidate(removed);
     }
-    return removed;
+    scheduleFlush(ESTIMATED_ELEMENT_BYTES, false);
+    return true;
   }
 
   @Override
   public void removeAll() {
-    mStorage.clear();
-    if (mHandler != null) {
-      mHandler.removeCallbacks(mFlushCaller);
-      mHandler.postDelayed(mFlushCaller, FLUSH_DELAY_FAST);
+    synchronized (mWriteLock) {
+      mStorage = ImmutableSet.of();
+      recordOp(RepoJournal.OP_CLEAR, null);
+      mCodec.invalidateAll();
     }
+    scheduleFlush(0, true);
   }
 
   @Override
   public boolean has(T s) {
-    return s != null && !mStorage.isEmpty() && mStorage.contains(s);
+    return s != null && mStorage.contains(s);
   }
 
   @Override
@@ -230,7 +451,7 @@ public abstract class JsonObjectSetRepo<T> implements SetRepo<T> {
 
   @Override
   public T find(Predicate<T> predicate) {
-    for (T element : getAll()) {
+    for (T element : mStorage) {
       if (predicate.test(element)) {
         return element;
       }
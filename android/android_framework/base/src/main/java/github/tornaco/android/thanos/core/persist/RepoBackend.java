@@ -0,0 +1,16 @@
+package github.tornaco.android.thanos.core.persist;
+
+/**
+ * How a repo persists its changes.
+ */
+public enum RepoBackend {
+    /**
+     * Rewrite the whole xml file on every flush.
+     */
+    XML,
+    /**
+     * Append changes to a journal file, and compact them into the xml file
+     * once the journal grows beyond {@link RepoJournal#COMPACT_THRESHOLD_BYTES}.
+     */
+    JOURNAL
+}
@@ -0,0 +1,106 @@
+package github.tornaco.android.thanos.core.persist;
+
+import android.util.AtomicFile;
+
+import com.elvishew.xlog.XLog;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import lombok.Cleanup;
+
+/**
+ * Binary snapshot of a repo, lives next to the xml file as "xxx.bin", see
+ * {@link RepoSnapshotCodec} for the layout.
+ * <p>
+ * Loading maps the file and verifies it, then the repo decodes every string straight from the
+ * mapped buffer into its storage, no xml parser or intermediate document is involved. Decoding
+ * itself is not deferred, a repo needs all strings to build its set or map.
+ * <p>
+ * The snapshot only speeds up loading, xml stays the durable format. Repos write the snapshot
+ * and then the xml on every flush, and drop the journal after both are written, so a corrupted
+ * snapshot falls back to an xml just as recent, which is logged as an error. Writing xml only
+ * deletes the snapshot first, so a valid snapshot is never older than the xml.
+ */
+final class RepoBinarySnapshot {
+
+    private final AtomicFile file;
+
+    RepoBinarySnapshot(File baseFile) {
+        this.file = new AtomicFile(new File(baseFile.getPath() + ".bin"));
+    }
+
+    File getFile() {
+        return file.getBaseFile();
+    }
+
+    boolean exists() {
+        return file.getBaseFile().exists();
+    }
+
+    void delete() {
+        file.delete();
+    }
+
+    void writeSet(Collection<String> elements) throws IOException {
+        write(RepoSnapshotCodec.encodeSet(elements));
+    }
+
+    void writeMap(Map<String, String> entries) throws IOException {
+        write(RepoSnapshotCodec.encodeMap(entries));
+    }
+
+    /**
+     * @return Elements of the snapshot, null if there is no valid snapshot.
+     */
+    List<String> readSet() {
+        return read(RepoSnapshotCodec.KIND_SET);
+    }
+
+    /**
+     * @return Keys and values of the snapshot, key of entry i is at 2i and its
+     * value at 2i + 1, null if there is no valid snapshot.
+     */
+    List<String> readMap() {
+        return read(RepoSnapshotCodec.KIND_MAP);
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        FileOutputStream fos = file.startWrite();
+        try {
+            fos.write(bytes);
+            file.finishWrite(fos);
+        } catch (IOException e) {
+            file.failWrite(fos);
+            throw e;
+        }
+    }
+
+    private List<String> read(byte expectedKind) {
+        if (!exists()) {
+            return null;
+        }
+        try {
+            @Cleanup
+            FileInputStream fis = file.openRead();
+            FileChannel channel = fis.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("bad size " + size);
+            }
+            // The mapping stays valid after the channel is closed.
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return RepoSnapshotCodec.decode(buffer, expectedKind);
+        } catch (IOException e) {
+            XLog.e("RepoBinarySnapshot, invalid %s: %s, fall back to xml", getFile(), e);
+            return null;
+        }
+    }
+}
@@ -2,14 +2,24 @@ package github.tornaco.android.thanos.core.persist;
 
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.RemoteException;
+
+import com.google.common.collect.MapMaker;
+import com.google.common.io.Files;
 
 import java.io.File;
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+import github.tornaco.android.thanos.core.IPrinter;
+import github.tornaco.android.thanos.core.persist.i.Repo;
 import util.Singleton;
 
 public final class RepoFactory {
@@ -26,28 +36,86 @@ public final class RepoFactory {
     private final Map<String, StringMapRepo> stringMapRepoCache = new ConcurrentHashMap<>();
     private final Map<String, StringSetRepo> stringSetRepoCache = new ConcurrentHashMap<>();
     private final Map<String, JsonObjectSetRepo> joSetRepoCache = new ConcurrentHashMap<>();
+    private final Map<String, UserStringSetRepo> userStringSetRepoCache = new ConcurrentHashMap<>();
+    private final Map<String, UserStringMapRepo> userStringMapRepoCache = new ConcurrentHashMap<>();
+    // All repos created, including those not cached, for dump.
+    private final Set<Repo> allRepos = Collections.newSetFromMap(new MapMaker().weakKeys().<Repo, Boolean>makeMap());
     private final Handler repoHandler;
+    private final RepoFlushScheduler flushScheduler;
+
+    private volatile RepoBackend backend = RepoBackend.XML;
+    private volatile boolean binarySnapshotEnabled = false;
+    // Null means no shard is seeded.
+    private volatile UserShardMigration userShardMigration;
 
     private RepoFactory() {
         // Sync in a new handler thread.
         HandlerThread hr = new HandlerThread("RepoFactory");
         hr.start();
         this.repoHandler = new Handler(hr.getLooper());
+        this.flushScheduler = new RepoFlushScheduler(this.repoHandler, IO);
     }
 
     public static RepoFactory get() {
         return ME.get();
     }
 
+    public RepoBackend getBackend() {
+        return backend;
+    }
+
+    /**
+     * Set backend of repos created after this call, repos created before are not affected.
+     * Existing xml files are loaded by both backends, so switching is transparent.
+     */
+    public void setBackend(RepoBackend backend) {
+        this.backend = backend;
+    }
+
+    /**
+     * Write snapshots of repos created after this call in a binary format that loads faster
+     * at boot, next to the xml that is still written on every flush. Xml is loaded when no
+     * valid binary snapshot exists, and disabling this drops the binary snapshot on the next flush.
+     */
+    public void setBinarySnapshotEnabled(boolean enabled) {
+        this.binarySnapshotEnabled = enabled;
+    }
+
+    /**
+     * Changes of all repos are flushed together in one pass.
+     *
+     * @param maxLatencyMillis Max time a change may stay in memory before it is flushed.
+     * @param maxDirtyBytes    Flush at once when pending changes are estimated larger than this.
+     */
+    public void setFlushPolicy(long maxLatencyMillis, long maxDirtyBytes) {
+        flushScheduler.setMaxLatencyMillis(maxLatencyMillis);
+        flushScheduler.setMaxDirtyBytes(maxDirtyBytes);
+    }
+
+    /**
+     * Flush all pending changes of all repos on the calling thread, call this before shutdown.
+     */
+    public void flushAllNow() {
+        flushScheduler.flushAllNow();
+    }
+
     public StringMapRepo getOrCreateStringMapRepo(String path) {
         if (stringMapRepoCache.containsKey(path)) {
             return stringMapRepoCache.get(path);
         }
-        StringMapRepo repo = new StringMapRepo(new File(path), this.repoHandler, IO);
+        StringMapRepo repo = createStringMapRepo(path);
         stringMapRepoCache.put(path, repo);
         return repo;
     }
 
+    private StringMapRepo createStringMapRepo(String path) {
+        StringMapRepo repo = new StringMapRepo(new File(path), this.repoHandler, IO, backend);
+        repo.setUseBinarySnapshot(binarySnapshotEnabled);
+        repo.setFlushScheduler(flushScheduler);
+        allRepos.add(repo);
+        return repo;
+    }
+
     public StringSetRepo getOrCreateStringSetRepo(String path) {
         return getOrCreateStringSetRepo(path, true);
     }
@@ -56,26 +124,201 @@ public final class RepoFactory {
         if (useCacheIfAvailable && stringSetRepoCache.containsKey(path)) {
             return stringSetRepoCache.get(path);
         }
-        StringSetRepo repo = new StringSetRepo(new File(path), this.repoHandler, IO);
+        StringSetRepo repo = new StringSetRepo(new File(path), this.repoHandler, IO, backend);
+        repo.setUseBinarySnapshot(binarySnapshotEnabled);
+        repo.setFlushScheduler(flushScheduler);
+        allRepos.add(repo);
         if (useCacheIfAvailable) {
             stringSetRepoCache.put(path, repo);
         }
         return repo;
     }
 
+    /**
+     * Users that existed before repos were split per user, each of them gets a copy of the
+     * shared file the first time its shard is created. Call this at boot with all alive users,
+     * before any user repo is accessed. Only the first call ever is recorded in markerFile,
+     * users created after that start empty, and each shard is seeded at most once.
+     */
+    public void setUserShardMigration(File markerFile, int[] aliveUserIds) {
+        this.userShardMigration = UserShardMigration.load(markerFile, aliveUserIds);
+    }
+
+    /**
+     * Get a repo of this user stored in its own file, which is loaded on first access.
+     * The system user keeps using the file at path, other users get "xxx_u{userId}.xml" next to it.
+     * A new shard starts empty, unless the user is recorded by {@link #setUserShardMigration(File, int[])},
+     * then it is seeded from the file at path, since it was shared by all users before.
+     */
+    public UserStringSetRepo getOrCreateUserStringSetRepo(String path, int userId) {
+        String key = userShardPath(path, userId);
+        UserStringSetRepo cached = userStringSetRepoCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        UserStringSetRepo repo = new UserStringSetRepo(userId, () -> {
+            if (userId == 0) {
+                return getOrCreateStringSetRepo(path);
+            }
+            boolean seed = shouldSeed(path, key, userId);
+            StringSetRepo shard = getOrCreateStringSetRepo(key, false);
+            if (seed) {
+                shard.addAll(getOrCreateStringSetRepo(path).getAll());
+                // Persist the copy now, the shard is never seeded again.
+                shard.flush();
+            }
+            return shard;
+        });
+        UserStringSetRepo old = userStringSetRepoCache.putIfAbsent(key, repo);
+        return old == null ? repo : old;
+    }
+
+    /**
+     * Same as {@link #getOrCreateUserStringSetRepo(String, int)} for map repos.
+     */
+    public UserStringMapRepo getOrCreateUserStringMapRepo(String path, int userId) {
+        String key = userShardPath(path, userId);
+        UserStringMapRepo cached = userStringMapRepoCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        UserStringMapRepo repo = new UserStringMapRepo(userId, () -> {
+            if (userId == 0) {
+                return getOrCreateStringMapRepo(path);
+            }
+            boolean seed = shouldSeed(path, key, userId);
+            StringMapRepo shard = createStringMapRepo(key);
+            if (seed) {
+                shard.putAll(getOrCreateStringMapRepo(path).snapshot());
+                // Persist the copy now, the shard is never seeded again.
+                shard.flush();
+            }
+            return shard;
+        });
+        UserStringMapRepo old = userStringMapRepoCache.putIfAbsent(key, repo);
+        return old == null ? repo : old;
+    }
+
+    /**
+     * Flush and release in-memory data of this user, it is loaded again on next access.
+     */
+    public void onUserStopped(int userId) {
+        if (userId == 0) {
+            return;
+        }
+        for (UserStringSetRepo repo : userStringSetRepoCache.values()) {
+            if (repo.getUserId() == userId) {
+                release(repo.unload());
+            }
+        }
+        for (UserStringMapRepo repo : userStringMapRepoCache.values()) {
+            if (repo.getUserId() == userId) {
+                release(repo.unload());
+            }
+        }
+    }
+
+    /**
+     * Release in-memory data of this user, and never seed its shards again, a new user may get its id.
+     */
+    public void onUserRemoved(int userId) {
+        onUserStopped(userId);
+        UserShardMigration migration = userShardMigration;
+        if (migration != null) {
+            migration.onUserRemoved(userId);
+        }
+    }
+
+    private boolean shouldSeed(String path, String shardPath, int userId) {
+        UserShardMigration migration = userShardMigration;
+        // Claimed even if there is nothing to copy, so later data of the system user never leaks.
+        return migration != null
+                && migration.claimSeed(userId, shardPath)
+                && !hasPersistedData(shardPath)
+                && hasPersistedData(path);
+    }
+
+    private void release(Repo closed) {
+        if (closed != null) {
+            flushScheduler.remove(closed);
+            allRepos.remove(closed);
+        }
+    }
+
+    private static String userShardPath(String path, int userId) {
+        if (userId == 0) {
+            return path;
+        }
+        File file = new File(path);
+        String ext = Files.getFileExtension(path);
+        String shardName = Files.getNameWithoutExtension(path) + "_u" + userId + (ext.isEmpty() ? "" : "." + ext);
+        return new File(file.getParentFile(), shardName).getPath();
+    }
+
+    private static boolean hasPersistedData(String path) {
+        return new File(path).exists()
+                || new File(path + ".journal").exists()
+                || new File(path + ".bin").exists();
+    }
+
     @SuppressWarnings("unchecked")
     public <T> JsonObjectSetRepo<T> getOrCreateJsonObjectSetRepo(String path, Class<? extends JsonObjectSetRepo<T>> clazz) {
         if (joSetRepoCache.containsKey(path)) {
             return joSetRepoCache.get(path);
         }
         try {
-            Constructor<?> constructor = clazz.getConstructor(File.class, Handler.class, ExecutorService.class);
-            constructor.setAccessible(true);
-            JsonObjectSetRepo<T> repo = (JsonObjectSetRepo<T>) constructor.newInstance(new File(path), this.repoHandler, IO);
+            JsonObjectSetRepo<T> repo;
+            Constructor<?> constructor = findConstructor(clazz, File.class, Handler.class, ExecutorService.class, RepoBackend.class);
+            if (constructor != null) {
+                constructor.setAccessible(true);
+                repo = (JsonObjectSetRepo<T>) constructor.newInstance(new File(path), this.repoHandler, IO, backend);
+            } else {
+                // Subclass does not support backend selection, fallback to xml.
+                constructor = clazz.getConstructor(File.class, Handler.class, ExecutorService.class);
+                constructor.setAccessible(true);
+                repo = (JsonObjectSetRepo<T>) constructor.newInstance(new File(path), this.repoHandler, IO);
+            }
+            repo.setUseBinarySnapshot(binarySnapshotEnabled);
+            repo.setFlushScheduler(flushScheduler);
+            allRepos.add(repo);
             joSetRepoCache.put(path, repo);
             return repo;
         } catch (Throwable e) {
             throw new RuntimeException(e);
         }
     }
+
+    public void dump(IPrinter p) throws RemoteException {
+        List<Repo> repos = new ArrayList<>(allRepos);
+        Collections.sort(repos, (o1, o2) -> o1.name().compareTo(o2.name()));
+        p.println("RepoFactory: backend=" + backend
+                + ", binarySnapshot=" + binarySnapshotEnabled
+                + ", repos=" + repos.size()
+                + ", dirty=" + flushScheduler.getDirtyRepoCount());
+        for (Repo repo : repos) {
+            RepoStats stats;
+            int size;
+            if (repo instanceof StringSetRepo) {
+                stats = ((StringSetRepo) repo).getStats();
+                size = ((StringSetRepo) repo).size();
+            } else if (repo instanceof StringMapRepo) {
+                stats = ((StringMapRepo) repo).getStats();
+                size = ((StringMapRepo) repo).size();
+            } else if (repo instanceof JsonObjectSetRepo) {
+                stats = ((JsonObjectSetRepo<?>) repo).getStats();
+                size = ((JsonObjectSetRepo<?>) repo).size();
+            } else {
+                continue;
+            }
+            p.println("  " + stats.format(repo.name(), size, flushScheduler.getDirtyAgeMillis(repo)));
+        }
+    }
+
+    private static Constructor<?> findConstructor(Class<?> clazz, Class<?>... parameterTypes) {
+        try {
+            return clazz.getConstructor(parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
 }
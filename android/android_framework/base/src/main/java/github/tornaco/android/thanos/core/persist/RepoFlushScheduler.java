@@ -0,0 +1,233 @@
+package github.tornaco.android.thanos.core.persist;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.elvishew.xlog.XLog;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import github.tornaco.android.thanos.core.annotation.GuardedBy;
+import github.tornaco.android.thanos.core.persist.i.Repo;
+
+/**
+ * Collect dirty repos and flush them together in one pass on the io executor,
+ * so a bulk operation touching many repos does not cause many separate write storms.
+ * <p>
+ * A commit is triggered when either:
+ * 1. No new change arrives within {@link #COMMIT_WINDOW}.
+ * 2. The oldest pending change is older than max latency.
+ * 3. Pending changes are estimated larger than max dirty bytes.
+ * A fast commit, or one triggered by 3, is never delayed by changes after it.
+ */
+final class RepoFlushScheduler {
+
+    /**
+     * Flush data too many times, may drain battery.
+     */
+    static final long COMMIT_WINDOW = 5000;
+    static final long COMMIT_WINDOW_FAST = 100;
+
+    static final long DEFAULT_MAX_LATENCY = 15 * 1000;
+    static final long DEFAULT_MAX_DIRTY_BYTES = 256 * 1024;
+
+    static final long AWAIT_COMMITS_TIMEOUT = 10 * 1000;
+
+    /**
+     * Posts delayed commits, a {@link Handler} outside of tests.
+     */
+    interface Poster {
+        void postDelayed(Runnable r, long delayMillis);
+
+        void removeCallbacks(Runnable r);
+
+        long uptimeMillis();
+    }
+
+    private static final class DirtyState {
+        final long dirtySince;
+        long bytes;
+
+        DirtyState(long dirtySince) {
+            this.dirtySince = dirtySince;
+        }
+    }
+
+    private final Poster poster;
+    private final ExecutorService io;
+
+    private final Object lock = new Object();
+    @GuardedBy("lock")
+    private final Map<Repo, DirtyState> dirtyRepos = new LinkedHashMap<>();
+    @GuardedBy("lock")
+    private long dirtyBytes;
+    @GuardedBy("lock")
+    private long oldestDirtySince;
+    // Uptime a fast or forced commit is due, 0 if there is none.
+    @GuardedBy("lock")
+    private long firmCommitAt;
+
+    private volatile long maxLatencyMillis = DEFAULT_MAX_LATENCY;
+    private volatile long maxDirtyBytes = DEFAULT_MAX_DIRTY_BYTES;
+
+    private final Runnable commitCaller = this::commitAsync;
+
+    RepoFlushScheduler(Handler handler, ExecutorService io) {
+        this(new Poster() {
+            @Override
+            public void postDelayed(Runnable r, long delayMillis) {
+                handler.postDelayed(r, delayMillis);
+            }
+
+            @Override
+            public void removeCallbacks(Runnable r) {
+                handler.removeCallbacks(r);
+            }
+
+            @Override
+            public long uptimeMillis() {
+                return SystemClock.uptimeMillis();
+            }
+        }, io);
+    }
+
+    RepoFlushScheduler(Poster poster, ExecutorService io) {
+        this.poster = poster;
+        this.io = io;
+    }
+
+    void setMaxLatencyMillis(long maxLatencyMillis) {
+        this.maxLatencyMillis = maxLatencyMillis;
+    }
+
+    void setMaxDirtyBytes(long maxDirtyBytes) {
+        this.maxDirtyBytes = maxDirtyBytes;
+    }
+
+    /**
+     * @param bytes Estimated size of this change.
+     * @param fast  Commit soon, for example after a clear.
+     */
+    void markDirty(Repo repo, int bytes, boolean fast) {
+        synchronized (lock) {
+            long now = poster.uptimeMillis();
+            DirtyState state = dirtyRepos.get(repo);
+            if (state == null) {
+                state = new DirtyState(now);
+                dirtyRepos.put(repo, state);
+            }
+            state.bytes += bytes;
+            dirtyBytes += bytes;
+            if (oldestDirtySince == 0) {
+                oldestDirtySince = now;
+            }
+
+            long delay;
+            if (dirtyBytes >= maxDirtyBytes) {
+                delay = 0;
+            } else {
+                long window = fast ? COMMIT_WINDOW_FAST : COMMIT_WINDOW;
+                long latencyLeft = oldestDirtySince + maxLatencyMillis - now;
+                delay = Math.max(0, Math.min(window, latencyLeft));
+            }
+            if (fast || delay == 0) {
+                if (firmCommitAt == 0 || now + delay < firmCommitAt) {
+                    firmCommitAt = now + delay;
+                }
+            }
+            if (firmCommitAt != 0) {
+                delay = Math.min(delay, Math.max(0, firmCommitAt - now));
+            }
+            poster.removeCallbacks(commitCaller);
+            poster.postDelayed(commitCaller, delay);
+        }
+    }
+
+    /**
+     * Forget pending changes of a repo that is closed, it must not be flushed any more.
+     */
+    void remove(Repo repo) {
+        synchronized (lock) {
+            DirtyState state = dirtyRepos.remove(repo);
+            if (state != null) {
+                dirtyBytes -= state.bytes;
+            }
+        }
+    }
+
+    /**
+     * @return How long this repo has changes not flushed, 0 if it is clean.
+     */
+    long getDirtyAgeMillis(Repo repo) {
+        synchronized (lock) {
+            DirtyState state = dirtyRepos.get(repo);
+            return state == null ? 0 : poster.uptimeMillis() - state.dirtySince;
+        }
+    }
+
+    int getDirtyRepoCount() {
+        synchronized (lock) {
+            return dirtyRepos.size();
+        }
+    }
+
+    /**
+     * Flush all dirty repos on the calling thread, and wait for commits already handed to
+     * the io executor, for shutdown. Do not call this on the io executor.
+     */
+    void flushAllNow() {
+        poster.removeCallbacks(commitCaller);
+        commit(drainDirtyRepos());
+        awaitPendingCommits();
+    }
+
+    private void awaitPendingCommits() {
+        try {
+            // The io executor runs in order, so this runs after every commit queued before it.
+            io.submit(() -> {
+            }).get(AWAIT_COMMITS_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (Throwable e) {
+            XLog.w("RepoFlushScheduler, fail await pending commits: " + Log.getStackTraceString(e));
+        }
+    }
+
+    private void commitAsync() {
+        List<Repo> repos = drainDirtyRepos();
+        if (!repos.isEmpty()) {
+            io.execute(() -> commit(repos));
+        }
+    }
+
+    private List<Repo> drainDirtyRepos() {
+        synchronized (lock) {
+            List<Repo> repos = new ArrayList<>(dirtyRepos.keySet());
+            dirtyRepos.clear();
+            dirtyBytes = 0;
+            oldestDirtySince = 0;
+            firmCommitAt = 0;
+            return repos;
+        }
+    }
+
+    private static void commit(List<Repo> repos) {
+        if (repos.isEmpty()) {
+            return;
+        }
+        long startTime = System.nanoTime();
+        for (Repo repo : repos) {
+            try {
+                repo.flush();
+            } catch (Throwable e) {
+                XLog.w("RepoFlushScheduler, fail flush: " + repo.name() + "\n" + Log.getStackTraceString(e));
+            }
+        }
+        XLog.i("RepoFlushScheduler, committed %s repos in %sms", repos.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+    }
+}
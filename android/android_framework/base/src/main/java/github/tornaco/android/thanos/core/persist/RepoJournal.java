@@ -0,0 +1,210 @@
+package github.tornaco.android.thanos.core.persist;
+
+import com.elvishew.xlog.XLog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import lombok.Cleanup;
+
+/**
+ * Append-only change log of a repo, lives next to the xml snapshot as "xxx.journal".
+ * <p>
+ * Each record is: op(byte) key(string) value(string) crc32(int), string is encoded as
+ * length(int, -1 for null) followed by utf-8 bytes.
+ * <p>
+ * Replaying ops is idempotent against a snapshot that already contains them, so the
+ * snapshot can be rewritten first and the journal deleted after, a crash in between is safe.
+ */
+final class RepoJournal {
+
+    static final byte OP_ADD = 1;
+    static final byte OP_REMOVE = 2;
+    static final byte OP_CLEAR = 3;
+    static final byte OP_PUT = 4;
+
+    /**
+     * Compact journal into the snapshot once it is larger than this.
+     */
+    static final long COMPACT_THRESHOLD_BYTES = 64 * 1024;
+
+    private static final int MAGIC = 0x544a524e;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    static final class Op {
+        final byte code;
+        final String key;
+        final String value;
+
+        Op(byte code, String key, String value) {
+            this.code = code;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    interface OpHandler {
+        void onOp(byte code, String key, String value);
+    }
+
+    private final File file;
+
+    RepoJournal(File baseFile) {
+        this.file = new File(baseFile.getPath() + ".journal");
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    boolean exists() {
+        return file.exists();
+    }
+
+    long length() {
+        return file.length();
+    }
+
+    void delete() {
+        if (file.exists() && !file.delete()) {
+            XLog.w("RepoJournal, fail delete: " + file);
+        }
+    }
+
+    /**
+     * Append and fsync given ops.
+     */
+    void append(List<Op> ops) throws IOException {
+        boolean fresh = !file.exists() || file.length() < HEADER_SIZE;
+        @Cleanup
+        FileOutputStream fos = new FileOutputStream(file, !fresh);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+        if (fresh) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+        ByteArrayOutputStream record = new ByteArrayOutputStream(64);
+        DataOutputStream recordOut = new DataOutputStream(record);
+        CRC32 crc = new CRC32();
+        for (Op op : ops) {
+            record.reset();
+            recordOut.writeByte(op.code);
+            writeString(recordOut, op.key);
+            writeString(recordOut, op.value);
+            recordOut.flush();
+            crc.reset();
+            crc.update(record.toByteArray());
+            record.writeTo(out);
+            out.writeInt((int) crc.getValue());
+        }
+        out.flush();
+        fos.getFD().sync();
+    }
+
+    /**
+     * Replay all valid records in order, a torn or corrupted tail is cut off.
+     *
+     * @return Number of ops replayed.
+     */
+    int replay(OpHandler handler) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        long validLength = HEADER_SIZE;
+        int count = 0;
+        {
+            @Cleanup
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    XLog.w("RepoJournal, bad header, drop: " + file);
+                    in.close();
+                    delete();
+                    return 0;
+                }
+            } catch (EOFException e) {
+                in.close();
+                delete();
+                return 0;
+            }
+
+            ByteArrayOutputStream record = new ByteArrayOutputStream(64);
+            DataOutputStream recordOut = new DataOutputStream(record);
+            CRC32 crc = new CRC32();
+            while (true) {
+                byte code;
+                String key;
+                String value;
+                int expectedCrc;
+                try {
+                    code = in.readByte();
+                    key = readString(in);
+                    value = readString(in);
+                    expectedCrc = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                record.reset();
+                recordOut.writeByte(code);
+                writeString(recordOut, key);
+                writeString(recordOut, value);
+                recordOut.flush();
+                crc.reset();
+                crc.update(record.toByteArray());
+                if ((int) crc.getValue() != expectedCrc) {
+                    XLog.w("RepoJournal, crc mismatch at %s: %s", validLength, file);
+                    break;
+                }
+
+                handler.onOp(code, key, value);
+                validLength += record.size() + 4;
+                count++;
+            }
+        }
+
+        if (validLength < file.length()) {
+            XLog.w("RepoJournal, truncate torn tail %s -> %s: %s", file.length(), validLength, file);
+            @Cleanup
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            raf.setLength(validLength);
+        }
+        return count;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0) {
+            return null;
+        }
+        if (len > in.available() + (1 << 20)) {
+            throw new EOFException("Bad string length: " + len);
+        }
+        byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
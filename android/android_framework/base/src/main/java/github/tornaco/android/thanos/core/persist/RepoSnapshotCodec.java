@@ -0,0 +1,187 @@
+package github.tornaco.android.thanos.core.persist;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.zip.CRC32;
+
+/**
+ * Format of {@link RepoBinarySnapshot}, free of android classes.
+ * <p>
+ * Layout: magic(int) version(int) kind(byte) count(int) payloadLength(int) payloadCrc32(int),
+ * then payload of strings, each is length(int, -1 for null) followed by utf-8 bytes.
+ * A map is stored as key, value, key, value...
+ */
+final class RepoSnapshotCodec {
+
+    static final byte KIND_SET = 1;
+    static final byte KIND_MAP = 2;
+
+    private static final int MAGIC = 0x5442534e;
+    private static final int VERSION = 1;
+    static final int HEADER_SIZE = 4 + 4 + 1 + 4 + 4 + 4;
+
+    // CRC32#update(ByteBuffer) is missing below O, payload is copied in chunks there.
+    private static volatile boolean sCrcBufferUnsupported;
+
+    private RepoSnapshotCodec() {
+    }
+
+    static byte[] encodeSet(Collection<String> elements) throws IOException {
+        ByteArrayOutputStream bytes = newOutput(elements.size() * 32);
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (String s : elements) {
+            writeString(out, s);
+        }
+        return finish(bytes, KIND_SET, elements.size());
+    }
+
+    static byte[] encodeMap(Map<String, String> entries) throws IOException {
+        ByteArrayOutputStream bytes = newOutput(entries.size() * 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (Map.Entry<String, String> e : entries.entrySet()) {
+            writeString(out, e.getKey());
+            writeString(out, e.getValue());
+        }
+        return finish(bytes, KIND_MAP, entries.size());
+    }
+
+    /**
+     * Verify the header, crc and string bounds of a snapshot, strings are not decoded.
+     *
+     * @return Strings of the snapshot, backed by {@code buffer}. For a map,
+     * key of entry i is at 2i and its value at 2i + 1.
+     * @throws IOException If the snapshot is invalid.
+     */
+    static Strings decode(ByteBuffer buffer, byte expectedKind) throws IOException {
+        int size = buffer.limit();
+        if (size < HEADER_SIZE) {
+            throw new IOException("bad size " + size);
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.get(8) != expectedKind) {
+            throw new IOException("bad header");
+        }
+        int count = buffer.getInt(9);
+        int payloadLength = buffer.getInt(13);
+        if (count < 0 || payloadLength != size - HEADER_SIZE) {
+            throw new IOException("bad payload length " + payloadLength);
+        }
+        if (crc(buffer, HEADER_SIZE) != buffer.getInt(17)) {
+            throw new IOException("crc mismatch");
+        }
+
+        int stringCount = expectedKind == KIND_MAP ? count * 2 : count;
+        if (stringCount < 0 || (long) stringCount * 4 > payloadLength) {
+            throw new IOException("bad count " + count);
+        }
+        int[] offsets = new int[stringCount];
+        int pos = HEADER_SIZE;
+        for (int i = 0; i < stringCount; i++) {
+            if (size - pos < 4) {
+                throw new IOException("truncated at " + pos);
+            }
+            int len = buffer.getInt(pos);
+            pos += 4;
+            if (len < 0) {
+                offsets[i] = -1;
+                continue;
+            }
+            if (len > size - pos) {
+                throw new IOException("truncated at " + pos);
+            }
+            offsets[i] = pos;
+            pos += len;
+        }
+        if (pos != size) {
+            throw new IOException("trailing bytes at " + pos);
+        }
+        return new Strings(buffer, offsets);
+    }
+
+    /**
+     * Read only view of the strings of a snapshot, a string is decoded on each get, read it once.
+     */
+    static final class Strings extends AbstractList<String> implements RandomAccess {
+        private final ByteBuffer buffer;
+        // Position of the utf-8 bytes of each string, -1 for null.
+        private final int[] offsets;
+
+        private Strings(ByteBuffer buffer, int[] offsets) {
+            this.buffer = buffer;
+            this.offsets = offsets;
+        }
+
+        @Override
+        public String get(int index) {
+            int offset = offsets[index];
+            if (offset < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[buffer.getInt(offset - 4)];
+            ByteBuffer in = buffer.duplicate();
+            in.position(offset);
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public int size() {
+            return offsets.length;
+        }
+    }
+
+    private static ByteArrayOutputStream newOutput(int estimatedPayload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE + estimatedPayload);
+        // Header is filled in by finish.
+        bytes.write(new byte[HEADER_SIZE]);
+        return bytes;
+    }
+
+    private static byte[] finish(ByteArrayOutputStream bytes, byte kind, int count) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.put(8, kind);
+        buffer.putInt(9, count);
+        buffer.putInt(13, buffer.limit() - HEADER_SIZE);
+        buffer.putInt(17, crc(buffer, HEADER_SIZE));
+        return buffer.array();
+    }
+
+    private static int crc(ByteBuffer buffer, int from) {
+        CRC32 crc = new CRC32();
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(from);
+        if (!sCrcBufferUnsupported) {
+            try {
+                crc.update(payload);
+                return (int) crc.getValue();
+            } catch (NoSuchMethodError e) {
+                sCrcBufferUnsupported = true;
+            }
+        }
+        byte[] chunk = new byte[8192];
+        while (payload.hasRemaining()) {
+            int len = Math.min(chunk.length, payload.remaining());
+            payload.get(chunk, 0, len);
+            crc.update(chunk, 0, len);
+        }
+        return (int) crc.getValue();
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
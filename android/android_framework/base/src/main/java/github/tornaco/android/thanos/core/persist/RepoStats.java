@@ -0,0 +1,70 @@
+package github.tornaco.android.thanos.core.persist;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import github.tornaco.android.thanos.core.annotation.GuardedBy;
+
+/**
+ * Io counters of a single repo, for dump.
+ */
+final class RepoStats {
+
+    // Recent flush latencies kept for percentile.
+    private static final int RECENT_FLUSH_COUNT = 128;
+
+    private final Object lock = new Object();
+
+    @GuardedBy("lock")
+    private long flushCount;
+    @GuardedBy("lock")
+    private long bytesWritten;
+    @GuardedBy("lock")
+    private long lastFlushNanos;
+    @GuardedBy("lock")
+    private long totalFlushNanos;
+    @GuardedBy("lock")
+    private long reloadNanos;
+    @GuardedBy("lock")
+    private final long[] recentFlushNanos = new long[RECENT_FLUSH_COUNT];
+    @GuardedBy("lock")
+    private int recentFlushIndex;
+
+    void onFlush(long costNanos, long bytes) {
+        synchronized (lock) {
+            flushCount++;
+            bytesWritten += Math.max(0, bytes);
+            lastFlushNanos = costNanos;
+            totalFlushNanos += costNanos;
+            recentFlushNanos[recentFlushIndex] = costNanos;
+            recentFlushIndex = (recentFlushIndex + 1) % RECENT_FLUSH_COUNT;
+        }
+    }
+
+    void onReload(long costNanos) {
+        synchronized (lock) {
+            reloadNanos = costNanos;
+        }
+    }
+
+    String format(String name, int size, long dirtyAgeMillis) {
+        synchronized (lock) {
+            int recentCount = (int) Math.min(flushCount, RECENT_FLUSH_COUNT);
+            long p99 = 0;
+            if (recentCount > 0) {
+                long[] sorted = Arrays.copyOf(recentFlushNanos, recentCount);
+                Arrays.sort(sorted);
+                p99 = sorted[Math.min(recentCount - 1, (int) Math.ceil(recentCount * 0.99) - 1)];
+            }
+            long avg = flushCount == 0 ? 0 : totalFlushNanos / flushCount;
+            return String.format(Locale.US,
+                    "%s: size=%d flushes=%d last=%.2fms avg=%.2fms p99=%.2fms written=%dB reload=%.2fms dirty=%dms",
+                    name, size, flushCount, toMillis(lastFlushNanos), toMillis(avg), toMillis(p99),
+                    bytesWritten, toMillis(reloadNanos), dirtyAgeMillis);
+        }
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000d;
+    }
+}
@@ -12,19 +12,23 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+import github.tornaco.android.thanos.core.annotation.GuardedBy;
 import github.tornaco.android.thanos.core.annotation.Keep;
 import github.tornaco.android.thanos.core.persist.i.MapRepo;
 import github.tornaco.android.thanos.core.util.FileUtils;
 import com.elvishew.xlog.XLog;
 import github.tornaco.android.thanos.core.util.XmlUtils;
+import org.xmlpull.v1.XmlPullParserException;
 import util.IoUtils;
 
 /**
@@ -44,6 +48,7 @@ public class StringMapRepo implements MapRepo<String, String> {
      */
     private static final int FLUSH_DELAY = 5000;
     private static final int FLUSH_DELAY_FAST = 100;
+    private static final int ESTIMATED_ENTRY_BYTES = 64;
 
     private Handler mHandler;
     private ExecutorService mExe;
@@ -51,11 +56,33 @@ public class StringMapRepo implements MapRepo<String, String> {
     private AtomicFile mFile;
 
     private final Object sync = new Object();
+    // Set once by close(), guarded by mWriteLock for writers.
+    private volatile boolean mClosed;
+    // Serialize writers of mStorage, a change and its journal op are recorded together.
+    private final Object mWriteLock = new Object();
+
+    private final RepoBackend mBackend;
+    private final RepoJournal mJournal;
+    private final RepoBinarySnapshot mBinarySnapshot;
+    private final RepoStats mStats = new RepoStats();
+    // Write snapshot as binary instead of xml, loading always prefers a valid binary snapshot.
+    private volatile boolean mUseBinarySnapshot;
+
+    // Changes not written to journal yet, only used with RepoBackend.JOURNAL.
+    @GuardedBy("mWriteLock")
+    private List<RepoJournal.Op> mPendingOps = new ArrayList<>();
 
     StringMapRepo(File file, Handler handler, ExecutorService service) {
+        this(file, handler, service, RepoBackend.XML);
+    }
+
+    StringMapRepo(File file, Handler handler, ExecutorService service, RepoBackend backend) {
         this.mFile = new AtomicFile(file);
         this.mExe = service;
         this.mHandler = handler;
+        this.mBackend = backend;
+        this.mJournal = new RepoJournal(file);
+        this.mBinarySnapshot = new RepoBinarySnapshot(file);
 
         if (!this.mFile.getBaseFile().exists()) {
             try {
@@ -69,31 +96,67 @@ public class StringMapRepo implements MapRepo<String, String> {
 
     @Override
     public void reload() {
+        long startTime = System.nanoTime();
+        reloadInternal();
+        mStats.onReload(System.nanoTime() - startTime);
+    }
+
+    private void reloadInternal() {
         synchronized (sync) {
-            com.google.common.io.Closer closer = com.google.common.io.Closer.create();
+            Map<String, String> m = new HashMap<>();
+            List<String> binary = mBinarySnapshot.readMap();
+            if (binary != null) {
+                for (int i = 0; i < binary.size(); i += 2) {
+                    m.put(binary.get(i), binary.get(i + 1));
+                }
+                XLog.d("Loaded binary snapshot: " + name());
+            } else {
+                loadXml(m);
+            }
+
+            // Changes after the last snapshot.
             try {
+                mJournal.replay((code, key, value) -> {
+                    if (code == RepoJournal.OP_PUT) {
+                        m.put(key, value);
+                    } else if (code == RepoJournal.OP_REMOVE) {
+                        m.remove(key);
+                    } else if (code == RepoJournal.OP_CLEAR) {
+                        m.clear();
+                    }
+                });
+            } catch (Throwable e) {
+                XLog.w("Fail replay journal: " + mJournal.getFile() + "\n" + Log.getStackTraceString(e));
+            }
 
-                if (!mFile.getBaseFile().exists()) {
-                    XLog.w("getBaseFile not exists, skip load: " + name());
-                    return;
-                }
+            synchronized (mWriteLock) {
+                mStorage.putAll(m);
+            }
+        }
+    }
 
-                if (mFile.getBaseFile().isDirectory()) {
-                    XLog.w("getBaseFile isDirectory, clean up: " + name());
-                    FileUtils.deleteDirQuiet(mFile.getBaseFile());
-                    mFile.delete();
-                }
+    private void loadXml(Map<String, String> m) {
+        com.google.common.io.Closer closer = com.google.common.io.Closer.create();
+        try {
 
+            if (mFile.getBaseFile().isDirectory()) {
+                XLog.w("getBaseFile isDirectory, clean up: " + name());
+                FileUtils.deleteDirQuiet(mFile.getBaseFile());
+                mFile.delete();
+            }
 
+            if (!mFile.getBaseFile().exists()) {
+                XLog.w("getBaseFile not exists, skip load: " + name());
+            } else {
                 InputStream is = closer.register(mFile.openRead());
-                @SuppressWarnings("unchecked") Map<String, String> m = (Map<String, String>) XmlUtils.readMapXml(is);
-                mStorage.putAll(m);
-
-            } catch (Throwable e) {
-                XLog.w("Fail reload@IOException: " + mFile + "\n" + Log.getStackTraceString(e));
-            } finally {
-                IoUtils.closeQuietly(closer);
+                @SuppressWarnings("unchecked") Map<String, String> xml = (Map<String, String>) XmlUtils.readMapXml(is);
+                m.putAll(xml);
             }
+
+        } catch (Throwable e) {
+            XLog.w("Fail reload@IOException: " + mFile + "\n" + Log.getStackTraceString(e));
+        } finally {
+            IoUtils.closeQuietly(closer);
         }
     }
 
@@ -114,16 +177,88 @@ public class StringMapRepo implements MapRepo<String, String> {
 
     @Override
     public void flush() {
+        if (mClosed) {
+            return;
+        }
         XLog.i("flush");
+        if (mBackend == RepoBackend.JOURNAL) {
+            flushJournal();
+        } else {
+            writeSnapshot();
+        }
+    }
+
+    @GuardedBy("mWriteLock")
+    private void recordOp(byte code, String key, String value) {
+        if (mBackend == RepoBackend.JOURNAL) {
+            if (code == RepoJournal.OP_CLEAR) {
+                mPendingOps.clear();
+            }
+            mPendingOps.add(new RepoJournal.Op(code, key, value));
+        }
+    }
+
+    private void flushJournal() {
+        synchronized (sync) {
+            List<RepoJournal.Op> ops;
+            synchronized (mWriteLock) {
+                ops = mPendingOps;
+                mPendingOps = new ArrayList<>();
+            }
+            if (ops.isEmpty()) {
+                return;
+            }
+            long startTime = System.nanoTime();
+            long lengthBefore = mJournal.length();
+            try {
+                mJournal.append(ops);
+                mStats.onFlush(System.nanoTime() - startTime, mJournal.length() - lengthBefore);
+            } catch (Throwable e) {
+                XLog.w("Fail append journal, write snapshot instead: " + mJournal.getFile() + "\n" + Log.getStackTraceString(e));
+                writeSnapshot();
+                return;
+            }
+            if (mJournal.length() > RepoJournal.COMPACT_THRESHOLD_BYTES) {
+                Runnable compact = () -> {
+                    if (!mClosed) {
+                        writeSnapshot();
+                    }
+                };
+                if (mExe == null) {
+                    IO.execute(compact);
+                } else {
+                    mExe.execute(compact);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write all entries to the xml file, and drop the journal that is merged into it.
+     */
+    private void writeSnapshot() {
         Closer closer = Closer.create();
         synchronized (sync) {
+            long startTime = System.nanoTime();
             try {
 
-                Map<String, String> m = new HashMap<>(mStorage);
+                Map<String, String> m;
+                synchronized (mWriteLock) {
+                    m = new HashMap<>(mStorage);
+                }
 
-                FileOutputStream fos = closer.register(mFile.startWrite());
-                XmlUtils.writeMapXml(m, fos);
-                mFile.finishWrite(fos);
+                if (mUseBinarySnapshot) {
+                    mBinarySnapshot.writeMap(m);
+                    // Xml is written on every flush, a corrupted snapshot must not lose data.
+                    writeXml(m, closer);
+                } else {
+                    // Drop binary snapshot first, a stale one must never shadow the xml.
+                    mBinarySnapshot.delete();
+                    writeXml(m, closer);
+                }
+                mJournal.delete();
+                mStats.onFlush(System.nanoTime() - startTime,
+                        mUseBinarySnapshot ? mBinarySnapshot.getFile().length() : mFile.getBaseFile().length());
 
             } catch (Throwable e) {
                 XLog.w("Fail flush@IOException: " + mFile + "\n" + Log.getStackTraceString(e));
@@ -133,6 +268,32 @@ public class StringMapRepo implements MapRepo<String, String> {
         }
     }
 
+    private void writeXml(Map<String, String> m, Closer closer) throws XmlPullParserException, IOException {
+        FileOutputStream fos = closer.register(mFile.startWrite());
+        XmlUtils.writeMapXml(m, fos);
+        mFile.finishWrite(fos);
+    }
+
+    /**
+     * Write everything to the file and detach from it. Later writes are rejected and flush does
+     * nothing, so a repo loaded again from the same file is never overwritten by this one.
+     */
+    void close() {
+        synchronized (sync) {
+            synchronized (mWriteLock) {
+                mClosed = true;
+            }
+            writeSnapshot();
+        }
+    }
+
+    @GuardedBy("mWriteLock")
+    private void checkNotClosed() {
+        if (mClosed) {
+            throw new IllegalStateException("Repo is closed: " + name());
+        }
+    }
+
     private Runnable mFlusher = new Runnable() {
         @Override
         public void run() {
@@ -147,6 +308,33 @@ public class StringMapRepo implements MapRepo<String, String> {
         }
     };
 
+    /**
+     * Shared by repos created from {@link RepoFactory}, null means flush by our own handler.
+     */
+    private volatile RepoFlushScheduler mFlushScheduler;
+
+    RepoStats getStats() {
+        return mStats;
+    }
+
+    void setUseBinarySnapshot(boolean useBinarySnapshot) {
+        this.mUseBinarySnapshot = useBinarySnapshot;
+    }
+
+    void setFlushScheduler(RepoFlushScheduler scheduler) {
+        this.mFlushScheduler = scheduler;
+    }
+
+    private void scheduleFlush(int bytes, boolean fast) {
+        RepoFlushScheduler scheduler = mFlushScheduler;
+        if (scheduler != null) {
+            scheduler.markDirty(this, bytes, fast);
+        } else if (mHandler != null) {
+            mHandler.removeCallbacks(mFlushCaller);
+            mHandler.postDelayed(mFlushCaller, fast ? FLUSH_DELAY_FAST : FLUSH_DELAY);
+        }
+    }
+
     @Override
     public void flushAsync() {
         XLog.i("flush async");
@@ -200,32 +388,52 @@ public class StringMapRepo implements MapRepo<String, String> {
 
     @Override
     public String put(String key, String value) {
-        String res = mStorage.put(key, value == null ? NULL_INDICATOR : value);
-        mHandler.removeCallbacks(mFlushCaller);
-        mHandler.postDelayed(mFlushCaller, FLUSH_DELAY);
+        String v = value == null ? NULL_INDICATOR : value;
+        String res;
+        synchronized (mWriteLock) {
+            checkNotClosed();
+            res = mStorage.put(key, v);
+            recordOp(RepoJournal.OP_PUT, key, v);
+        }
+        scheduleFlush((key == null ? 0 : key.length()) + v.length(), false);
         return res;
     }
 
     @Override
     public String remove(Object key) {
-        String res = mStorage.remove(key);
-        mHandler.removeCallbacks(mFlushCaller);
-        mHandler.postDelayed(mFlushCaller, FLUSH_DELAY);
+        String res;
+        synchronized (mWriteLock) {
+            checkNotClosed();
+            res = mStorage.remove(key);
+            if (res != null && key instanceof String) {
+                recordOp(RepoJournal.OP_REMOVE, (String) key, null);
+            }
+        }
+        scheduleFlush(ESTIMATED_ENTRY_BYTES, false);
         return res;
     }
 
     @Override
     public void putAll(@NonNull Map<? extends String, ? extends String> m) {
-        mStorage.putAll(m);
-        mHandler.removeCallbacks(mFlushCaller);
-        mHandler.postDelayed(mFlushCaller, FLUSH_DELAY);
+        synchronized (mWriteLock) {
+            checkNotClosed();
+            for (Map.Entry<? extends String, ? extends String> e : m.entrySet()) {
+                String v = e.getValue() == null ? NULL_INDICATOR : e.getValue();
+                mStorage.put(e.getKey(), v);
+                recordOp(RepoJournal.OP_PUT, e.getKey(), v);
+            }
+        }
+        scheduleFlush(m.size() * ESTIMATED_ENTRY_BYTES, false);
     }
 
     @Override
     public void clear() {
-        mStorage.clear();
-        mHandler.removeCallbacks(mFlushCaller);
-        mHandler.postDelayed(mFlushCaller, FLUSH_DELAY_FAST);
+        synchronized (mWriteLock) {
+            checkNotClosed();
+            mStorage.clear();
+            recordOp(RepoJournal.OP_CLEAR, null, null);
+        }
+        scheduleFlush(0, true);
     }
 
     @NonNull
@@ -5,6 +5,7 @@ import android.util.AtomicFile;
 import android.util.Log;
 import com.google.common.io.Files;
 
+import github.tornaco.android.thanos.core.annotation.GuardedBy;
 import github.tornaco.android.thanos.core.annotation.Keep;
 import github.tornaco.android.thanos.core.persist.i.SetRepo;
 import github.tornaco.android.thanos.core.util.FileUtils;
@@ -12,13 +13,16 @@ import com.elvishew.xlog.XLog;
 import github.tornaco.android.thanos.core.util.XmlUtils;
 import github.tornaco.android.thanos.core.util.function.Predicate;
 import lombok.Cleanup;
+import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -31,6 +35,7 @@ public class StringSetRepo implements SetRepo<String> {
 
   private static final int FLUSH_DELAY = 5000;
   private static final int FLUSH_DELAY_FAST = 100;
+  private static final int ESTIMATED_ELEMENT_BYTES = 32;
 
   private static final ExecutorService IO = Executors.newSingleThreadExecutor();
   private Handler mHandler;
@@ -38,10 +43,24 @@ public class StringSetRepo implements SetRepo<String> {
 
   private AtomicFile mFile;
 
+  private final RepoBackend mBackend;
+  private final RepoJournal mJournal;
+  private final RepoBinarySnapshot mBinarySnapshot;
+  private final RepoStats mStats = new RepoStats();
+  // Write snapshot as binary instead of xml, loading always prefers a valid binary snapshot.
+  private volatile boolean mUseBinarySnapshot;
+
   public StringSetRepo(File file, Handler handler, ExecutorService service) {
+    this(file, handler, service, RepoBackend.XML);
+  }
+
+  public StringSetRepo(File file, Handler handler, ExecutorService service, RepoBackend backend) {
     this.mFile = new AtomicFile(file);
     this.mExe = service;
     this.mHandler = handler;
+    this.mBackend = backend;
+    this.mJournal = new RepoJournal(file);
+    this.mBinarySnapshot = new RepoBinarySnapshot(file);
 
     try {
       if (!this.mFile.getBaseFile().exists()) {
@@ -56,44 +75,128 @@ public class StringSetRepo implements SetRepo<String> {
     reload();
   }
 
-  private final Set<String> mStorage = new HashSet<>();
+  /**
+   * Immutable snapshot of current elements, readers never lock, writers publish a new one.
+   */
+  private volatile CompactStringSet mStorage = CompactStringSet.EMPTY;
 
+  // Guard file io.
   private final Object sync = new Object();
+  // Set once by close(), guarded by mWriteLock for writers.
+  private volatile boolean mClosed;
+  // Serialize writers of mStorage.
+  private final Object mWriteLock = new Object();
+
+  // Changes not written to journal yet, only used with RepoBackend.JOURNAL.
+  @GuardedBy("mWriteLock")
+  private List<RepoJournal.Op> mPendingOps = new ArrayList<>();
 
   @Override
   public Set<String> getAll() {
     return new HashSet<>(mStorage);
   }
 
-  @SuppressWarnings("unchecked")
+  /**
+   * @return An immutable snapshot of current elements, it will not reflect later changes.
+   */
+  @Override
+  public Set<String> snapshot() {
+    return mStorage;
+  }
+
+  @GuardedBy("mWriteLock")
+  private void publish(Collection<String> next) {
+    mStorage = CompactStringSet.copyOf(next);
+  }
+
+  @GuardedBy("mWriteLock")
+  private void recordOp(byte code, String s) {
+    if (mBackend == RepoBackend.JOURNAL) {
+      if (code == RepoJournal.OP_CLEAR) {
+        mPendingOps.clear();
+      }
+      mPendingOps.add(new RepoJournal.Op(code, s, null));
+    }
+  }
+
   @Override
   public void reload() {
+    long startTime = System.nanoTime();
+    reloadInternal();
+    mStats.onReload(System.nanoTime() - startTime);
+  }
+
+  @SuppressWarnings("unchecked")
+  private void reloadInternal() {
     synchronized (sync) {
-      try {
+      // Binary snapshot is decoded straight into the published set, nulls are dropped there.
+      Collection<String> loaded = mBinarySnapshot.readSet();
+      if (loaded != null) {
+        XLog.d("Loaded binary snapshot: " + name());
+      } else {
+        Set<String> xml = new HashSet<>();
+        loadXml(xml);
+        loaded = xml;
+      }
 
-        if (!mFile.getBaseFile().exists()) {
-          XLog.w("getBaseFile not exists, skip load: " + name());
-          return;
+      // Changes after the last snapshot.
+      if (mJournal.exists()) {
+        Set<String> h = new HashSet<>(loaded);
+        try {
+          mJournal.replay((code, key, value) -> {
+            if (code == RepoJournal.OP_ADD) {
+              h.add(key);
+            } else if (code == RepoJournal.OP_REMOVE) {
+              h.remove(key);
+            } else if (code == RepoJournal.OP_CLEAR) {
+              h.clear();
+            }
+          });
+        } catch (Throwable e) {
+          XLog.w("Fail replay journal: " + mJournal.getFile() + "\n" + Log.getStackTraceString(e));
         }
+        loaded = h;
+      }
 
-        if (mFile.getBaseFile().isDirectory()) {
-          XLog.w("getBaseFile isDirectory, clean up: " + name());
-          FileUtils.deleteDirQuiet(mFile.getBaseFile());
-          mFile.delete();
+      if (loaded.isEmpty()) {
+        return;
+      }
+      synchronized (mWriteLock) {
+        if (mStorage.isEmpty()) {
+          publish(loaded);
+        } else {
+          Set<String> next = new HashSet<>(mStorage);
+          next.addAll(loaded);
+          publish(next);
         }
+      }
+    }
+  }
+
+
+  @SuppressWarnings("unchecked")
+  private void loadXml(Set<String> h) {
+    try {
 
+      if (mFile.getBaseFile().isDirectory()) {
+        XLog.w("getBaseFile isDirectory, clean up: " + name());
+        FileUtils.deleteDirQuiet(mFile.getBaseFile());
+        mFile.delete();
+      }
+
+      if (!mFile.getBaseFile().exists()) {
+        XLog.w("getBaseFile not exists, skip load: " + name());
+      } else {
         @Cleanup
         InputStream inputStream = mFile.openRead();
-        Set h = new HashSet(XmlUtils.readSetXml(inputStream));
-        mStorage.addAll(h);
-
-      } catch (Throwable e) {
-        XLog.w("Fail reload@IOException: " + mFile + "\n" + Log.getStackTraceString(e));
+        h.addAll(XmlUtils.readSetXml(inputStream));
       }
+
+    } catch (Throwable e) {
+      XLog.w("Fail reload@IOException: " + mFile + "\n" + Log.getStackTraceString(e));
     }
   }
 
-
   @Override
   public void reloadAsync() {
     Runnable r = new Runnable() {
@@ -111,24 +214,137 @@ public class StringSetRepo implements SetRepo<String> {
 
   @Override
   public void flush() {
+    if (mClosed) {
+      return;
+    }
     XLog.i("flush to " + mFile.getBaseFile());
+    if (mBackend == RepoBackend.JOURNAL) {
+      flushJournal();
+    } else {
+      writeSnapshot();
+    }
+  }
+
+  private void flushJournal() {
     synchronized (sync) {
+      List<RepoJournal.Op> ops;
+      synchronized (mWriteLock) {
+        ops = mPendingOps;
+        mPendingOps = new ArrayList<>();
+      }
+      if (ops.isEmpty()) {
+        return;
+      }
+      long startTime = System.nanoTime();
+      long lengthBefore = mJournal.length();
       try {
-        Set<String> out = new HashSet<>(mStorage);
-        @Cleanup
-        FileOutputStream fos = mFile.startWrite();
-        XmlUtils.writeSetXml(out, fos);
-        mFile.finishWrite(fos);
+        mJournal.append(ops);
+        mStats.onFlush(System.nanoTime() - startTime, mJournal.length() - lengthBefore);
+      } catch (Throwable e) {
+        XLog.w("Fail append journal, write snapshot instead: " + mJournal.getFile() + "\n" + Log.getStackTraceString(e));
+        writeSnapshot();
+        return;
+      }
+      if (mJournal.length() > RepoJournal.COMPACT_THRESHOLD_BYTES) {
+        Runnable compact = () -> {
+          if (!mClosed) {
+            writeSnapshot();
+          }
+        };
+        if (mExe == null) {
+          IO.execute(compact);
+        } else {
+          mExe.execute(compact);
+        }
+      }
+    }
+  }
+
+  /**
+   * Write all elements to the xml file, and drop the journal that is merged into it.
+   */
+  private void writeSnapshot() {
+    synchronized (sync) {
+      // Read inside sync, so everything already appended to the journal is included.
+      Set<String> out = mStorage;
+      long startTime = System.nanoTime();
+      try {
+        if (mUseBinarySnapshot) {
+          mBinarySnapshot.writeSet(out);
+          // Xml is written on every flush, a corrupted snapshot must not lose data.
+          writeXml(out);
+        } else {
+          // Drop binary snapshot first, a stale one must never shadow the xml.
+          mBinarySnapshot.delete();
+          writeXml(out);
+        }
+        mJournal.delete();
+        mStats.onFlush(System.nanoTime() - startTime,
+            mUseBinarySnapshot ? mBinarySnapshot.getFile().length() : mFile.getBaseFile().length());
       } catch (Throwable e) {
         XLog.w("Fail flush@IOException: " + mFile + "\n" + Log.getStackTraceString(e));
       }
     }
   }
 
+  private void writeXml(Set<String> out) throws XmlPullParserException, IOException {
+    @Cleanup
+    FileOutputStream fos = mFile.startWrite();
+    XmlUtils.writeSetXml(out, fos);
+    mFile.finishWrite(fos);
+  }
+
+  /**
+   * Write everything to the file and detach from it. Later writes are rejected and flush does
+   * nothing, so a repo loaded again from the same file is never overwritten by this one.
+   */
+  void close() {
+    synchronized (sync) {
+      synchronized (mWriteLock) {
+        mClosed = true;
+      }
+      writeSnapshot();
+    }
+  }
+
+  @GuardedBy("mWriteLock")
+  private void checkNotClosed() {
+    if (mClosed) {
+      throw new IllegalStateException("Repo is closed: " + name());
+    }
+  }
+
   private Runnable mFlusher = StringSetRepo.this::flush;
 
   private Runnable mFlushCaller = this::flushAsync;
 
+  /**
+   * Shared by repos created from {@link RepoFactory}, null means flush by our own handler.
+   */
+  private volatile RepoFlushScheduler mFlushScheduler;
+
+  RepoStats getStats() {
+    return mStats;
+  }
+
+  void setUseBinarySnapshot(boolean useBinarySnapshot) {
+    this.mUseBinarySnapshot = useBinarySnapshot;
+  }
+
+  void setFlushScheduler(RepoFlushScheduler scheduler) {
+    this.mFlushScheduler = scheduler;
+  }
+
+  private void scheduleFlush(int bytes, boolean fast) {
+    RepoFlushScheduler scheduler = mFlushScheduler;
+    if (scheduler != null) {
+      scheduler.markDirty(this, bytes, fast);
+    } else if (mHandler != null) {
+      mHandler.removeCallbacks(mFlushCaller);
+      mHandler.postDelayed(mFlushCaller, fast ? FLUSH_DELAY_FAST : FLUSH_DELAY);
+    }
+  }
+
   @Override
   public void flushAsync() {
     XLog.i("flush async");
@@ -144,10 +360,18 @@ public class StringSetRepo implements SetRepo<String> {
     if (s == null) {
       return false;
     }
-    boolean added = mStorage.add(s);
-    if (added && mHandler != null) {
-      mHandler.removeCallbacks(mFlushCaller);
-      mHandler.postDelayed(mFlushCaller, FLUSH_DELAY);
+    boolean added;
+    synchronized (mWriteLock) {
+      checkNotClosed();
+      if (mStorage.contains(s)) {
+        return false;
+      }
+      mStorage = mStorage.with(s);
+      added = true;
+      recordOp(RepoJournal.OP_ADD, s);
+    }
+    if (added) {
+      scheduleFlush(s.length(), false);
     }
     return added;
   }
@@ -157,10 +381,22 @@ public class StringSetRepo implements SetRepo<String> {
     if (c == null) {
       return false;
     }
-    boolean added = mStorage.addAll(c);
-    if (added && mHandler != null) {
-      mHandler.removeCallbacks(mFlushCaller);
-      mHandler.postDelayed(mFlushCaller, FLUSH_DELAY);
+    boolean added;
+    synchronized (mWriteLock) {
+      checkNotClosed();
+      Set<String> next = new HashSet<>(mStorage);
+      for (String s : c) {
+        if (s != null && next.add(s)) {
+          recordOp(RepoJournal.OP_ADD, s);
+        }
+      }
+      added = next.size() != mStorage.size();
+      if (added) {
+        publish(next);
+      }
+    }
+    if (added) {
+      scheduleFlush(c.size() * ESTIMATED_ELEMENT_BYTES, false);
     }
     return added;
   }
@@ -170,21 +406,30 @@ public class StringSetRepo implements SetRepo<String> {
     if (s == null) {
       return false;
     }
-    boolean removed = mStorage.remove(s);
-    if (removed && mHandler != null) {
-      mHandler.removeCallbacks(mFlushCaller);
-      mHandler.postDelayed(mFlushCaller, FLUSH_DELAY);
+    boolean removed;
+    synchronized (mWriteLock) {
+      checkNotClosed();
+      if (!mStorage.contains(s)) {
+        return false;
+      }
+      mStorage = mStorage.without(s);
+      removed = true;
+      recordOp(RepoJournal.OP_REMOVE, s);
+    }
+    if (removed) {
+      scheduleFlush(s.length(), false);
     }
     return removed;
   }
 
   @Override
   public void removeAll() {
-    mStorage.clear();
-    if (mHandler != null) {
-      mHandler.removeCallbacks(mFlushCaller);
-      mHandler.postDelayed(mFlushCaller, FLUSH_DELAY_FAST);
+    synchronized (mWriteLock) {
+      checkNotClosed();
+      mStorage = CompactStringSet.EMPTY;
+      recordOp(RepoJournal.OP_CLEAR, null);
     }
+    scheduleFlush(0, true);
   }
 
   @Override
@@ -194,14 +439,7 @@ public class StringSetRepo implements SetRepo<String> {
 
   @Override
   public boolean has(String[] t) {
-    if (t != null) {
-      for (String tt : t) {
-        if (has(tt)) {
-          return true;
-        }
-      }
-    }
-    return false;
+    return mStorage.containsAny(t);
   }
 
   @Override
@@ -216,7 +454,7 @@ public class StringSetRepo implements SetRepo<String> {
 
   @Override
   public String find(Predicate<String> predicate) {
-    for (String element : getAll()) {
+    for (String element : mStorage) {
       if (predicate.test(element)) {
         return element;
       }
@@ -0,0 +1,118 @@
+package github.tornaco.android.thanos.core.persist;
+
+import com.elvishew.xlog.XLog;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import github.tornaco.android.thanos.core.annotation.GuardedBy;
+
+/**
+ * Users whose shards may be seeded from the repo that was shared by all users before repos
+ * were split per user, each shard at most once.
+ * <p>
+ * The users alive the first time this is loaded are written to a marker file, later loads
+ * only read it back. So a user created after the upgrade, a work profile or an app clone,
+ * starts with an empty shard. A removed user is dropped from the file, a new user may get
+ * its id later.
+ * <p>
+ * Marker lines are "u {userId}" for a user to migrate, "s {shardPath}" for a shard that
+ * already had its chance to be seeded.
+ */
+final class UserShardMigration {
+
+    private static final String USER = "u ";
+    private static final String SHARD = "s ";
+
+    private final File markerFile;
+    @GuardedBy("this")
+    private final Set<Integer> users = new HashSet<>();
+    @GuardedBy("this")
+    private final Set<String> claimedShards = new HashSet<>();
+
+    private UserShardMigration(File markerFile) {
+        this.markerFile = markerFile;
+    }
+
+    /**
+     * @param aliveUserIds Users alive now, only recorded if the marker file does not exist yet.
+     */
+    static UserShardMigration load(File markerFile, int[] aliveUserIds) {
+        UserShardMigration migration = new UserShardMigration(markerFile);
+        synchronized (migration) {
+            if (markerFile.exists()) {
+                migration.read();
+            } else {
+                for (int userId : aliveUserIds) {
+                    // The system user keeps the shared file itself.
+                    if (userId != 0) {
+                        migration.users.add(userId);
+                    }
+                }
+                migration.write();
+            }
+        }
+        return migration;
+    }
+
+    /**
+     * Called when a shard is created, true is returned at most once for each shard.
+     *
+     * @return True if the shard may be seeded from the shared repo.
+     */
+    synchronized boolean claimSeed(int userId, String shardPath) {
+        if (!users.contains(userId) || !claimedShards.add(shardPath)) {
+            return false;
+        }
+        write();
+        return true;
+    }
+
+    synchronized void onUserRemoved(int userId) {
+        if (users.remove(userId)) {
+            write();
+        }
+    }
+
+    @GuardedBy("this")
+    private void read() {
+        try {
+            for (String line : Files.asCharSource(markerFile, StandardCharsets.UTF_8).readLines()) {
+                if (line.startsWith(USER)) {
+                    users.add(Integer.parseInt(line.substring(USER.length()).trim()));
+                } else if (line.startsWith(SHARD)) {
+                    claimedShards.add(line.substring(SHARD.length()));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Seeding nobody is safe, seeding the wrong user leaks data of the system user.
+            XLog.e("UserShardMigration, bad marker, seed nothing: " + markerFile, e);
+            users.clear();
+        }
+    }
+
+    @GuardedBy("this")
+    private void write() {
+        StringBuilder sb = new StringBuilder();
+        for (int userId : users) {
+            sb.append(USER).append(userId).append('\n');
+        }
+        for (String shardPath : claimedShards) {
+            sb.append(SHARD).append(shardPath).append('\n');
+        }
+        File tmp = new File(markerFile.getPath() + ".tmp");
+        try {
+            Files.createParentDirs(markerFile);
+            Files.asCharSink(tmp, StandardCharsets.UTF_8).write(sb);
+            if (!tmp.renameTo(markerFile)) {
+                throw new IOException("Fail rename " + tmp);
+            }
+        } catch (IOException e) {
+            XLog.e("UserShardMigration, fail write: " + markerFile, e);
+        }
+    }
+}
@@ -24,19 +24,84 @@ import java.util.Map;
 import java.util.Set;
 
 import github.tornaco.android.thanos.core.annotation.Keep;
-
+import github.tornaco.android.thanos.core.util.function.Function;
+import github.tornaco.android.thanos.core.util.function.Supplier;
+
+/**
+ * Map repo of a single user.
+ * <p>
+ * Repos from {@link RepoFactory#getOrCreateUserStringMapRepo(String, int)} are real shards,
+ * each user has its own file, loaded on first access and unloaded when the user stops.
+ * Writes hold the lock {@link #unload()} closes the shard with, reads do not lock, a closed
+ * shard still returns what it flushed.
+ */
 @Keep
 public class UserStringMapRepo {
-    private final StringMapRepo repo;
+    private final Object lock = new Object();
+    private final Supplier<StringMapRepo> loader;
+    private volatile StringMapRepo repo;
     private final int userId;
 
+    /**
+     * Delegate to a repo shared by all users.
+     */
     public UserStringMapRepo(StringMapRepo repo, int userId) {
         this.repo = repo;
+        this.loader = null;
+        this.userId = userId;
+    }
+
+    UserStringMapRepo(int userId, Supplier<StringMapRepo> loader) {
+        this.loader = loader;
         this.userId = userId;
     }
 
+    /**
+     * For a shard, the returned repo is closed once the user stops, do not keep it.
+     */
     public StringMapRepo getRepo() {
-        return repo;
+        StringMapRepo r = repo;
+        if (r == null) {
+            synchronized (lock) {
+                r = repo;
+                if (r == null) {
+                    r = loader.get();
+                    repo = r;
+                }
+            }
+        }
+        return r;
+    }
+
+    boolean isLoaded() {
+        return repo != null;
+    }
+
+    /**
+     * Flush and close the loaded repo, next access loads it again.
+     * <p>
+     * Writes through this class hold the same lock, so none of them lands in the closed repo.
+     *
+     * @return The closed repo, null if nothing was loaded.
+     */
+    StringMapRepo unload() {
+        if (loader == null) {
+            return null;
+        }
+        synchronized (lock) {
+            StringMapRepo r = repo;
+            if (r != null) {
+                repo = null;
+                r.close();
+            }
+            return r;
+        }
+    }
+
+    private <R> R write(Function<StringMapRepo, R> op) {
+        synchronized (lock) {
+            return op.apply(getRepo());
+        }
     }
 
     public int getUserId() {
@@ -44,81 +109,93 @@ public class UserStringMapRepo {
     }
 
     public void reload() {
-        repo.reload();
+        write(r -> {
+            r.reload();
+            return null;
+        });
     }
 
     public void reloadAsync() {
-        repo.reloadAsync();
+        getRepo().reloadAsync();
     }
 
     public void flush() {
-        repo.flush();
+        write(r -> {
+            r.flush();
+            return null;
+        });
     }
 
     public void flushAsync() {
-        repo.flushAsync();
+        getRepo().flushAsync();
     }
 
     public String name() {
-        return repo.name();
+        return getRepo().name();
     }
 
     public Map<String, String> snapshot() {
-        return repo.snapshot();
+        return getRepo().snapshot();
     }
 
     public boolean hasNoneNullValue(String s) {
-        return repo.hasNoneNullValue(s);
+        return getRepo().hasNoneNullValue(s);
     }
 
     public int size() {
-        return repo.size();
+        return getRepo().size();
     }
 
     public boolean isEmpty() {
-        return repo.isEmpty();
+        return getRepo().isEmpty();
     }
 
     public boolean containsKey(Object key) {
-        return repo.containsKey(key);
+        return getRepo().containsKey(key);
     }
 
     public boolean containsValue(Object value) {
-        return repo.containsValue(value);
+        return getRepo().containsValue(value);
     }
 
     public String get(Object key) {
-        return repo.get(key);
+        return getRepo().get(key);
     }
 
     public String put(String key, String value) {
-        return repo.put(key, value);
+        return write(r -> r.put(key, value));
     }
 
     public String remove(Object key) {
-        return repo.remove(key);
+        return write(r -> r.remove(key));
     }
 
     public void putAll(Map<? extends String, ? extends String> m) {
-        repo.putAll(m);
+        write(r -> {
+            r.putAll(m);
+            return null;
+        });
     }
 
     public void clear() {
-        repo.clear();
+        write(r -> {
+            r.clear();
+            return null;
+        });
     }
 
     @NonNull
     public Set<String> keySet() {
-        return repo.keySet();
+        return getRepo().keySet();
     }
 
     @NonNull
     public Collection<String> values() {
-        return repo.values();
+        return getRepo().values();
     }
 
     @NonNull
     public Set<Map.Entry<String, String>> entrySet() {
-        return repo.entrySet();
+        return getRepo().entrySet();
     }
 }
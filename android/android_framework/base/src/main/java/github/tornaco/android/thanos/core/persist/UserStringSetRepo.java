@@ -4,20 +4,85 @@ import java.util.Collection;
 import java.util.Set;
 
 import github.tornaco.android.thanos.core.annotation.Keep;
+import github.tornaco.android.thanos.core.util.function.Function;
 import github.tornaco.android.thanos.core.util.function.Predicate;
-
+import github.tornaco.android.thanos.core.util.function.Supplier;
+
+/**
+ * Set repo of a single user.
+ * <p>
+ * Repos from {@link RepoFactory#getOrCreateUserStringSetRepo(String, int)} are real shards,
+ * each user has its own file, loaded on first access and unloaded when the user stops.
+ * Writes hold the lock {@link #unload()} closes the shard with, reads do not lock, a closed
+ * shard still returns what it flushed.
+ */
 @Keep
 public class UserStringSetRepo {
-    private final StringSetRepo repo;
+    private final Object lock = new Object();
+    private final Supplier<StringSetRepo> loader;
+    private volatile StringSetRepo repo;
     private final int userId;
 
+    /**
+     * Delegate to a repo shared by all users.
+     */
     public UserStringSetRepo(StringSetRepo repo, int userId) {
         this.repo = repo;
+        this.loader = null;
+        this.userId = userId;
+    }
+
+    UserStringSetRepo(int userId, Supplier<StringSetRepo> loader) {
+        this.loader = loader;
         this.userId = userId;
     }
 
+    /**
+     * For a shard, the returned repo is closed once the user stops, do not keep it.
+     */
     public StringSetRepo getRepo() {
-        return repo;
+        StringSetRepo r = repo;
+        if (r == null) {
+            synchronized (lock) {
+                r = repo;
+                if (r == null) {
+                    r = loader.get();
+                    repo = r;
+                }
+            }
+        }
+        return r;
+    }
+
+    boolean isLoaded() {
+        return repo != null;
+    }
+
+    /**
+     * Flush and close the loaded repo, next access loads it again.
+     * <p>
+     * Writes through this class hold the same lock, so none of them lands in the closed repo.
+     *
+     * @return The closed repo, null if nothing was loaded.
+     */
+    StringSetRepo unload() {
+        if (loader == null) {
+            return null;
+        }
+        synchronized (lock) {
+            StringSetRepo r = repo;
+            if (r != null) {
+                repo = null;
+                r.close();
+            }
+            return r;
+        }
+    }
+
+    private <R> R write(Function<StringSetRepo, R> op) {
+        synchronized (lock) {
+            return op.apply(getRepo());
+        }
     }
 
     public int getUserId() {
@@ -25,58 +90,71 @@ public class UserStringSetRepo {
     }
 
     public Set<String> getAll() {
-        return repo.getAll();
+        return getRepo().getAll();
+    }
+
+    public Set<String> snapshot() {
+        return getRepo().snapshot();
     }
 
     public void reload() {
-        repo.reload();
+        write(r -> {
+            r.reload();
+            return null;
+        });
     }
 
     public void reloadAsync() {
-        repo.reloadAsync();
+        getRepo().reloadAsync();
     }
 
     public void flush() {
-        repo.flush();
+        write(r -> {
+            r.flush();
+            return null;
+        });
     }
 
     public void flushAsync() {
-        repo.flushAsync();
+        getRepo().flushAsync();
     }
 
     public boolean add(String s) {
-        return repo.add(s);
+        return write(r -> r.add(s));
     }
 
     public boolean addAll(Collection<? extends String> c) {
-        return repo.addAll(c);
+        return write(r -> r.addAll(c));
     }
 
     public boolean remove(String s) {
-        return repo.remove(s);
+        return write(r -> r.remove(s));
     }
 
     public void removeAll() {
-        repo.removeAll();
+        write(r -> {
+            r.removeAll();
+            return null;
+        });
     }
 
     public boolean has(String s) {
-        return repo.has(s);
+        return getRepo().has(s);
     }
 
     public boolean has(String[] t) {
-        return repo.has(t);
+        return getRepo().has(t);
     }
 
     public String name() {
-        return repo.name();
+        return getRepo().name();
     }
 
     public int size() {
-        return repo.size();
+        return getRepo().size();
     }
 
     public String find(Predicate<String> predicate) {
-        return repo.find(predicate);
+        return getRepo().find(predicate);
     }
 }
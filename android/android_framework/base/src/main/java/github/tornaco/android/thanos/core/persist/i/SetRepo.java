@@ -11,8 +11,16 @@ import java.util.Set;
 
 public interface SetRepo<T> extends Repo {
 
+  /**
+   * @return A mutable copy of all elements.
+   */
   Set<T> getAll();
 
+  /**
+   * @return An immutable view of all elements, cheaper than {@link #getAll()} for reading.
+   */
+  Set<T> snapshot();
+
   boolean add(T t);
 
   boolean addAll(Collection<? extends T> c);
@@ -0,0 +1,106 @@
+/*
+ * This file is auto-generated.  DO NOT MODIFY.
+ * Using: /home/tornaco/Android/Sdk/build-tools/35.0.0/aidl -I/home/tornaco/Documents/Thanox/android/android_framework/base/src/main/java -p/home/tornaco/Documents/Thanox/android/android_sdk/framework.aidl -p/home/tornaco/Documents/Thanox/android/android_sdk/thanos.aidl /home/tornaco/Documents/Thanox/android/android_framework/base/src/main/java/github/tornaco/android/thanos/core/secure/IPrivacyChangeListener.aidl
+ */
+package github.tornaco.android.thanos.core.secure;
+public interface IPrivacyChangeListener extends android.os.IInterface
+{
+  /** Default implementation for IPrivacyChangeListener. */
+  public static class Default implements github.tornaco.android.thanos.core.secure.IPrivacyChangeListener
+  {
+    @Override public void onPrivacyChanged(long generation) throws android.os.RemoteException
+    {
+    }
+    @Override
+    public android.os.IBinder asBinder() {
+      return null;
+    }
+  }
+  /** Local-side IPC implementation stub class. */
+  public static abstract class Stub extends android.os.Binder implements github.tornaco.android.thanos.core.secure.IPrivacyChangeListener
+  {
+    /** Construct the stub at attach it to the interface. */
+    @SuppressWarnings("this-escape")
+    public Stub()
+    {
+      this.attachInterface(this, DESCRIPTOR);
+    }
+    /**
+     * Cast an IBinder object into an github.tornaco.android.thanos.core.secure.IPrivacyChangeListener interface,
+     * generating a proxy if needed.
+     */
+    public static github.tornaco.android.thanos.core.secure.IPrivacyChangeListener asInterface(android.os.IBinder obj)
+    {
+      if ((obj==null)) {
+        return null;
+      }
+      android.os.IInterface iin = obj.queryLocalInterface(DESCRIPTOR);
+      if (((iin!=null)&&(iin instanceof github.tornaco.android.thanos.core.secure.IPrivacyChangeListener))) {
+        return ((github.tornaco.android.thanos.core.secure.IPrivacyChangeListener)iin);
+      }
+      return new github.tornaco.android.thanos.core.secure.IPrivacyChangeListener.Stub.Proxy(obj);
+    }
+    @Override public android.os.IBinder asBinder()
+    {
+      return this;
+    }
+    @Override public boolean onTransact(int code, android.os.Parcel data, android.os.Parcel reply, int flags) throws android.os.RemoteException
+    {
+      java.lang.String descriptor = DESCRIPTOR;
+      if (code >= android.os.IBinder.FIRST_CALL_TRANSACTION && code <= android.os.IBinder.LAST_CALL_TRANSACTION) {
+        data.enforceInterface(descriptor);
+      }
+      if (code == INTERFACE_TRANSACTION) {
+        reply.writeString(descriptor);
+        return true;
+      }
+      switch (code)
+      {
+        case TRANSACTION_onPrivacyChanged:
+        {
+          long _arg0;
+          _arg0 = data.readLong();
+          this.onPrivacyChanged(_arg0);
+          break;
+        }
+        default:
+        {
+          return super.onTransact(code, data, reply, flags);
+        }
+      }
+      return true;
+    }
+    private static class Proxy implements github.tornaco.android.thanos.core.secure.IPrivacyChangeListener
+    {
+      private android.os.IBinder mRemote;
+      Proxy(android.os.IBinder remote)
+      {
+        mRemote = remote;
+      }
+      @Override public android.os.IBinder asBinder()
+      {
+        return mRemote;
+      }
+      public java.lang.String getInterfaceDescriptor()
+      {
+        return DESCRIPTOR;
+      }
+      @Override public void onPrivacyChanged(long generation) throws android.os.RemoteException
+      {
+        android.os.Parcel _data = android.os.Parcel.obtain();
+        try {
+          _data.writeInterfaceToken(DESCRIPTOR);
+          _data.writeLong(generation);
+          boolean _status = mRemote.transact(Stub.TRANSACTION_onPrivacyChanged, _data, null, android.os.IBinder.FLAG_ONEWAY);
+        }
+        finally {
+          _data.recycle();
+        }
+      }
+    }
+    static final int TRANSACTION_onPrivacyChanged = (android.os.IBinder.FIRST_CALL_TRANSACTION + 0);
+  }
+  /** @hide */
+  public static final java.lang.String DESCRIPTOR = "github.tornaco.android.thanos.core.secure.IPrivacyChangeListener";
+  public void onPrivacyChanged(long generation) throws android.os.RemoteException;
+}
@@ -147,6 +147,16 @@ public interface IPrivacyManager extends android.os.IInterface
     @Override public void setSensorOffEnabled(boolean enable) throws android.os.RemoteException
     {
     }
+    @Override public long registerPrivacyChangeListener(github.tornaco.android.thanos.core.secure.IPrivacyChangeListener listener) throws android.os.RemoteException
+    {
+      return 0L;
+    }
+    @Override public void unRegisterPrivacyChangeListener(github.tornaco.android.thanos.core.secure.IPrivacyChangeListener listener) throws android.os.RemoteException
+    {
+    }
+    @Override public void reportPrivacyCheats(java.lang.String pkg, int[] ops, int[] counts) throws android.os.RemoteException
+    {
+    }
     @Override
     public android.os.IBinder asBinder() {
       return null;
@@ -487,6 +497,34 @@ public interface IPrivacyManager extends android.os.IInterface
           reply.writeNoException();
           break;
         }
+        case TRANSACTION_registerPrivacyChangeListener:
+        {
+          github.tornaco.android.thanos.core.secure.IPrivacyChangeListener _arg0;
+          _arg0 = github.tornaco.android.thanos.core.secure.IPrivacyChangeListener.Stub.asInterface(data.readStrongBinder());
+          long _result = this.registerPrivacyChangeListener(_arg0);
+          reply.writeNoException();
+          reply.writeLong(_result);
+          break;
+        }
+        case TRANSACTION_unRegisterPrivacyChangeListener:
+        {
+          github.tornaco.android.thanos.core.secure.IPrivacyChangeListener _arg0;
+          _arg0 = github.tornaco.android.thanos.core.secure.IPrivacyChangeListener.Stub.asInterface(data.readStrongBinder());
+          this.unRegisterPrivacyChangeListener(_arg0);
+          reply.writeNoException();
+          break;
+        }
+        case TRANSACTION_reportPrivacyCheats:
+        {
+          java.lang.String _arg0;
+          _arg0 = data.readString();
+          int[] _arg1;
+          _arg1 = data.createIntArray();
+          int[] _arg2;
+          _arg2 = data.createIntArray();
+          this.reportPrivacyCheats(_arg0, _arg1, _arg2);
+          break;
+        }
         default:
         {
           return super.onTransact(code, data, reply, flags);
@@ -1130,6 +1168,53 @@ public interface IPrivacyManager extends android.os.IInterface
           _data.recycle();
         }
       }
+      @Override public long registerPrivacyChangeListener(github.tornaco.android.thanos.core.secure.IPrivacyChangeListener listener) throws android.os.RemoteException
+      {
+        android.os.Parcel _data = android.os.Parcel.obtain();
+        android.os.Parcel _reply = android.os.Parcel.obtain();
+        long _result;
+        try {
+          _data.writeInterfaceToken(DESCRIPTOR);
+          _data.writeStrongInterface(listener);
+          boolean _status = mRemote.transact(Stub.TRANSACTION_registerPrivacyChangeListener, _data, _reply, 0);
+          _reply.readException();
+          _result = _reply.readLong();
+        }
+        finally {
+          _reply.recycle();
+          _data.recycle();
+        }
+        return _result;
+      }
+      @Override public void unRegisterPrivacyChangeListener(github.tornaco.android.thanos.core.secure.IPrivacyChangeListener listener) throws android.os.RemoteException
+      {
+        android.os.Parcel _data = android.os.Parcel.obtain();
+        android.os.Parcel _reply = android.os.Parcel.obtain();
+        try {
+          _data.writeInterfaceToken(DESCRIPTOR);
+          _data.writeStrongInterface(listener);
+          boolean _status = mRemote.transact(Stub.TRANSACTION_unRegisterPrivacyChangeListener, _data, _reply, 0);
+          _reply.readException();
+        }
+        finally {
+          _reply.recycle();
+          _data.recycle();
+        }
+      }
+      @Override public void reportPrivacyCheats(java.lang.String pkg, int[] ops, int[] counts) throws android.os.RemoteException
+      {
+        android.os.Parcel _data = android.os.Parcel.obtain();
+        try {
+          _data.writeInterfaceToken(DESCRIPTOR);
+          _data.writeString(pkg);
+          _data.writeIntArray(ops);
+          _data.writeIntArray(counts);
+          boolean _status = mRemote.transact(Stub.TRANSACTION_reportPrivacyCheats, _data, null, android.os.IBinder.FLAG_ONEWAY);
+        }
+        finally {
+          _data.recycle();
+        }
+      }
     }
     static final int TRANSACTION_isPrivacyEnabled = (android.os.IBinder.FIRST_CALL_TRANSACTION + 0);
     static final int TRANSACTION_setPrivacyEnabled = (android.os.IBinder.FIRST_CALL_TRANSACTION + 1);
@@ -1167,6 +1252,9 @@ public interface IPrivacyManager extends android.os.IInterface
     static final int TRANSACTION_setSensorOffSettingsForPackage = (android.os.IBinder.FIRST_CALL_TRANSACTION + 33);
     static final int TRANSACTION_isSensorOffEnabled = (android.os.IBinder.FIRST_CALL_TRANSACTION + 34);
     static final int TRANSACTION_setSensorOffEnabled = (android.os.IBinder.FIRST_CALL_TRANSACTION + 35);
+    static final int TRANSACTION_registerPrivacyChangeListener = (android.os.IBinder.FIRST_CALL_TRANSACTION + 36);
+    static final int TRANSACTION_unRegisterPrivacyChangeListener = (android.os.IBinder.FIRST_CALL_TRANSACTION + 37);
+    static final int TRANSACTION_reportPrivacyCheats = (android.os.IBinder.FIRST_CALL_TRANSACTION + 38);
   }
   /** @hide */
   public static final java.lang.String DESCRIPTOR = "github.tornaco.android.thanos.core.secure.IPrivacyManager";
@@ -1206,6 +1294,9 @@ public interface IPrivacyManager extends android.os.IInterface
   public void setSensorOffSettingsForPackage(github.tornaco.android.thanos.core.pm.Pkg pkg, int settings) throws android.os.RemoteException;
   public boolean isSensorOffEnabled() throws android.os.RemoteException;
   public void setSensorOffEnabled(boolean enable) throws android.os.RemoteException;
+  public long registerPrivacyChangeListener(github.tornaco.android.thanos.core.secure.IPrivacyChangeListener listener) throws android.os.RemoteException;
+  public void unRegisterPrivacyChangeListener(github.tornaco.android.thanos.core.secure.IPrivacyChangeListener listener) throws android.os.RemoteException;
+  public void reportPrivacyCheats(java.lang.String pkg, int[] ops, int[] counts) throws android.os.RemoteException;
   /** @hide */
   static class _Parcel {
     static private <T> T readTypedObject(
@@ -1282,6 +1282,11 @@ public class AppOpsManager {
         service.onFinishOp(token, code, uid, packageName);
     }
 
+    @SneakyThrows
+    public boolean onStartOps(int uid, String packageName, int[] codes) {
+        return service.onStartOps(uid, packageName, codes);
+    }
+
     @SneakyThrows
     public void setOpRemindEnable(int code, boolean enable) {
         service.setOpRemindEnable(code, enable);
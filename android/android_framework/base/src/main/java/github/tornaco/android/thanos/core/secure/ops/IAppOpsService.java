@@ -79,6 +79,21 @@ public interface IAppOpsService extends android.os.IInterface
     {
       return false;
     }
+    @Override public long registerOpsChangeListener(github.tornaco.android.thanos.core.secure.ops.IAppOpsChangeListener listener) throws android.os.RemoteException
+    {
+      return 0L;
+    }
+    @Override public void unRegisterOpsChangeListener(github.tornaco.android.thanos.core.secure.ops.IAppOpsChangeListener listener) throws android.os.RemoteException
+    {
+    }
+    @Override public boolean onStartOps(int uid, java.lang.String packageName, int[] codes) throws android.os.RemoteException
+    {
+      return false;
+    }
+    @Override public int[] checkOperationAndRemind(int code, int uid, java.lang.String packageName) throws android.os.RemoteException
+    {
+      return null;
+    }
     @Override
     public android.os.IBinder asBinder() {
       return null;
@@ -330,6 +345,49 @@ public interface IAppOpsService extends android.os.IInterface
           reply.writeInt(((_result)?(1):(0)));
           break;
         }
+        case TRANSACTION_registerOpsChangeListener:
+        {
+          github.tornaco.android.thanos.core.secure.ops.IAppOpsChangeListener _arg0;
+          _arg0 = github.tornaco.android.thanos.core.secure.ops.IAppOpsChangeListener.Stub.asInterface(data.readStrongBinder());
+          long _result = this.registerOpsChangeListener(_arg0);
+          reply.writeNoException();
+          reply.writeLong(_result);
+          break;
+        }
+        case TRANSACTION_unRegisterOpsChangeListener:
+        {
+          github.tornaco.android.thanos.core.secure.ops.IAppOpsChangeListener _arg0;
+          _arg0 = github.tornaco.android.thanos.core.secure.ops.IAppOpsChangeListener.Stub.asInterface(data.readStrongBinder());
+          this.unRegisterOpsChangeListener(_arg0);
+          reply.writeNoException();
+          break;
+        }
+        case TRANSACTION_onStartOps:
+        {
+          int _arg0;
+          _arg0 = data.readInt();
+          java.lang.String _arg1;
+          _arg1 = data.readString();
+          int[] _arg2;
+          _arg2 = data.createIntArray();
+          boolean _result = this.onStartOps(_arg0, _arg1, _arg2);
+          reply.writeNoException();
+          reply.writeInt(((_result)?(1):(0)));
+          break;
+        }
+        case TRANSACTION_checkOperationAndRemind:
+        {
+          int _arg0;
+          _arg0 = data.readInt();
+          int _arg1;
+          _arg1 = data.readInt();
+          java.lang.String _arg2;
+          _arg2 = data.readString();
+          int[] _result = this.checkOperationAndRemind(_arg0, _arg1, _arg2);
+          reply.writeNoException();
+          reply.writeIntArray(_result);
+          break;
+        }
         default:
         {
           return super.onTransact(code, data, reply, flags);
@@ -706,6 +764,79 @@ public interface IAppOpsService extends android.os.IInterface
         }
         return _result;
       }
+      @Override public long registerOpsChangeListener(github.tornaco.android.thanos.core.secure.ops.IAppOpsChangeListener listener) throws android.os.RemoteException
+      {
+        android.os.Parcel _data = android.os.Parcel.obtain();
+        android.os.Parcel _reply = android.os.Parcel.obtain();
+        long _result;
+        try {
+          _data.writeInterfaceToken(DESCRIPTOR);
+          _data.writeStrongInterface(listener);
+          boolean _status = mRemote.transact(Stub.TRANSACTION_registerOpsChangeListener, _data, _reply, 0);
+          _reply.readException();
+          _result = _reply.readLong();
+        }
+        finally {
+          _reply.recycle();
+          _data.recycle();
+        }
+        return _result;
+      }
+      @Override public void unRegisterOpsChangeListener(github.tornaco.android.thanos.core.secure.ops.IAppOpsChangeListener listener) throws android.os.RemoteException
+      {
+        android.os.Parcel _data = android.os.Parcel.obtain();
+        android.os.Parcel _reply = android.os.Parcel.obtain();
+        try {
+          _data.writeInterfaceToken(DESCRIPTOR);
+          _data.writeStrongInterface(listener);
+          boolean _status = mRemote.transact(Stub.TRANSACTION_unRegisterOpsChangeListener, _data, _reply, 0);
+          _reply.readException();
+        }
+        finally {
+          _reply.recycle();
+          _data.recycle();
+        }
+      }
+      @Override public boolean onStartOps(int uid, java.lang.String packageName, int[] codes) throws android.os.RemoteException
+      {
+        android.os.Parcel _data = android.os.Parcel.obtain();
+        android.os.Parcel _reply = android.os.Parcel.obtain();
+        boolean _result;
+        try {
+          _data.writeInterfaceToken(DESCRIPTOR);
+          _data.writeInt(uid);
+          _data.writeString(packageName);
+          _data.writeIntArray(codes);
+          boolean _status = mRemote.transact(Stub.TRANSACTION_onStartOps, _data, _reply, 0);
+          _reply.readException();
+          _result = (0!=_reply.readInt());
+        }
+        finally {
+          _reply.recycle();
+          _data.recycle();
+        }
+        return _result;
+      }
+      @Override public int[] checkOperationAndRemind(int code, int uid, java.lang.String packageName) throws android.os.RemoteException
+      {
+        android.os.Parcel _data = android.os.Parcel.obtain();
+        android.os.Parcel _reply = android.os.Parcel.obtain();
+        int[] _result;
+        try {
+          _data.writeInterfaceToken(DESCRIPTOR);
+          _data.writeInt(code);
+          _data.writeInt(uid);
+          _data.writeString(packageName);
+          boolean _status = mRemote.transact(Stub.TRANSACTION_checkOperationAndRemind, _data, _reply, 0);
+          _reply.readException();
+          _result = _reply.createIntArray();
+        }
+        finally {
+          _reply.recycle();
+          _data.recycle();
+        }
+        return _result;
+      }
     }
     static final int TRANSACTION_setMode = (android.os.IBinder.FIRST_CALL_TRANSACTION + 0);
     static final int TRANSACTION_resetAllModes = (android.os.IBinder.FIRST_CALL_TRANSACTION + 1);
@@ -728,6 +859,10 @@ public interface IAppOpsService extends android.os.IInterface
     static final int TRANSACTION_clearSettingsWriteRecords = (android.os.IBinder.FIRST_CALL_TRANSACTION + 18);
     static final int TRANSACTION_setSettingsRecordEnabled = (android.os.IBinder.FIRST_CALL_TRANSACTION + 19);
     static final int TRANSACTION_isSettingsRecordEnabled = (android.os.IBinder.FIRST_CALL_TRANSACTION + 20);
+    static final int TRANSACTION_registerOpsChangeListener = (android.os.IBinder.FIRST_CALL_TRANSACTION + 21);
+    static final int TRANSACTION_unRegisterOpsChangeListener = (android.os.IBinder.FIRST_CALL_TRANSACTION + 22);
+    static final int TRANSACTION_onStartOps = (android.os.IBinder.FIRST_CALL_TRANSACTION + 23);
+    static final int TRANSACTION_checkOperationAndRemind = (android.os.IBinder.FIRST_CALL_TRANSACTION + 24);
   }
   /** @hide */
   public static final java.lang.String DESCRIPTOR = "github.tornaco.android.thanos.core.secure.ops.IAppOpsService";
@@ -752,6 +887,10 @@ public interface IAppOpsService extends android.os.IInterface
   public void clearSettingsWriteRecords() throws android.os.RemoteException;
   public void setSettingsRecordEnabled(boolean enable) throws android.os.RemoteException;
   public boolean isSettingsRecordEnabled() throws android.os.RemoteException;
+  public long registerOpsChangeListener(github.tornaco.android.thanos.core.secure.ops.IAppOpsChangeListener listener) throws android.os.RemoteException;
+  public void unRegisterOpsChangeListener(github.tornaco.android.thanos.core.secure.ops.IAppOpsChangeListener listener) throws android.os.RemoteException;
+  public boolean onStartOps(int uid, java.lang.String packageName, int[] codes) throws android.os.RemoteException;
+  public int[] checkOperationAndRemind(int code, int uid, java.lang.String packageName) throws android.os.RemoteException;
   /** @hide */
   static class _Parcel {
     static private <T> T readTypedObject(
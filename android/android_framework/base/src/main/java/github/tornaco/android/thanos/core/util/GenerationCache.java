@@ -0,0 +1,155 @@
+package github.tornaco.android.thanos.core.util;
+
+import com.elvishew.xlog.XLog;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of thanox answers, valid for one generation.
+ * <p>
+ * Server bumps a generation whenever an answer may change, and pushes it to a change listener
+ * the owner registers through {@link #register(Registration)}, all answers of an older
+ * generation are dropped then. A push of a generation not newer than the current one, e.g.
+ * a late one racing with the registration, is ignored. If the server does not support the
+ * listener, nothing is cached and every lookup should ask server.
+ */
+public final class GenerationCache<K, V> {
+
+    public interface Registration {
+        /**
+         * @return Current generation of server, 0 if it does not push changes.
+         */
+        long register() throws Exception;
+    }
+
+    /**
+     * Answers of one generation. A writer puts into the generation it read before asking
+     * server, a stale one is simply dropped.
+     */
+    public static final class Generation<K, V> {
+        public final long value;
+        private final int maxEntries;
+        private final Map<K, V> entries = new ConcurrentHashMap<>();
+
+        private Generation(long value, int maxEntries) {
+            this.value = value;
+            this.maxEntries = maxEntries;
+        }
+
+        public V get(K key) {
+            return entries.get(key);
+        }
+
+        public void put(K key, V value) {
+            // Drop all when exceeded, a process only asks a few keys in practice.
+            if (entries.size() >= maxEntries) {
+                entries.clear();
+            }
+            entries.put(key, value);
+        }
+
+        public int size() {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Key of up to two strings and two ints.
+     */
+    public static final class Key {
+        private final String s1;
+        private final String s2;
+        private final int i1;
+        private final int i2;
+        private final int hash;
+
+        private Key(String s1, String s2, int i1, int i2) {
+            this.s1 = s1;
+            this.s2 = s2;
+            this.i1 = i1;
+            this.i2 = i2;
+            int h = s1 == null ? 0 : s1.hashCode();
+            h = 31 * h + (s2 == null ? 0 : s2.hashCode());
+            h = 31 * h + i1;
+            this.hash = 31 * h + i2;
+        }
+
+        public static Key of(String s1, String s2, int i1, int i2) {
+            return new Key(s1, s2, i1, i2);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return i1 == key.i1 && i2 == key.i2
+                    && (s1 == null ? key.s1 == null : s1.equals(key.s1))
+                    && (s2 == null ? key.s2 == null : s2.equals(key.s2));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final String name;
+    private final int maxEntries;
+    private final Object lock = new Object();
+    // Null if server does not push changes, then nothing is cached.
+    private volatile Generation<K, V> current;
+
+    public GenerationCache(String name, int maxEntries) {
+        this.name = name;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Register the change listener and start caching with the generation server answers.
+     *
+     * @return False if registration failed and may be retried, nothing is cached then.
+     */
+    public boolean register(Registration registration) {
+        // Hold the lock invalidate waits on, a push during registration is applied after it.
+        synchronized (lock) {
+            long generation;
+            try {
+                generation = registration.register();
+            } catch (LinkageError e) {
+                // Server without the listener, never cache.
+                XLog.w("%s, listener not supported: %s", name, e);
+                current = null;
+                return true;
+            } catch (Throwable e) {
+                XLog.w(name + ", fail register listener", e);
+                current = null;
+                return false;
+            }
+            // Old server replies nothing, read as 0.
+            current = generation > 0 ? new Generation<>(generation, maxEntries) : null;
+            XLog.i("%s registered, generation: %s", name, generation);
+            return true;
+        }
+    }
+
+    /**
+     * Called with a generation pushed by server.
+     */
+    public void invalidate(long generation) {
+        synchronized (lock) {
+            Generation<K, V> g = current;
+            if (g != null && generation > g.value) {
+                current = new Generation<>(generation, maxEntries);
+            }
+        }
+    }
+
+    /**
+     * @return Answers of the current generation, null if nothing is cached.
+     */
+    public Generation<K, V> current() {
+        return current;
+    }
+}
@@ -0,0 +1,41 @@
+package github.tornaco.android.thanos.core.util;
+
+import com.elvishew.xlog.LogLevel;
+import com.elvishew.xlog.XLog;
+
+import github.tornaco.android.thanos.BuildProp;
+import github.tornaco.android.thanos.core.util.function.Supplier;
+
+/**
+ * Verbose and debug logging for hook code on hot paths, IFW, AMS and binder proxies.
+ * <p>
+ * {@link #LEVEL} is a build time constant, so logs under it compile to nothing, and a message is
+ * only built by its supplier when printed:
+ * <pre>
+ * HookLog.v(() -> "IFWHooks: " + method.getName() + " " + Arrays.toString(args));
+ * </pre>
+ * Capturing lambda is still allocated at the call site, guard a block of logs with
+ * {@link #VERBOSE} or {@link #DEBUG} where even that counts.
+ * <p>
+ * Info and above are always printed, use {@link XLog} for them.
+ */
+public final class HookLog {
+    public static final int LEVEL = BuildProp.THANOS_BUILD_DEBUG ? LogLevel.VERBOSE : LogLevel.INFO;
+    public static final boolean VERBOSE = LEVEL <= LogLevel.VERBOSE;
+    public static final boolean DEBUG = LEVEL <= LogLevel.DEBUG;
+
+    private HookLog() {
+    }
+
+    public static void v(Supplier<String> message) {
+        if (VERBOSE) {
+            XLog.v(message.get());
+        }
+    }
+
+    public static void d(Supplier<String> message) {
+        if (DEBUG) {
+            XLog.d(message.get());
+        }
+    }
+}
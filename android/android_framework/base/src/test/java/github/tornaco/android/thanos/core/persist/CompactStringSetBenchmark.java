@@ -0,0 +1,81 @@
+package github.tornaco.android.thanos.core.persist;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link StringSetRepo#has(String[])} as it is now, {@link CompactStringSet#containsAny}, against
+ * the per element {@code has()} loop it replaced, and the HashSet the repo held before.
+ * <p>
+ * Probes are fresh strings, as they come in from binder calls, so every hit costs an equals.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompactStringSetBenchmark {
+
+  @Param({"50", "500"})
+  public int elements;
+
+  // Volatile as the repo snapshot is.
+  private volatile CompactStringSet compact;
+  private volatile Set<String> hashSet;
+  private String[] probes;
+
+  @Setup
+  public void setup() {
+    Set<String> set = new HashSet<>();
+    for (int i = 0; i < elements; i++) {
+      set.add("com.example.app" + i + "|0");
+    }
+    compact = CompactStringSet.copyOf(set);
+    hashSet = set;
+    // Mostly misses, the last one hits.
+    probes = new String[8];
+    for (int i = 0; i < probes.length - 1; i++) {
+      probes[i] = new String("com.other.app" + i + "|0");
+    }
+    probes[probes.length - 1] = new String("com.example.app" + (elements - 1) + "|0");
+  }
+
+  @Benchmark
+  public boolean containsAny() {
+    return compact.containsAny(probes);
+  }
+
+  @Benchmark
+  public boolean hasLoop() {
+    for (String s : probes) {
+      if (s != null && compact.contains(s)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Benchmark
+  public boolean hashSetHasLoop() {
+    for (String s : probes) {
+      if (s != null && hashSet.contains(s)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
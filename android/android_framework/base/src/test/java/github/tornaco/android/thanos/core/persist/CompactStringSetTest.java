@@ -0,0 +1,108 @@
+package github.tornaco.android.thanos.core.persist;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class CompactStringSetTest {
+
+    @Test
+    public void givenDuplicatesAndNulls_whenCopyOf_thenSortedDistinctElements() {
+        List<String> elements = Arrays.asList("b", null, "a", "c", "a", null, "b");
+
+        CompactStringSet set = CompactStringSet.copyOf(elements);
+
+        Assert.assertEquals(3, set.size());
+        Assert.assertArrayEquals(new String[]{"a", "b", "c"}, set.toArray());
+    }
+
+    @Test
+    public void givenOnlyNulls_whenCopyOf_thenEmpty() {
+        Assert.assertSame(CompactStringSet.EMPTY, CompactStringSet.copyOf(Arrays.asList(null, null)));
+        Assert.assertSame(CompactStringSet.EMPTY, CompactStringSet.copyOf(new ArrayList<>()));
+    }
+
+    @Test
+    public void givenEqualStringsFromTwoSets_whenCopyOf_thenSameInstanceIsShared() {
+        String a = new String("com.example.app");
+        String b = new String("com.example.app");
+
+        CompactStringSet first = CompactStringSet.copyOf(Arrays.asList(a));
+        CompactStringSet second = CompactStringSet.copyOf(Arrays.asList(b));
+
+        Assert.assertSame(first.iterator().next(), second.iterator().next());
+    }
+
+    @Test
+    public void givenSet_whenContains_thenMatchesByEquals() {
+        CompactStringSet set = CompactStringSet.copyOf(Arrays.asList("com.a", "com.b|10"));
+
+        Assert.assertTrue(set.contains(new String("com.b|10")));
+        Assert.assertFalse(set.contains("com.c"));
+        Assert.assertFalse(set.contains(null));
+        Assert.assertFalse(set.contains(1));
+        Assert.assertFalse(CompactStringSet.EMPTY.contains("com.a"));
+    }
+
+    @Test
+    public void givenSet_whenContainsAny_thenTrueIfAnyElementIsIn() {
+        CompactStringSet set = CompactStringSet.copyOf(Arrays.asList("com.a", "com.b"));
+
+        Assert.assertTrue(set.containsAny(new String[]{null, "com.x", "com.b"}));
+        Assert.assertFalse(set.containsAny(new String[]{null, "com.x"}));
+        Assert.assertFalse(set.containsAny(new String[0]));
+        Assert.assertFalse(set.containsAny(null));
+        Assert.assertFalse(CompactStringSet.EMPTY.containsAny(new String[]{"com.a"}));
+    }
+
+    @Test
+    public void givenRandomWrites_whenWithAndWithout_thenSameAsHashSet() {
+        Random random = new Random(42);
+        Set<String> expected = new HashSet<>();
+        CompactStringSet set = CompactStringSet.EMPTY;
+        for (int i = 0; i < 5000; i++) {
+            String s = "pkg" + random.nextInt(200);
+            if (random.nextInt(3) == 0) {
+                expected.remove(s);
+                set = set.without(s);
+            } else {
+                expected.add(s);
+                set = set.with(s);
+            }
+            Assert.assertEquals(expected.size(), set.size());
+        }
+
+        Assert.assertEquals(expected, set);
+        Assert.assertEquals(set, expected);
+        List<String> sorted = new ArrayList<>(expected);
+        sorted.sort(null);
+        Assert.assertArrayEquals(sorted.toArray(), set.toArray());
+    }
+
+    @Test
+    public void givenPresentOrAbsent_whenWithOrWithout_thenSameSetIsReturned() {
+        CompactStringSet set = CompactStringSet.copyOf(Arrays.asList("com.a", "com.b"));
+
+        Assert.assertSame(set, set.with("com.a"));
+        Assert.assertSame(set, set.without("com.x"));
+        Assert.assertSame(CompactStringSet.EMPTY, set.without("com.a").without("com.b"));
+    }
+
+    @Test
+    public void givenCollidingHashCodes_whenContains_thenAllAreFound() {
+        // "Aa" and "BB" have the same hash code.
+        CompactStringSet set = CompactStringSet.copyOf(Arrays.asList("Aa", "BB", "AaAa", "BBBB", "AaBB"));
+
+        Assert.assertTrue(set.contains("Aa"));
+        Assert.assertTrue(set.contains("BB"));
+        Assert.assertFalse(set.contains("BBAa"));
+        Assert.assertTrue(set.without("Aa").contains("BB"));
+        Assert.assertFalse(set.without("Aa").contains("Aa"));
+    }
+}
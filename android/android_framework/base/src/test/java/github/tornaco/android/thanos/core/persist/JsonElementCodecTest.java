@@ -0,0 +1,97 @@
+package github.tornaco.android.thanos.core.persist;
+
+import com.elvishew.xlog.LogConfiguration;
+import com.elvishew.xlog.XLog;
+import com.elvishew.xlog.printer.ConsolePrinter;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+public class JsonElementCodecTest {
+
+    static final class Rule {
+        String id;
+        int priority;
+
+        Rule(String id, int priority) {
+            this.id = id;
+            this.priority = priority;
+        }
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+        XLog.init(new LogConfiguration.Builder().build(), new ConsolePrinter());
+    }
+
+    private static JsonElementCodec<Rule> newCodec() {
+        return new JsonElementCodec<>(() -> new TypeToken<Rule>() {
+        });
+    }
+
+    @Test
+    public void givenFlushedElement_whenToJsonAgain_thenSameJsonInstance() {
+        JsonElementCodec<Rule> codec = newCodec();
+        Rule rule = new Rule("a", 1);
+
+        String first = codec.toJson(rule);
+
+        Assert.assertSame(first, codec.toJson(rule));
+        Assert.assertEquals(1, codec.cachedSize());
+    }
+
+    @Test
+    public void givenEqualJsonButDifferentInstances_whenToJson_thenCachedPerInstance() {
+        JsonElementCodec<Rule> codec = newCodec();
+
+        codec.toJson(new Rule("a", 1));
+        String json = codec.toJson(new Rule("a", 1));
+
+        Assert.assertEquals("{\"id\":\"a\",\"priority\":1}", json);
+        Assert.assertEquals(2, codec.cachedSize());
+    }
+
+    @Test
+    public void givenInvalidatedElement_whenChangedAndToJson_thenSerializedAgain() {
+        JsonElementCodec<Rule> codec = newCodec();
+        Rule rule = new Rule("a", 1);
+        codec.toJson(rule);
+
+        codec.invalidate(rule);
+        rule.priority = 2;
+
+        Assert.assertEquals("{\"id\":\"a\",\"priority\":2}", codec.toJson(rule));
+    }
+
+    @Test
+    public void givenInvalidateAll_whenToJson_thenNothingCached() {
+        JsonElementCodec<Rule> codec = newCodec();
+        codec.toJson(new Rule("a", 1));
+        codec.toJson(new Rule("b", 1));
+
+        codec.invalidateAll();
+
+        Assert.assertEquals(0, codec.cachedSize());
+    }
+
+    @Test
+    public void givenDecodedElements_whenEncode_thenSourceJsonReused() {
+        JsonElementCodec<Rule> codec = newCodec();
+        // Not the way gson writes it, so a reused json is told apart from a serialized one.
+        String json = "{ \"priority\": 3, \"id\": \"a\" }";
+
+        Map<String, Rule> decoded = codec.decode(Arrays.asList(json, "not json", null));
+        Set<String> encoded = codec.encode(decoded.values());
+
+        Assert.assertEquals(1, decoded.size());
+        Assert.assertEquals(3, decoded.get(json).priority);
+        Assert.assertEquals(1, encoded.size());
+        Assert.assertSame(json, encoded.iterator().next());
+    }
+}
@@ -0,0 +1,99 @@
+package github.tornaco.android.thanos.core.persist;
+
+import com.google.gson.reflect.TypeToken;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flush and reload of a {@link JsonObjectSetRepo} with 10k elements, through the same
+ * {@link JsonElementCodec} and {@link RepoSnapshotCodec} calls the repo makes, without file io.
+ * <p>
+ * Before: every flush serializes all elements, as a codec with nothing cached does.
+ * After: the codec keeps the json of loaded and flushed elements, a flush only encodes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonObjectSetRepoFlushBenchmark {
+  private static final int ELEMENTS = 10_000;
+
+  static final class Rule {
+    String id;
+    String pkgName;
+    int userId;
+    boolean enabled;
+    long createAt;
+    List<String> tags;
+  }
+
+  private final List<Rule> rules = new ArrayList<>(ELEMENTS);
+  private JsonElementCodec<Rule> warmCodec;
+  private byte[] snapshot;
+
+  private static JsonElementCodec<Rule> newCodec() {
+    return new JsonElementCodec<>(() -> new TypeToken<Rule>() {
+    });
+  }
+
+  @Setup
+  public void setup() throws IOException {
+    for (int i = 0; i < ELEMENTS; i++) {
+      Rule rule = new Rule();
+      rule.id = "rule-" + i;
+      rule.pkgName = "com.example.app" + (i % 500);
+      rule.userId = i % 3;
+      rule.enabled = i % 2 == 0;
+      rule.createAt = 1_700_000_000_000L + i;
+      rule.tags = new ArrayList<>();
+      rule.tags.add("tag" + (i % 7));
+      rules.add(rule);
+    }
+    warmCodec = newCodec();
+    snapshot = RepoSnapshotCodec.encodeSet(warmCodec.encode(rules));
+  }
+
+  @Benchmark
+  public byte[] flushUncached() throws IOException {
+    return RepoSnapshotCodec.encodeSet(newCodec().encode(rules));
+  }
+
+  @Benchmark
+  public byte[] flushCached() throws IOException {
+    return RepoSnapshotCodec.encodeSet(warmCodec.encode(rules));
+  }
+
+  @Benchmark
+  public Map<String, Rule> reload() throws IOException {
+    return newCodec().decode(RepoSnapshotCodec.decode(ByteBuffer.wrap(snapshot), RepoSnapshotCodec.KIND_SET));
+  }
+
+  /**
+   * A flush right after boot, the reloaded json is reused.
+   */
+  @Benchmark
+  public Set<String> reloadThenFlush() throws IOException {
+    JsonElementCodec<Rule> codec = newCodec();
+    Map<String, Rule> loaded = codec.decode(RepoSnapshotCodec.decode(ByteBuffer.wrap(snapshot), RepoSnapshotCodec.KIND_SET));
+    return codec.encode(loaded.values());
+  }
+}
@@ -0,0 +1,225 @@
+package github.tornaco.android.thanos.core.persist;
+
+import com.elvishew.xlog.LogConfiguration;
+import com.elvishew.xlog.XLog;
+import com.elvishew.xlog.printer.ConsolePrinter;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import github.tornaco.android.thanos.core.persist.i.Repo;
+
+public class RepoFlushSchedulerTest {
+
+    private FakePoster poster;
+    private ExecutorService io;
+    private RepoFlushScheduler scheduler;
+
+    @BeforeClass
+    public static void initLog() {
+        XLog.init(new LogConfiguration.Builder().build(), new ConsolePrinter());
+    }
+
+    @Before
+    public void setUp() {
+        poster = new FakePoster();
+        io = Executors.newSingleThreadExecutor();
+        scheduler = new RepoFlushScheduler(poster, io);
+    }
+
+    @After
+    public void tearDown() {
+        io.shutdownNow();
+    }
+
+    @Test
+    public void givenChange_whenMarkDirty_thenCommitAfterWindow() {
+        scheduler.markDirty(new CountingRepo("a"), 10, false);
+
+        Assert.assertEquals(RepoFlushScheduler.COMMIT_WINDOW, poster.delay);
+    }
+
+    @Test
+    public void givenChanges_whenMarkDirtyAgain_thenWindowRestartsUntilMaxLatency() {
+        scheduler.setMaxLatencyMillis(8000);
+        scheduler.markDirty(new CountingRepo("a"), 10, false);
+
+        poster.now += 4000;
+        scheduler.markDirty(new CountingRepo("b"), 10, false);
+        Assert.assertEquals(4000, poster.delay);
+
+        poster.now += 3000;
+        scheduler.markDirty(new CountingRepo("c"), 10, false);
+        Assert.assertEquals(1000, poster.delay);
+    }
+
+    @Test
+    public void givenFastCommitPending_whenSlowChange_thenFastDeadlineIsKept() {
+        scheduler.markDirty(new CountingRepo("a"), 10, true);
+        Assert.assertEquals(RepoFlushScheduler.COMMIT_WINDOW_FAST, poster.delay);
+
+        poster.now += 40;
+        scheduler.markDirty(new CountingRepo("b"), 10, false);
+
+        Assert.assertEquals(RepoFlushScheduler.COMMIT_WINDOW_FAST - 40, poster.delay);
+    }
+
+    @Test
+    public void givenDirtyBytesOverLimit_whenMarkDirty_thenCommitAtOnce() {
+        scheduler.setMaxDirtyBytes(100);
+        scheduler.markDirty(new CountingRepo("a"), 60, false);
+        scheduler.markDirty(new CountingRepo("b"), 60, false);
+        Assert.assertEquals(0, poster.delay);
+
+        poster.now += 10;
+        scheduler.markDirty(new CountingRepo("c"), 1, false);
+        Assert.assertEquals(0, poster.delay);
+    }
+
+    @Test
+    public void givenCommitDone_whenMarkDirty_thenPreviousFastDeadlineIsForgotten() throws Exception {
+        CountingRepo repo = new CountingRepo("a");
+        scheduler.markDirty(repo, 10, true);
+        poster.run();
+        awaitIo();
+        Assert.assertEquals(1, repo.flushes.get());
+
+        poster.now += 1000;
+        scheduler.markDirty(repo, 10, false);
+
+        Assert.assertEquals(RepoFlushScheduler.COMMIT_WINDOW, poster.delay);
+    }
+
+    @Test
+    public void givenSameRepoDirtyTwice_whenCommit_thenFlushedOnce() throws Exception {
+        CountingRepo repo = new CountingRepo("a");
+        scheduler.markDirty(repo, 10, false);
+        scheduler.markDirty(repo, 10, false);
+        Assert.assertEquals(1, scheduler.getDirtyRepoCount());
+
+        poster.run();
+        awaitIo();
+
+        Assert.assertEquals(1, repo.flushes.get());
+        Assert.assertEquals(0, scheduler.getDirtyRepoCount());
+    }
+
+    @Test
+    public void givenDirtyRepo_whenFlushAllNow_thenFlushedOnCallingThread() {
+        CountingRepo repo = new CountingRepo("a");
+        scheduler.markDirty(repo, 10, false);
+
+        scheduler.flushAllNow();
+
+        Assert.assertEquals(1, repo.flushes.get());
+        Assert.assertEquals(Thread.currentThread(), repo.lastFlushThread);
+        Assert.assertEquals(0, scheduler.getDirtyRepoCount());
+    }
+
+    @Test
+    public void givenCommitQueuedOnIo_whenFlushAllNow_thenWaitForIt() throws Exception {
+        CountDownLatch ioBlocked = new CountDownLatch(1);
+        io.execute(() -> {
+            try {
+                ioBlocked.await();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        CountingRepo repo = new CountingRepo("a");
+        scheduler.markDirty(repo, 10, false);
+        // Commit hands the repo to io, where it waits behind the blocked task.
+        poster.run();
+        Assert.assertEquals(0, repo.flushes.get());
+
+        CountDownLatch flushed = new CountDownLatch(1);
+        Thread shutdown = new Thread(() -> {
+            scheduler.flushAllNow();
+            flushed.countDown();
+        });
+        shutdown.start();
+        Assert.assertFalse(flushed.await(200, TimeUnit.MILLISECONDS));
+
+        ioBlocked.countDown();
+        Assert.assertTrue(flushed.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, repo.flushes.get());
+    }
+
+    private void awaitIo() throws Exception {
+        io.submit(() -> {
+        }).get(5, TimeUnit.SECONDS);
+    }
+
+    private static final class FakePoster implements RepoFlushScheduler.Poster {
+        long now = 1000;
+        Runnable pending;
+        long delay = -1;
+
+        @Override
+        public void postDelayed(Runnable r, long delayMillis) {
+            pending = r;
+            delay = delayMillis;
+        }
+
+        @Override
+        public void removeCallbacks(Runnable r) {
+            if (pending == r) {
+                pending = null;
+                delay = -1;
+            }
+        }
+
+        @Override
+        public long uptimeMillis() {
+            return now;
+        }
+
+        void run() {
+            Runnable r = pending;
+            pending = null;
+            delay = -1;
+            r.run();
+        }
+    }
+
+    private static final class CountingRepo implements Repo {
+        private final String name;
+        final AtomicInteger flushes = new AtomicInteger();
+        volatile Thread lastFlushThread;
+
+        CountingRepo(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void reload() {
+        }
+
+        @Override
+        public void reloadAsync() {
+        }
+
+        @Override
+        public void flush() {
+            lastFlushThread = Thread.currentThread();
+            flushes.incrementAndGet();
+        }
+
+        @Override
+        public void flushAsync() {
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package github.tornaco.android.thanos.core.persist;
+
+import com.elvishew.xlog.LogConfiguration;
+import com.elvishew.xlog.XLog;
+import com.elvishew.xlog.printer.ConsolePrinter;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class RepoJournalTest {
+
+    private File dir;
+    private RepoJournal journal;
+
+    @BeforeClass
+    public static void initLog() {
+        XLog.init(new LogConfiguration.Builder().build(), new ConsolePrinter());
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("repo-journal").toFile();
+        journal = new RepoJournal(new File(dir, "repo.xml"));
+    }
+
+    @After
+    public void tearDown() {
+        journal.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void givenAppendedOps_whenReplay_thenOpsAreReplayedInOrder() throws IOException {
+        journal.append(Arrays.asList(
+                new RepoJournal.Op(RepoJournal.OP_PUT, "a", "1"),
+                new RepoJournal.Op(RepoJournal.OP_REMOVE, "a", null)));
+        journal.append(Arrays.asList(
+                new RepoJournal.Op(RepoJournal.OP_CLEAR, null, null),
+                new RepoJournal.Op(RepoJournal.OP_ADD, "中文|0", null)));
+
+        List<String> replayed = replay();
+
+        Assert.assertEquals(Arrays.asList("4 a 1", "2 a null", "3 null null", "1 中文|0 null"), replayed);
+    }
+
+    @Test
+    public void givenTornTail_whenReplay_thenValidOpsAreKeptAndTailIsCut() throws IOException {
+        journal.append(Arrays.asList(
+                new RepoJournal.Op(RepoJournal.OP_ADD, "a", null),
+                new RepoJournal.Op(RepoJournal.OP_ADD, "b", null)));
+        long validLength = journal.length();
+        // A record cut in the middle of its key, as a crash during append leaves it.
+        try (FileOutputStream out = new FileOutputStream(journal.getFile(), true)) {
+            out.write(new byte[]{RepoJournal.OP_ADD, 0, 0, 0, 8, 'c', 'd'});
+        }
+
+        List<String> replayed = replay();
+
+        Assert.assertEquals(Arrays.asList("1 a null", "1 b null"), replayed);
+        Assert.assertEquals(validLength, journal.length());
+
+        journal.append(Arrays.asList(new RepoJournal.Op(RepoJournal.OP_REMOVE, "a", null)));
+        Assert.assertEquals(Arrays.asList("1 a null", "1 b null", "2 a null"), replay());
+    }
+
+    @Test
+    public void givenCorruptedRecord_whenReplay_thenOpsFromItAreDropped() throws IOException {
+        journal.append(Arrays.asList(new RepoJournal.Op(RepoJournal.OP_ADD, "a", null)));
+        long firstEnd = journal.length();
+        journal.append(Arrays.asList(
+                new RepoJournal.Op(RepoJournal.OP_ADD, "b", null),
+                new RepoJournal.Op(RepoJournal.OP_ADD, "c", null)));
+        // Flip the key of the second record: op(1) + length(4) puts it at firstEnd + 5.
+        try (RandomAccessFile raf = new RandomAccessFile(journal.getFile(), "rw")) {
+            raf.seek(firstEnd + 5);
+            raf.write('x');
+        }
+
+        List<String> replayed = replay();
+
+        Assert.assertEquals(Arrays.asList("1 a null"), replayed);
+        Assert.assertEquals(firstEnd, journal.length());
+    }
+
+    @Test
+    public void givenBadHeader_whenReplay_thenJournalIsDropped() throws IOException {
+        Files.write(journal.getFile().toPath(), new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9});
+
+        List<String> replayed = replay();
+
+        Assert.assertTrue(replayed.isEmpty());
+        Assert.assertFalse(journal.exists());
+    }
+
+    @Test
+    public void givenNoJournal_whenReplay_thenNothingIsReplayed() throws IOException {
+        Assert.assertTrue(replay().isEmpty());
+        Assert.assertFalse(journal.exists());
+    }
+
+    private List<String> replay() throws IOException {
+        List<String> ops = new ArrayList<>();
+        int count = journal.replay((code, key, value) -> ops.add(code + " " + key + " " + value));
+        Assert.assertEquals(ops.size(), count);
+        return ops;
+    }
+}
@@ -0,0 +1,89 @@
+package github.tornaco.android.thanos.core.persist;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+public class RepoSnapshotCodecTest {
+
+    private static RepoSnapshotCodec.Strings decode(byte[] bytes, byte kind) throws IOException {
+        return RepoSnapshotCodec.decode(ByteBuffer.wrap(bytes), kind);
+    }
+
+    @Test
+    public void givenSet_whenEncodeAndDecode_thenSameStringsInOrder() throws IOException {
+        List<String> elements = Arrays.asList("com.example.a", "", "中文包名", null, "com.example.b");
+
+        byte[] bytes = RepoSnapshotCodec.encodeSet(elements);
+
+        Assert.assertEquals(elements, new ArrayList<>(decode(bytes, RepoSnapshotCodec.KIND_SET)));
+    }
+
+    @Test
+    public void givenMap_whenEncodeAndDecode_thenKeysAndValuesInterleaved() throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("a", "1");
+        entries.put("b", null);
+
+        byte[] bytes = RepoSnapshotCodec.encodeMap(entries);
+
+        Assert.assertEquals(Arrays.asList("a", "1", "b", null),
+                new ArrayList<>(decode(bytes, RepoSnapshotCodec.KIND_MAP)));
+    }
+
+    @Test
+    public void givenEmptySet_whenEncodeAndDecode_thenEmpty() throws IOException {
+        byte[] bytes = RepoSnapshotCodec.encodeSet(new ArrayList<>());
+
+        Assert.assertEquals(RepoSnapshotCodec.HEADER_SIZE, bytes.length);
+        Assert.assertTrue(decode(bytes, RepoSnapshotCodec.KIND_SET).isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void givenFlippedPayloadByte_whenDecode_thenCrcMismatch() throws IOException {
+        byte[] bytes = RepoSnapshotCodec.encodeSet(Arrays.asList("com.example.a", "com.example.b"));
+        bytes[bytes.length - 1] ^= 1;
+
+        decode(bytes, RepoSnapshotCodec.KIND_SET);
+    }
+
+    @Test(expected = IOException.class)
+    public void givenTruncatedFile_whenDecode_thenRejected() throws IOException {
+        byte[] bytes = RepoSnapshotCodec.encodeSet(Arrays.asList("com.example.a", "com.example.b"));
+
+        decode(Arrays.copyOf(bytes, bytes.length - 3), RepoSnapshotCodec.KIND_SET);
+    }
+
+    @Test(expected = IOException.class)
+    public void givenTruncatedHeader_whenDecode_thenRejected() throws IOException {
+        decode(new byte[RepoSnapshotCodec.HEADER_SIZE - 1], RepoSnapshotCodec.KIND_SET);
+    }
+
+    @Test(expected = IOException.class)
+    public void givenMapSnapshot_whenDecodeAsSet_thenRejected() throws IOException {
+        byte[] bytes = RepoSnapshotCodec.encodeMap(new LinkedHashMap<>());
+
+        decode(bytes, RepoSnapshotCodec.KIND_SET);
+    }
+
+    @Test(expected = IOException.class)
+    public void givenStringLengthPastEnd_whenDecode_thenRejectedEvenWithMatchingCrc() throws IOException {
+        byte[] valid = RepoSnapshotCodec.encodeSet(Arrays.asList("abc"));
+        // The single string claims more bytes than exist, crc is fixed up to match.
+        ByteBuffer buffer = ByteBuffer.wrap(valid);
+        buffer.putInt(RepoSnapshotCodec.HEADER_SIZE, 100);
+        CRC32 crc = new CRC32();
+        crc.update(valid, RepoSnapshotCodec.HEADER_SIZE, valid.length - RepoSnapshotCodec.HEADER_SIZE);
+        buffer.putInt(17, (int) crc.getValue());
+
+        decode(valid, RepoSnapshotCodec.KIND_SET);
+    }
+}
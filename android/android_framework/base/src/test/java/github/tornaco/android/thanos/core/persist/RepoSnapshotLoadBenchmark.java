@@ -0,0 +1,99 @@
+package github.tornaco.android.thanos.core.persist;
+
+import org.kxml2.io.KXmlParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import github.tornaco.android.thanos.core.util.FastXmlSerializer;
+import github.tornaco.android.thanos.core.util.XmlUtils;
+
+/**
+ * Load time of a set repo snapshot, from file to the published {@link CompactStringSet}:
+ * xml parsed by {@link XmlUtils} against the mapped {@link RepoSnapshotCodec} binary.
+ * <p>
+ * Files are in the page cache after the first iteration, so this compares parsing and
+ * decoding, not disk reads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RepoSnapshotLoadBenchmark {
+
+  @Param({"1000", "10000"})
+  public int elements;
+
+  private File dir;
+  private File xml;
+  private File bin;
+
+  @Setup
+  public void setup() throws Exception {
+    Set<String> set = new HashSet<>();
+    for (int i = 0; i < elements; i++) {
+      set.add("com.example.app" + i + "|" + (i % 3));
+    }
+    dir = Files.createTempDirectory("repo-snapshot").toFile();
+    xml = new File(dir, "repo.xml");
+    bin = new File(dir, "repo.xml.bin");
+
+    try (FileOutputStream out = new FileOutputStream(xml)) {
+      FastXmlSerializer serializer = new FastXmlSerializer();
+      serializer.setOutput(out, StandardCharsets.UTF_8.name());
+      serializer.startDocument(null, true);
+      XmlUtils.writeSetXml(set, null, serializer);
+      serializer.endDocument();
+    }
+    Files.write(bin.toPath(), RepoSnapshotCodec.encodeSet(set));
+  }
+
+  @TearDown
+  public void tearDown() {
+    xml.delete();
+    bin.delete();
+    dir.delete();
+  }
+
+  @Benchmark
+  @SuppressWarnings("unchecked")
+  public Set<String> loadXml() throws Exception {
+    try (FileInputStream in = new FileInputStream(xml)) {
+      KXmlParser parser = new KXmlParser();
+      parser.setInput(in, null);
+      return CompactStringSet.copyOf((Collection<String>) XmlUtils.readValueXml(parser, new String[1]));
+    }
+  }
+
+  @Benchmark
+  public Set<String> loadBinary() throws IOException {
+    try (FileInputStream in = new FileInputStream(bin)) {
+      FileChannel channel = in.getChannel();
+      return CompactStringSet.copyOf(RepoSnapshotCodec.decode(
+          channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), RepoSnapshotCodec.KIND_SET));
+    }
+  }
+}
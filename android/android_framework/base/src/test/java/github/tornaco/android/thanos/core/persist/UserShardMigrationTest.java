@@ -0,0 +1,96 @@
+package github.tornaco.android.thanos.core.persist;
+
+import com.elvishew.xlog.LogConfiguration;
+import com.elvishew.xlog.XLog;
+import com.elvishew.xlog.printer.ConsolePrinter;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class UserShardMigrationTest {
+
+    private File dir;
+    private File marker;
+
+    @BeforeClass
+    public static void initLog() {
+        XLog.init(new LogConfiguration.Builder().build(), new ConsolePrinter());
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("user-shard-migration").toFile();
+        marker = new File(dir, "user_shards.migration");
+    }
+
+    @After
+    public void tearDown() {
+        new File(marker.getPath() + ".tmp").delete();
+        marker.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void givenUsersAliveAtUpgrade_whenClaimSeed_thenOnlyThoseUsersAreSeeded() {
+        UserShardMigration migration = UserShardMigration.load(marker, new int[]{0, 10});
+
+        Assert.assertTrue(migration.claimSeed(10, "a_u10.xml"));
+        Assert.assertFalse(migration.claimSeed(11, "a_u11.xml"));
+        Assert.assertFalse(migration.claimSeed(0, "a.xml"));
+    }
+
+    @Test
+    public void givenClaimedShard_whenClaimAgain_thenNotSeededTwice() {
+        UserShardMigration migration = UserShardMigration.load(marker, new int[]{10});
+
+        Assert.assertTrue(migration.claimSeed(10, "a_u10.xml"));
+        Assert.assertFalse(migration.claimSeed(10, "a_u10.xml"));
+        Assert.assertTrue(migration.claimSeed(10, "b_u10.xml"));
+    }
+
+    @Test
+    public void givenUserCreatedAfterUpgrade_whenLoadedOnNextBoot_thenItStartsEmpty() {
+        UserShardMigration.load(marker, new int[]{0, 10});
+
+        UserShardMigration nextBoot = UserShardMigration.load(marker, new int[]{0, 10, 11});
+
+        Assert.assertTrue(nextBoot.claimSeed(10, "a_u10.xml"));
+        Assert.assertFalse(nextBoot.claimSeed(11, "a_u11.xml"));
+    }
+
+    @Test
+    public void givenClaimedShard_whenLoadedOnNextBoot_thenStillClaimed() {
+        UserShardMigration.load(marker, new int[]{10}).claimSeed(10, "a_u10.xml");
+
+        UserShardMigration nextBoot = UserShardMigration.load(marker, new int[]{10});
+
+        Assert.assertFalse(nextBoot.claimSeed(10, "a_u10.xml"));
+        Assert.assertTrue(nextBoot.claimSeed(10, "b_u10.xml"));
+    }
+
+    @Test
+    public void givenRemovedUser_whenIdReusedOnNextBoot_thenNotSeeded() {
+        UserShardMigration.load(marker, new int[]{10}).onUserRemoved(10);
+
+        UserShardMigration nextBoot = UserShardMigration.load(marker, new int[]{10});
+
+        Assert.assertFalse(nextBoot.claimSeed(10, "a_u10.xml"));
+    }
+
+    @Test
+    public void givenCorruptMarker_whenLoad_thenNobodyIsSeeded() throws IOException {
+        Files.write(marker.toPath(), "u ten\n".getBytes(StandardCharsets.UTF_8));
+
+        UserShardMigration migration = UserShardMigration.load(marker, new int[]{10});
+
+        Assert.assertFalse(migration.claimSeed(10, "a_u10.xml"));
+    }
+}
@@ -0,0 +1,103 @@
+package github.tornaco.android.thanos.core.util;
+
+import com.elvishew.xlog.LogConfiguration;
+import com.elvishew.xlog.XLog;
+import com.elvishew.xlog.printer.ConsolePrinter;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import github.tornaco.android.thanos.core.util.GenerationCache.Generation;
+import github.tornaco.android.thanos.core.util.GenerationCache.Key;
+
+public class GenerationCacheTest {
+
+    private static final Key KEY = Key.of("android.intent.action.SCREEN_ON", null, 10010, 1000);
+
+    @BeforeClass
+    public static void initLog() {
+        XLog.init(new LogConfiguration.Builder().build(), new ConsolePrinter());
+    }
+
+    @Test
+    public void givenRegistered_whenNewerGenerationPushed_thenEntriesDropped() {
+        GenerationCache<Key, Boolean> cache = new GenerationCache<>("test", 16);
+        cache.register(() -> 2);
+        cache.current().put(KEY, true);
+
+        cache.invalidate(3);
+
+        Assert.assertEquals(3, cache.current().value);
+        Assert.assertNull(cache.current().get(KEY));
+    }
+
+    @Test
+    public void givenRegistered_whenOlderGenerationPushedLate_thenIgnored() {
+        GenerationCache<Key, Boolean> cache = new GenerationCache<>("test", 16);
+        cache.register(() -> 5);
+        cache.current().put(KEY, true);
+
+        cache.invalidate(4);
+        cache.invalidate(5);
+
+        Assert.assertEquals(5, cache.current().value);
+        Assert.assertEquals(Boolean.TRUE, cache.current().get(KEY));
+    }
+
+    @Test
+    public void givenOldServerReplyingZero_whenRegister_thenNothingCached() {
+        GenerationCache<Key, Boolean> cache = new GenerationCache<>("test", 16);
+
+        Assert.assertTrue(cache.register(() -> 0));
+        cache.invalidate(1);
+
+        Assert.assertNull(cache.current());
+    }
+
+    @Test
+    public void givenServerWithoutListener_whenRegister_thenNotRetriedAndNothingCached() {
+        GenerationCache<Key, Boolean> cache = new GenerationCache<>("test", 16);
+
+        Assert.assertTrue(cache.register(() -> {
+            throw new NoSuchMethodError("registerBroadcastVerdictChangeListener");
+        }));
+
+        Assert.assertNull(cache.current());
+    }
+
+    @Test
+    public void givenServerNotReady_whenRegister_thenRetryAllowed() {
+        GenerationCache<Key, Boolean> cache = new GenerationCache<>("test", 16);
+
+        Assert.assertFalse(cache.register(() -> {
+            throw new IllegalStateException("Not ready");
+        }));
+        Assert.assertNull(cache.current());
+
+        Assert.assertTrue(cache.register(() -> 1));
+        Assert.assertEquals(1, cache.current().value);
+    }
+
+    @Test
+    public void givenFullGeneration_whenPut_thenOldEntriesDropped() {
+        GenerationCache<Key, Integer> cache = new GenerationCache<>("test", 2);
+        cache.register(() -> 1);
+        Generation<Key, Integer> g = cache.current();
+        g.put(Key.of("a", null, 0, 0), 0);
+        g.put(Key.of("b", null, 0, 0), 1);
+
+        g.put(Key.of("c", null, 0, 0), 2);
+
+        Assert.assertEquals(1, g.size());
+        Assert.assertEquals(Integer.valueOf(2), g.get(Key.of("c", null, 0, 0)));
+    }
+
+    @Test
+    public void givenKeysOfSameFields_whenCompared_thenEqual() {
+        Assert.assertEquals(Key.of("pkg", "authority", 0, 0), Key.of("pkg", "authority", 0, 0));
+        Assert.assertEquals(Key.of(null, null, -1, -1).hashCode(), Key.of(null, null, -1, -1).hashCode());
+        Assert.assertNotEquals(Key.of("pkg", null, 1, 0), Key.of("pkg", null, 0, 1));
+        Assert.assertNotEquals(Key.of("a", "b", 0, 0), Key.of("b", "a", 0, 0));
+    }
+}
@@ -7,4 +7,20 @@ dependencies {
 
     implementation(project(":android_framework:base"))
     compileOnly(project(":android_framework:hidden-api"))
-}
\ No newline at end of file
+
+    testImplementation(libs.junit)
+    testImplementation(libs.jmh.core)
+    testAnnotationProcessor(libs.jmh.generator.annprocess)
+    // ProxyBuilder reads Build.FINGERPRINT, null from the SDK stubs.
+    testImplementation(project(":android_framework:hidden-api"))
+}
+
+// Run the JMH benchmarks under src/test, e.g. -Pjmh.includes=ProxyBatchBenchmark -Pjmh.prof=gc
+val jmh by tasks.registering(JavaExec::class) {
+    group = "benchmark"
+    dependsOn("testClasses")
+    classpath = sourceSets.test.get().runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    args((findProperty("jmh.includes") as String?) ?: ".*Benchmark")
+    (findProperty("jmh.prof") as String?)?.let { args("-prof", it) }
+}
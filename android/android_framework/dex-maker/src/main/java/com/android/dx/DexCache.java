@@ -0,0 +1,267 @@
+package com.android.dx;
+
+import com.elvishew.xlog.XLog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent cache of generated dex files in the dex cache dir, so an unchanged build reuses
+ * the dex generated at an earlier boot.
+ * <p>
+ * Dex files are named by a SHA-256 key of what was declared to {@link DexMaker}. A manifest
+ * records the SHA-256 and length of each file written, a file not matching it, or missing from
+ * it, is deleted and generated again.
+ * <p>
+ * Prebuilt dex files, generated at build time with {@link DexMaker#generateToDir}, are laid out
+ * the same way, and read from resources.
+ */
+final class DexCache {
+    private static final String MANIFEST_NAME = "manifest.properties";
+    private static final String DEX_SUFFIX = ".dex";
+    private static final String TMP_SUFFIX = ".tmp";
+    // Jars of the cache before the manifest, named by a checksum of method ids.
+    private static final String LEGACY_PREFIX = "Generated_";
+
+    // Dirs swept of legacy files in this process.
+    private static final Set<String> SWEPT_DIRS = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    // Guards the manifest files of all dirs.
+    private static final Object LOCK = new Object();
+
+    private static final AtomicLong HIT_COUNT = new AtomicLong();
+    private static final AtomicLong MISS_COUNT = new AtomicLong();
+    private static final AtomicLong PREBUILT_COUNT = new AtomicLong();
+    private static final AtomicLong CORRUPT_COUNT = new AtomicLong();
+    private static final AtomicLong HIT_NANOS = new AtomicLong();
+    private static final AtomicLong MISS_NANOS = new AtomicLong();
+
+    private final File dir;
+
+    DexCache(File dir) {
+        this.dir = dir;
+    }
+
+    File file(String key) {
+        return new File(dir, key + DEX_SUFFIX);
+    }
+
+    /**
+     * @return Bytes of the cached dex, null if missing or corrupt.
+     */
+    byte[] read(String key) {
+        File file = file(key);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            String expected;
+            synchronized (LOCK) {
+                expected = loadManifest().getProperty(key);
+            }
+            byte[] dex = readFully(file);
+            if (expected != null && expected.equals(entry(dex))) {
+                return dex;
+            }
+        } catch (IOException e) {
+            XLog.w("DexCache, fail read %s: %s", file, e);
+        }
+        CORRUPT_COUNT.incrementAndGet();
+        XLog.w("DexCache, drop corrupt %s", file);
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+        return null;
+    }
+
+    /**
+     * Read a dex laid out as the dex cache from resources of {@code loader}.
+     *
+     * @return Bytes of the dex, null if missing or not matching the manifest.
+     */
+    static byte[] readPrebuilt(ClassLoader loader, String resourceDir, String key) {
+        try (InputStream dexIn = loader.getResourceAsStream(resourceDir + key + DEX_SUFFIX)) {
+            if (dexIn == null) {
+                return null;
+            }
+            Properties manifest = new Properties();
+            try (InputStream manifestIn = loader.getResourceAsStream(resourceDir + MANIFEST_NAME)) {
+                if (manifestIn != null) {
+                    manifest.load(manifestIn);
+                }
+            }
+            byte[] dex = readFully(dexIn);
+            if (entry(dex).equals(manifest.getProperty(key))) {
+                return dex;
+            }
+            CORRUPT_COUNT.incrementAndGet();
+            XLog.w("DexCache, drop corrupt prebuilt %s", key);
+        } catch (IOException e) {
+            XLog.w("DexCache, fail read prebuilt %s: %s", key, e);
+        }
+        return null;
+    }
+
+    void write(String key, byte[] dex) throws IOException {
+        File file = file(key);
+        File tmp = new File(dir, key + DEX_SUFFIX + TMP_SUFFIX);
+        writeFully(tmp, dex);
+        // Dynamically loaded dex must not be writable.
+        //noinspection ResultOfMethodCallIgnored
+        tmp.setReadOnly();
+        synchronized (LOCK) {
+            if (!tmp.renameTo(file)) {
+                //noinspection ResultOfMethodCallIgnored
+                tmp.delete();
+                throw new IOException("Fail rename " + tmp + " to " + file);
+            }
+            Properties manifest = loadManifest();
+            manifest.setProperty(key, entry(dex));
+            File manifestFile = new File(dir, MANIFEST_NAME);
+            File manifestTmp = new File(dir, MANIFEST_NAME + TMP_SUFFIX);
+            try (OutputStream out = new FileOutputStream(manifestTmp)) {
+                manifest.store(out, null);
+            }
+            if (!manifestTmp.renameTo(manifestFile)) {
+                throw new IOException("Fail rename " + manifestTmp + " to " + manifestFile);
+            }
+        }
+    }
+
+    /**
+     * Delete legacy jars left in this dir, and the files the runtime optimized from them under
+     * "oat/", nothing reads them any more. Only the first call for a dir in a process does work.
+     */
+    void sweepLegacy() {
+        if (!SWEPT_DIRS.add(dir.getAbsolutePath())) {
+            return;
+        }
+        int deleted = deleteLegacy(dir);
+        File[] isaDirs = new File(dir, "oat").listFiles();
+        if (isaDirs != null) {
+            for (File isaDir : isaDirs) {
+                deleted += deleteLegacy(isaDir);
+            }
+        }
+        if (deleted > 0) {
+            XLog.i("DexCache, swept %s legacy files in %s", deleted, dir);
+        }
+    }
+
+    private static int deleteLegacy(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(LEGACY_PREFIX));
+        if (files == null) {
+            return 0;
+        }
+        int deleted = 0;
+        for (File file : files) {
+            if (file.delete()) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    static void onHit(String key, long nanos) {
+        HIT_COUNT.incrementAndGet();
+        HIT_NANOS.addAndGet(nanos);
+        XLog.i("DexCache hit %s in %sus, %s", key, nanos / 1000, stats());
+    }
+
+    static void onPrebuilt(String key, long nanos) {
+        PREBUILT_COUNT.incrementAndGet();
+        HIT_NANOS.addAndGet(nanos);
+        XLog.i("DexCache prebuilt %s in %sus, %s", key, nanos / 1000, stats());
+    }
+
+    static void onMiss(String key, long nanos) {
+        MISS_COUNT.incrementAndGet();
+        MISS_NANOS.addAndGet(nanos);
+        XLog.i("DexCache miss %s in %sus, %s", key, nanos / 1000, stats());
+    }
+
+    static String stats() {
+        return "hit " + HIT_COUNT.get() + ", prebuilt " + PREBUILT_COUNT.get()
+                + " (" + HIT_NANOS.get() / 1000 + "us)"
+                + ", miss " + MISS_COUNT.get() + " (" + MISS_NANOS.get() / 1000 + "us)"
+                + ", corrupt " + CORRUPT_COUNT.get();
+    }
+
+    static String sha256(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+                hex.append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Should not be thrown, every runtime has SHA-256.
+            throw new AssertionError(e);
+        }
+    }
+
+    private static String entry(byte[] dex) {
+        return sha256(dex) + ":" + dex.length;
+    }
+
+    private Properties loadManifest() throws IOException {
+        Properties manifest = new Properties();
+        File manifestFile = new File(dir, MANIFEST_NAME);
+        if (manifestFile.exists()) {
+            try (InputStream in = new FileInputStream(manifestFile)) {
+                manifest.load(in);
+            }
+        }
+        return manifest;
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        long length = file.length();
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Too large " + file);
+        }
+        byte[] bytes = new byte[(int) length];
+        try (InputStream in = new FileInputStream(file)) {
+            int offset = 0;
+            while (offset < bytes.length) {
+                int read = in.read(bytes, offset, bytes.length - offset);
+                if (read < 0) {
+                    throw new IOException("Truncated " + file);
+                }
+                offset += read;
+            }
+        }
+        return bytes;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeFully(File file, byte[] bytes) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(bytes);
+            // Survive a reboot right after boot.
+            out.getFD().sync();
+        }
+    }
+}
@@ -16,6 +16,8 @@
 
 package com.android.dx;
 
+import android.os.Build;
+
 import com.android.dex.DexFormat;
 import com.android.dx.dex.DexOptions;
 import com.android.dx.dex.code.DalvCode;
@@ -32,19 +34,20 @@ import com.android.dx.rop.cst.CstString;
 import com.android.dx.rop.cst.CstType;
 import com.android.dx.rop.type.StdTypeList;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
-import java.util.Arrays;
-import java.util.Iterator;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.jar.JarEntry;
-import java.util.jar.JarOutputStream;
 
 import static com.android.dx.rop.code.AccessFlags.ACC_CONSTRUCTOR;
 import static java.lang.reflect.Modifier.ABSTRACT;
@@ -203,10 +206,21 @@ public final class DexMaker {
   // problem and warning on every class load is too spammy.
   private static boolean didWarnBlacklistedMethods;
   private static boolean didWarnNonBaseDexClassLoader;
+  // Set once this runtime turned out not to support loading from memory, the file cache is used
+  // from then on.
+  private static volatile boolean inMemoryUnsupported;
+  // Bump when the cache key or the cached dex format changes.
+  private static final int CACHE_KEY_VERSION = 1;
+
+  /** Resource dir of prebuilt dex files, laid out as the dex cache. */
+  public static final String PREBUILT_DEX_DIR = "dexmaker/prebuilt/";
   private final Map<TypeId<?>, TypeDeclaration> types = new LinkedHashMap<>();
   private ClassLoader sharedClassLoader;
   private DexFile outputDex;
   private boolean markAsTrusted;
+  private String generatorVersion = "";
+  private final List<String> cacheKeyInputs = new ArrayList<>();
+  private ClassLoader prebuiltDexLoader;
 
   /** Creates a new {@code DexMaker} instance, which can be used to create a single dex file. */
   public DexMaker() {}
@@ -344,33 +358,80 @@ public final class DexMaker {
     }
   }
 
-  // Generate a file name for the jar by taking a checksum of MethodIds and
-  // parent class types.
-  private String generateFileName() {
-    int checksum = 1;
-
-    Set<TypeId<?>> typesKeySet = types.keySet();
-    Iterator<TypeId<?>> it = typesKeySet.iterator();
-    int[] checksums = new int[typesKeySet.size()];
-    int i = 0;
-
-    while (it.hasNext()) {
-      TypeId<?> typeId = it.next();
-      TypeDeclaration decl = getTypeDeclaration(typeId);
-      Set<MethodId> methodSet = decl.methods.keySet();
-      if (decl.supertype != null) {
-        int sum = 31 * decl.supertype.hashCode() + decl.interfaces.hashCode();
-        checksums[i++] = 31 * sum + methodSet.hashCode();
+  // Generate the key of the dex in the dex cache by taking a SHA-256 of the generator version and
+  // everything declared, but code. Code is up to the generator, and so covered by its version.
+  private String generateCacheKey() {
+    List<String> typeKeys = new ArrayList<>();
+    for (TypeDeclaration decl : types.values()) {
+      List<String> memberKeys = new ArrayList<>();
+      for (FieldDeclaration field : decl.fields.values()) {
+        memberKeys.add(
+            "F " + field.fieldId.name + " " + field.fieldId.type + " " + field.accessFlags);
+      }
+      for (MethodDeclaration method : decl.methods.values()) {
+        memberKeys.add(
+            "M "
+                + method.method.name
+                + "("
+                + method.method.parameters
+                + ")"
+                + method.method.returnType
+                + " "
+                + method.flags);
       }
+      Collections.sort(memberKeys);
+      typeKeys.add(
+          decl.type
+              + " "
+              + decl.flags
+              + " "
+              + decl.supertype
+              + " ["
+              + decl.interfaces
+              + "] "
+              + memberKeys);
     }
-    Arrays.sort(checksums);
+    Collections.sort(typeKeys);
+    List<String> inputs = new ArrayList<>(cacheKeyInputs);
+    Collections.sort(inputs);
+    String key = CACHE_KEY_VERSION + " " + generatorVersion + " " + typeKeys + " " + inputs;
+    return DexCache.sha256(key.getBytes(StandardCharsets.UTF_8));
+  }
 
-    for (int sum : checksums) {
-      checksum *= 31;
-      checksum += sum;
-    }
+  /**
+   * Set the version of the code generator, part of the key of the dex in the dex cache. It should
+   * be changed whenever the generator would generate other code for the same declarations.
+   */
+  public void setGeneratorVersion(String generatorVersion) {
+    this.generatorVersion = generatorVersion;
+  }
 
-    return "Generated_" + checksum + ".jar";
+  /**
+   * Add an input of the code generator that is not declared, but changes the generated code, like
+   * the modifiers of a proxied method. It is part of the key of the dex in the dex cache.
+   */
+  public void addCacheKeyInput(String input) {
+    cacheKeyInputs.add(input);
+  }
+
+  /**
+   * Set the class loader to look up prebuilt dex files from, under {@link #PREBUILT_DEX_DIR}, when
+   * the dex cache misses. A prebuilt dex is used only if its key matches, that is if it was
+   * generated from the same declarations.
+   */
+  public void setPrebuiltDexLoader(ClassLoader prebuiltDexLoader) {
+    this.prebuiltDexLoader = prebuiltDexLoader;
+  }
+
+  /**
+   * Generates a dex file into {@code dir}, laid out as the dex cache, for prebuilt dex files.
+   *
+   * @return the key of the dex.
+   */
+  public String generateToDir(File dir) throws IOException {
+    String key = generateCacheKey();
+    new DexCache(dir).write(key, generate());
+    return key;
   }
 
   /**
@@ -393,36 +454,40 @@ public final class DexMaker {
     this.markAsTrusted = true;
   }
 
-  private ClassLoader generateClassLoader(File result, File dexCache, ClassLoader parent) {
-    try {
-      boolean shareClassLoader = sharedClassLoader != null;
+  private ClassLoader getPreferredClassLoader(ClassLoader parent) {
+    if (parent != null) {
+      return parent;
+    }
+    return sharedClassLoader;
+  }
 
-      ClassLoader preferredClassLoader = null;
-      if (parent != null) {
-        preferredClassLoader = parent;
-      } else if (sharedClassLoader != null) {
-        preferredClassLoader = sharedClassLoader;
+  private boolean canShareClassLoader(
+      ClassLoader preferredClassLoader, Class baseDexClassLoaderClass) {
+    if (sharedClassLoader == null) {
+      return false;
+    }
+    if (!baseDexClassLoaderClass.isAssignableFrom(preferredClassLoader.getClass())) {
+      if (!preferredClassLoader.getClass().getName().equals("java.lang.BootClassLoader")) {
+        if (!didWarnNonBaseDexClassLoader) {
+          System.err.println(
+              "Cannot share classloader as shared classloader '"
+                  + preferredClassLoader
+                  + "' is not a subclass of '"
+                  + baseDexClassLoaderClass
+                  + "'");
+          didWarnNonBaseDexClassLoader = true;
+        }
       }
+      return false;
+    }
+    return true;
+  }
 
+  private ClassLoader generateClassLoader(File result, File dexCache, ClassLoader parent) {
+    try {
+      ClassLoader preferredClassLoader = getPreferredClassLoader(parent);
       Class baseDexClassLoaderClass = Class.forName("dalvik.system.BaseDexClassLoader");
-
-      if (shareClassLoader) {
-        if (!baseDexClassLoaderClass.isAssignableFrom(preferredClassLoader.getClass())) {
-          if (!preferredClassLoader.getClass().getName().equals("java.lang.BootClassLoader")) {
-            if (!didWarnNonBaseDexClassLoader) {
-              System.err.println(
-                  "Cannot share classloader as shared classloader '"
-                      + preferredClassLoader
-                      + "' is not a subclass of '"
-                      + baseDexClassLoaderClass
-                      + "'");
-              didWarnNonBaseDexClassLoader = true;
-            }
-          }
-
-          shareClassLoader = false;
-        }
-      }
+      boolean shareClassLoader = canShareClassLoader(preferredClassLoader, baseDexClassLoaderClass);
 
       // Try to load the class so that it can call hidden APIs. This is required for spying
       // on system classes as real-methods of these classes might call blacklisted APIs
@@ -487,6 +552,98 @@ public final class DexMaker {
     }
   }
 
+  /**
+   * Loads the dex without writing it to disk, with an {@code InMemoryDexClassLoader}, or appended
+   * to the shared class loader. Trusted dex files are marked the way {@code BaseDexClassLoader}
+   * marks them.
+   *
+   * @return null if not supported by this runtime, the caller falls back to the file cache.
+   */
+  private ClassLoader generateInMemoryClassLoader(byte[] dex, ClassLoader parent) {
+    // InMemoryDexClassLoader and DexPathList#makeInMemoryDexElements are O+.
+    if (inMemoryUnsupported || Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+      return null;
+    }
+    try {
+      ClassLoader preferredClassLoader = getPreferredClassLoader(parent);
+      Class baseDexClassLoaderClass = Class.forName("dalvik.system.BaseDexClassLoader");
+      Field pathListField = baseDexClassLoaderClass.getDeclaredField("pathList");
+      pathListField.setAccessible(true);
+      ByteBuffer[] dexFiles = new ByteBuffer[] {ByteBuffer.wrap(dex)};
+
+      if (canShareClassLoader(preferredClassLoader, baseDexClassLoaderClass)) {
+        Object pathList = pathListField.get(preferredClassLoader);
+        Class<?> pathListClass = pathList.getClass();
+        Method makeInMemoryDexElements =
+            pathListClass.getDeclaredMethod(
+                "makeInMemoryDexElements", ByteBuffer[].class, List.class);
+        makeInMemoryDexElements.setAccessible(true);
+        List<IOException> suppressed = new ArrayList<>();
+        Object[] newElements =
+            (Object[]) makeInMemoryDexElements.invoke(null, dexFiles, suppressed);
+        if (!suppressed.isEmpty() || newElements.length == 0) {
+          throw suppressed.isEmpty() ? new IOException("No dex element") : suppressed.get(0);
+        }
+        if (markAsTrusted) {
+          setTrusted(newElements);
+        }
+        Field dexElementsField = pathListClass.getDeclaredField("dexElements");
+        dexElementsField.setAccessible(true);
+        // Same as DexPathList#addDexPath, new elements go after the existing ones.
+        synchronized (pathList) {
+          Object[] oldElements = (Object[]) dexElementsField.get(pathList);
+          Object[] elements =
+              (Object[])
+                  Array.newInstance(
+                      oldElements.getClass().getComponentType(),
+                      oldElements.length + newElements.length);
+          System.arraycopy(oldElements, 0, elements, 0, oldElements.length);
+          System.arraycopy(newElements, 0, elements, oldElements.length, newElements.length);
+          dexElementsField.set(pathList, elements);
+        }
+        return preferredClassLoader;
+      }
+
+      ClassLoader loader =
+          (ClassLoader)
+              Class.forName("dalvik.system.InMemoryDexClassLoader")
+                  .getConstructor(ByteBuffer[].class, ClassLoader.class)
+                  .newInstance(dexFiles, preferredClassLoader);
+      if (markAsTrusted) {
+        Object pathList = pathListField.get(loader);
+        Field dexElementsField = pathList.getClass().getDeclaredField("dexElements");
+        dexElementsField.setAccessible(true);
+        setTrusted((Object[]) dexElementsField.get(pathList));
+      }
+      return loader;
+    } catch (InvocationTargetException e) {
+      // This dex failed to load, the next one may not.
+      System.err.println("Cannot load dex from memory, fall back to dex cache. " + e.getCause());
+      return null;
+    } catch (ReflectiveOperationException | LinkageError e) {
+      // The hidden members we use are missing in this runtime.
+      inMemoryUnsupported = true;
+      System.err.println("Cannot load dex from memory, fall back to dex cache from now on. " + e);
+      return null;
+    } catch (Exception e) {
+      System.err.println("Cannot load dex from memory, fall back to dex cache. " + e);
+      return null;
+    }
+  }
+
+  private static void setTrusted(Object[] elements) throws ReflectiveOperationException {
+    Method setTrusted = Class.forName("dalvik.system.DexFile").getDeclaredMethod("setTrusted");
+    setTrusted.setAccessible(true);
+    for (Object element : elements) {
+      Field dexFileField = element.getClass().getDeclaredField("dexFile");
+      dexFileField.setAccessible(true);
+      Object dexFile = dexFileField.get(element);
+      if (dexFile != null) {
+        setTrusted.invoke(dexFile);
+      }
+    }
+  }
+
   /**
    * Generates a dex file and loads its types into the current process.
    *
@@ -506,6 +663,10 @@ public final class DexMaker {
    * this method will fail with an unchecked exception. You can avoid the exception by either
    * providing a non-null value or setting the system property.
    *
+   * <p>Generated dex files are kept in the dex cache, keyed by a SHA-256 of the declarations, and
+   * reused while they match the manifest of the cache. Where the runtime supports it, the dex is
+   * loaded from memory, see {@link #generateInMemoryClassLoader}.
+   *
    * @param parent the parent ClassLoader to be used when loading our generated types (if set,
    *     overrides {@link #setSharedClassLoader(ClassLoader) shared class loader}.
    * @param dexCache the destination directory where generated and optimized dex files will be
@@ -526,40 +687,29 @@ public final class DexMaker {
       }
     }
 
-    File result = new File(dexCache, generateFileName());
-    // Check that the file exists. If it does, return a DexClassLoader and skip all
-    // the dex bytecode generation.
-    if (result.exists()) {
-      return generateClassLoader(result, dexCache, parent);
+    DexCache cache = new DexCache(dexCache);
+    cache.sweepLegacy();
+    String key = generateCacheKey();
+    long startNanos = System.nanoTime();
+    byte[] dex = cache.read(key);
+    if (dex != null) {
+      DexCache.onHit(key, System.nanoTime() - startNanos);
+    } else if (prebuiltDexLoader != null
+        && (dex = DexCache.readPrebuilt(prebuiltDexLoader, PREBUILT_DEX_DIR, key)) != null) {
+      // Keep it in the dex cache, for the file fallback and the next time.
+      cache.write(key, dex);
+      DexCache.onPrebuilt(key, System.nanoTime() - startNanos);
+    } else {
+      dex = generate();
+      cache.write(key, dex);
+      DexCache.onMiss(key, System.nanoTime() - startNanos);
     }
 
-    byte[] dex = generate();
-
-    /*
-     * This implementation currently dumps the dex to the filesystem. It
-     * jars the emitted .dex for the benefit of Gingerbread and earlier
-     * devices, which can't load .dex files directly.
-     *
-     * TODO: load the dex from memory where supported.
-     */
-    result.createNewFile();
-
-    JarOutputStream jarOut =
-        new JarOutputStream(new BufferedOutputStream(new FileOutputStream(result)));
-    try {
-      JarEntry entry = new JarEntry(DexFormat.DEX_IN_JAR_NAME);
-      entry.setSize(dex.length);
-      jarOut.putNextEntry(entry);
-      try {
-        jarOut.write(dex);
-      } finally {
-        jarOut.closeEntry();
-      }
-    } finally {
-      jarOut.close();
+    ClassLoader inMemoryClassLoader = generateInMemoryClassLoader(dex, parent);
+    if (inMemoryClassLoader != null) {
+      return inMemoryClassLoader;
     }
-
-    return generateClassLoader(result, dexCache, parent);
+    return generateClassLoader(cache.file(key), dexCache, parent);
   }
 
   DexFile getDexFile() {
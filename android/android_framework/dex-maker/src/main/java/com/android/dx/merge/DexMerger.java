@@ -41,6 +41,12 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /** Combine two dex files into one. */
 public final class DexMerger {
@@ -84,6 +90,10 @@ public final class DexMerger {
   private final InstructionTransformer instructionTransformer;
   /** minimum number of wasted bytes before it's worthwhile to compact the result */
   private int compactWasteThreshold = 1024 * 1024; // 1MiB
+  /** number of threads reading the input dexes, 1 to read them on the calling thread */
+  private int parallelism = 1;
+  /** reads the input dexes while merging in parallel, null otherwise */
+  private ExecutorService executor;
 
   public DexMerger(Dex[] dexes, CollisionPolicy collisionPolicy, DxContext context)
       throws IOException {
@@ -176,13 +186,35 @@ public final class DexMerger {
     this.compactWasteThreshold = compactWasteThreshold;
   }
 
+  /**
+   * Experimental, merges the IDs sections on up to {@code parallelism} threads, 1 by default. The
+   * sections of the input dexes are read and sorted in parallel, and the field ID index maps are
+   * computed while the type lists, proto and method IDs are merged. The merged sections are still
+   * written on the calling thread, in the same order, so the result is byte-identical to a merge on
+   * a single thread.
+   *
+   * <p>Above 1, a sorted section is held in memory whole for all input dexes, instead of one value
+   * per dex, so peak memory grows with the size of the largest section. Only measured on a single
+   * CPU so far, where it is slower for many input dexes.
+   */
+  public void setParallelism(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism < 1: " + parallelism);
+    }
+    this.parallelism = parallelism;
+  }
+
   private Dex mergeDexes() throws IOException {
     mergeStringIds();
     mergeTypeIds();
-    mergeTypeLists();
-    mergeProtoIds();
-    mergeFieldIds();
-    mergeMethodIds();
+    if (executor != null) {
+      mergeMemberIdsParallel();
+    } else {
+      mergeTypeLists();
+      mergeProtoIds();
+      mergeFieldIds();
+      mergeMethodIds();
+    }
     mergeMethodHandles();
     mergeAnnotations();
     unionAnnotationSetsAndDirectories();
@@ -214,7 +246,18 @@ public final class DexMerger {
     }
 
     long start = System.nanoTime();
-    Dex result = mergeDexes();
+    if (parallelism > 1) {
+      executor = Executors.newFixedThreadPool(Math.min(parallelism, dexes.length), DAEMON_THREADS);
+    }
+    Dex result;
+    try {
+      result = mergeDexes();
+    } finally {
+      if (executor != null) {
+        executor.shutdown();
+        executor = null;
+      }
+    }
 
     /*
      * We use pessimistic sizes when merging dex files. If those sizes
@@ -248,6 +291,77 @@ public final class DexMerger {
     return result;
   }
 
+  private static final ThreadFactory DAEMON_THREADS =
+      new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "DexMerger");
+          thread.setDaemon(true);
+          return thread;
+        }
+      };
+
+  /** A task run for each input dex by {@link #forEachDex}. */
+  private interface DexTask<R> {
+    R run(int dex);
+  }
+
+  /**
+   * Runs {@code task} for each input dex, on the executor if merging in parallel.
+   *
+   * @return the results in the order of the input dexes
+   */
+  private <R> List<R> forEachDex(final DexTask<R> task) {
+    List<R> results = new ArrayList<R>(dexes.length);
+    if (executor == null) {
+      for (int i = 0; i < dexes.length; i++) {
+        results.add(task.run(i));
+      }
+      return results;
+    }
+
+    List<Future<R>> futures = new ArrayList<Future<R>>(dexes.length);
+    for (int i = 0; i < dexes.length; i++) {
+      final int dex = i;
+      futures.add(
+          executor.submit(
+              new Callable<R>() {
+                @Override
+                public R call() {
+                  return task.run(dex);
+                }
+              }));
+    }
+    try {
+      for (Future<R> future : futures) {
+        results.add(await(future));
+      }
+    } finally {
+      for (Future<R> future : futures) {
+        future.cancel(true);
+      }
+    }
+    return results;
+  }
+
+  /** Waits for {@code future}, rethrowing what its task threw. */
+  private static <R> R await(Future<R> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DexException(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new DexException(cause);
+    }
+  }
+
   private int mergeApiLevels() {
     int maxApi = -1;
     for (int i = 0; i < dexes.length; i++) {
@@ -412,8 +526,42 @@ public final class DexMerger {
     }.mergeUnsorted();
   }
 
+  /**
+   * Merges the type lists, proto, field and method IDs when merging in parallel. Field IDs only
+   * depend on the string and type IDs, so their index maps are computed on the executor while the
+   * type lists, proto and method IDs are merged on the calling thread. The field and method IDs are
+   * then written in the same order as {@link #mergeDexes} does on a single thread.
+   */
+  private void mergeMemberIdsParallel() {
+    final IdMerger<FieldId> fieldIdMerger = newFieldIdMerger();
+    Future<List<FieldId>> fieldIds =
+        executor.submit(
+            new Callable<List<FieldId>>() {
+              @Override
+              public List<FieldId> call() {
+                // Read the dexes inline, a task on the executor must not wait for other tasks.
+                return fieldIdMerger.indexSorted(false);
+              }
+            });
+    IdMerger<MethodId> methodIdMerger = newMethodIdMerger();
+    List<MethodId> methodIds;
+    try {
+      mergeTypeLists();
+      mergeProtoIds();
+      methodIds = methodIdMerger.indexSorted(true);
+      fieldIdMerger.writeSorted(await(fieldIds));
+    } finally {
+      fieldIds.cancel(true);
+    }
+    methodIdMerger.writeSorted(methodIds);
+  }
+
   private void mergeFieldIds() {
-    new IdMerger<FieldId>(idsDefsOut) {
+    newFieldIdMerger().mergeSorted();
+  }
+
+  private IdMerger<FieldId> newFieldIdMerger() {
+    return new IdMerger<FieldId>(idsDefsOut) {
       @Override
       TableOfContents.Section getSection(TableOfContents tableOfContents) {
         return tableOfContents.fieldIds;
@@ -436,11 +584,15 @@ public final class DexMerger {
       void write(FieldId value) {
         value.writeTo(idsDefsOut);
       }
-    }.mergeSorted();
+    };
   }
 
   private void mergeMethodIds() {
-    new IdMerger<MethodId>(idsDefsOut) {
+    newMethodIdMerger().mergeSorted();
+  }
+
+  private IdMerger<MethodId> newMethodIdMerger() {
+    return new IdMerger<MethodId>(idsDefsOut) {
       @Override
       TableOfContents.Section getSection(TableOfContents tableOfContents) {
         return tableOfContents.methodIds;
@@ -463,7 +615,7 @@ public final class DexMerger {
       void write(MethodId methodId) {
         methodId.writeTo(idsDefsOut);
       }
-    }.mergeSorted();
+    };
   }
 
   private void mergeAnnotations() {
@@ -1064,6 +1216,11 @@ public final class DexMerger {
 
     /** Merges already-sorted sections, reading one value from each dex into memory at a time. */
     public final void mergeSorted() {
+      if (executor != null) {
+        writeSorted(indexSorted(true));
+        return;
+      }
+
       TableOfContents.Section[] sections = new TableOfContents.Section[dexes.length];
       Dex.Section[] dexSections = new Dex.Section[dexes.length];
       int[] offsets = new int[dexes.length];
@@ -1104,6 +1261,78 @@ public final class DexMerger {
       getSection(contentsOut).size = outCount;
     }
 
+    /**
+     * Merges already-sorted sections like {@link #mergeSorted} and fills the index maps, but only
+     * returns the merged values, for {@link #writeSorted}. Unlike {@link #mergeSorted}, which holds
+     * one value per dex, this reads every value of the section of every dex into memory first.
+     *
+     * @param readInParallel whether to read the dexes on the executor, false to read them on the
+     *     current thread
+     */
+    final List<T> indexSorted(boolean readInParallel) {
+      List<List<UnsortedValue>> all;
+      if (readInParallel) {
+        all =
+            forEachDex(
+                new DexTask<List<UnsortedValue>>() {
+                  @Override
+                  public List<UnsortedValue> run(int dex) {
+                    return readValues(dexes[dex], indexMaps[dex], true);
+                  }
+                });
+      } else {
+        all = new ArrayList<List<UnsortedValue>>(dexes.length);
+        for (int i = 0; i < dexes.length; i++) {
+          all.add(readValues(dexes[i], indexMaps[i], true));
+        }
+      }
+      int[] indexes = new int[dexes.length];
+
+      TreeMap<T, List<Integer>> values = new TreeMap<T, List<Integer>>();
+      for (int i = 0; i < dexes.length; i++) {
+        putNextValue(all.get(i), indexes[i], values, i);
+      }
+
+      List<T> merged = new ArrayList<T>();
+      while (!values.isEmpty()) {
+        Map.Entry<T, List<Integer>> first = values.pollFirstEntry();
+        for (Integer dex : first.getValue()) {
+          UnsortedValue v = all.get(dex).get(indexes[dex]++);
+          updateIndex(v.offset, indexMaps[dex], v.index, merged.size());
+          putNextValue(all.get(dex), indexes[dex], values, dex);
+        }
+        merged.add(first.getKey());
+      }
+      return merged;
+    }
+
+    /** Writes the values returned by {@link #indexSorted}, on the calling thread. */
+    final void writeSorted(List<T> merged) {
+      if (merged.isEmpty()) {
+        getSection(contentsOut).off = 0;
+        getSection(contentsOut).size = 0;
+        return;
+      }
+      getSection(contentsOut).off = out.getPosition();
+      for (T value : merged) {
+        write(value);
+      }
+      getSection(contentsOut).size = merged.size();
+    }
+
+    private void putNextValue(
+        List<UnsortedValue> dexValues, int index, TreeMap<T, List<Integer>> values, int dex) {
+      if (index < dexValues.size()) {
+        T v = dexValues.get(index).value;
+        List<Integer> l = values.get(v);
+        if (l == null) {
+          l = new ArrayList<Integer>();
+          values.put(v, l);
+        }
+        l.add(dex);
+      }
+    }
+
     private int readIntoMap(
         Dex.Section in,
         TableOfContents.Section section,
@@ -1129,8 +1358,26 @@ public final class DexMerger {
       getSection(contentsOut).off = out.getPosition();
 
       List<UnsortedValue> all = new ArrayList<UnsortedValue>();
-      for (int i = 0; i < dexes.length; i++) {
-        all.addAll(readUnsortedValues(dexes[i], indexMaps[i]));
+      if (executor == null) {
+        for (int i = 0; i < dexes.length; i++) {
+          all.addAll(readValues(dexes[i], indexMaps[i], false));
+        }
+      } else {
+        // Read and sort each dex in parallel. Sorting is stable, so sorting the sorted runs
+        // again gives the same order as sorting all values at once, and takes linear time.
+        List<List<UnsortedValue>> sorted =
+            forEachDex(
+                new DexTask<List<UnsortedValue>>() {
+                  @Override
+                  public List<UnsortedValue> run(int dex) {
+                    List<UnsortedValue> values = readValues(dexes[dex], indexMaps[dex], false);
+                    Collections.sort(values);
+                    return values;
+                  }
+                });
+        for (List<UnsortedValue> values : sorted) {
+          all.addAll(values);
+        }
       }
       if (all.isEmpty()) {
         getSection(contentsOut).off = 0;
@@ -1156,17 +1403,24 @@ public final class DexMerger {
       getSection(contentsOut).size = outCount;
     }
 
-    private List<UnsortedValue> readUnsortedValues(Dex source, IndexMap indexMap) {
+    /**
+     * Reads the whole section of {@code source}. Only reads from {@code indexMap}, so it may run
+     * concurrently for different dexes.
+     *
+     * @param sorted whether to pass the index of each value to {@link #read}, as
+     *     {@link #mergeSorted} does
+     */
+    private List<UnsortedValue> readValues(Dex source, IndexMap indexMap, boolean sorted) {
       TableOfContents.Section section = getSection(source.getTableOfContents());
       if (!section.exists()) {
-        return Collections.emptyList();
+        return new ArrayList<UnsortedValue>();
       }
 
       List<UnsortedValue> result = new ArrayList<UnsortedValue>();
       Dex.Section in = source.open(section.off);
       for (int i = 0; i < section.size; i++) {
         int offset = in.getPosition();
-        T value = read(in, indexMap, 0);
+        T value = read(in, indexMap, sorted ? i : 0);
         result.add(new UnsortedValue(source, indexMap, value, i, offset));
       }
       return result;
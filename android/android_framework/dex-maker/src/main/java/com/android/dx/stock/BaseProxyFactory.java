@@ -10,7 +10,7 @@ public abstract class BaseProxyFactory<T> {
 
     public final T newProxy(T original, File baseDataDir) {
         try {
-            return onCreateProxy(original, dxCacheDir(baseDataDir));
+            return onCreateProxy(original, dexCacheDir(baseDataDir));
         } catch (Throwable e) {
             XLog.e(e, "BaseProxyFactory fail create proxy by %s for %s", getClass(), original);
             return null;
@@ -19,7 +19,11 @@ public abstract class BaseProxyFactory<T> {
 
     protected abstract T onCreateProxy(T original, File dexCacheDir) throws Exception;
 
-    private File dxCacheDir(File baseDir) throws IOException {
+    /**
+     * Dex cache dir of the proxies under {@code baseDir}, for builders of
+     * {@link ProxyBuilder#buildProxyClasses} to match the factories.
+     */
+    public static File dexCacheDir(File baseDir) throws IOException {
         // Dex cache dir.
         File dx = new File(baseDir, "dx");
         XLog.i("BaseProxyFactory Using dxCacheDir as dx dir: %s", dx);
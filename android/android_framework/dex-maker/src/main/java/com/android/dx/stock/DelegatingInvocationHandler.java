@@ -0,0 +1,62 @@
+package com.android.dx.stock;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Handler of a proxy built with {@link ProxyBuilder#delegateTo(Object, String...)}, calling
+ * through to the delegate with method handles bound to it, instead of {@link Method#invoke}.
+ * <p>
+ * Handles of the intercepted methods are resolved when the proxy is built, others on first call.
+ * Each handle takes the argument array as is and returns Object, so a call is a single
+ * {@link MethodHandle#invokeExact}, with no list or array copy per call.
+ */
+public abstract class DelegatingInvocationHandler implements InvocationHandler {
+    private static final Object[] NO_ARGS = new Object[0];
+    private static final MethodType SPREAD_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+    protected final Object delegate;
+
+    private final Map<Method, MethodHandle> handles = new ConcurrentHashMap<>();
+
+    protected DelegatingInvocationHandler(Object delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Call the method on the delegate, exceptions thrown by it are thrown as is.
+     */
+    protected final Object invokeDelegate(Method method, Object[] args) throws Throwable {
+        MethodHandle handle = handles.get(method);
+        if (handle == null) {
+            handle = prepare(method);
+        }
+        return (Object) handle.invokeExact(args == null ? NO_ARGS : args);
+    }
+
+    MethodHandle prepare(Method method) {
+        MethodHandle handle = handles.get(method);
+        if (handle != null) {
+            return handle;
+        }
+        try {
+            if (!method.isAccessible()) {
+                method.setAccessible(true);
+            }
+            handle = MethodHandles.lookup().unreflect(method)
+                    .bindTo(delegate)
+                    .asSpreader(Object[].class, method.getParameterTypes().length)
+                    .asType(SPREAD_TYPE);
+        } catch (IllegalAccessException e) {
+            // Should not be thrown, we just set the method to accessible.
+            throw new AssertionError(e);
+        }
+        MethodHandle prev = handles.putIfAbsent(method, handle);
+        return prev == null ? handle : prev;
+    }
+}
@@ -0,0 +1,45 @@
+package com.android.dx.stock;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Spec of a proxy built with {@link ProxyBuilder#delegateTo(Object, String...)}, to generate its
+ * class at build time by {@link PrebuiltProxyGenerator}.
+ * <p>
+ * At runtime the prebuilt dex is used if the proxy declares the same as at build time, otherwise
+ * the class is generated as before.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Repeatable(PrebuiltProxy.List.class)
+public @interface PrebuiltProxy {
+
+    /**
+     * Name of the proxied class.
+     */
+    String className();
+
+    /**
+     * Names of the intercepted methods.
+     */
+    String[] intercepted();
+
+    /**
+     * Proxies of the same group go into one dex, as {@link ProxyBuilder#buildProxyClasses} does.
+     */
+    String group() default "";
+
+    boolean sharedClassLoader() default true;
+
+    boolean trusted() default true;
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.TYPE)
+    @interface List {
+        PrebuiltProxy[] value();
+    }
+}
@@ -0,0 +1,124 @@
+package com.android.dx.stock;
+
+import com.android.dx.DexMaker;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Generate the proxy classes of {@link PrebuiltProxy} specs at build time, on the JVM, against
+ * stub framework classes.
+ * <p>
+ * Usage: {@code PrebuiltProxyGenerator <out dir> <classes dir>...}, with the stub framework jars
+ * and the scanned classes on the classpath. The dex files are written under
+ * {@link DexMaker#PREBUILT_DEX_DIR} of the out dir, to be packaged as resources.
+ */
+public final class PrebuiltProxyGenerator {
+
+    private PrebuiltProxyGenerator() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            throw new IllegalArgumentException("Usage: PrebuiltProxyGenerator <out dir> <classes dir>...");
+        }
+        File outDir = new File(args[0], DexMaker.PREBUILT_DEX_DIR);
+        if (!outDir.isDirectory() && !outDir.mkdirs()) {
+            throw new IOException("Fail create " + outDir);
+        }
+        ClassLoader loader = PrebuiltProxyGenerator.class.getClassLoader();
+
+        // Group -> specs, sorted for stable output.
+        Map<String, List<PrebuiltProxy>> groups = new TreeMap<>();
+        for (int i = 1; i < args.length; i++) {
+            List<String> classNames = new ArrayList<>();
+            listClassNames(new File(args[i]), "", classNames);
+            for (String className : classNames) {
+                for (PrebuiltProxy spec : findSpecs(loader, className)) {
+                    List<PrebuiltProxy> specs = groups.get(spec.group());
+                    if (specs == null) {
+                        specs = new ArrayList<>();
+                        groups.put(spec.group(), specs);
+                    }
+                    specs.add(spec);
+                }
+            }
+        }
+
+        for (Map.Entry<String, List<PrebuiltProxy>> group : groups.entrySet()) {
+            if (group.getKey().isEmpty()) {
+                // Not grouped, each on its own as ProxyBuilder#buildProxyClass does.
+                for (PrebuiltProxy spec : group.getValue()) {
+                    generate(loader, outDir, group.getKey(), Collections.singletonList(spec));
+                }
+            } else {
+                generate(loader, outDir, group.getKey(), group.getValue());
+            }
+        }
+    }
+
+    private static void generate(ClassLoader loader, File outDir, String group, List<PrebuiltProxy> specs)
+            throws IOException {
+        DexMaker dexMaker = new DexMaker();
+        ProxyBuilder<?> first = null;
+        for (PrebuiltProxy spec : specs) {
+            ProxyBuilder<?> builder;
+            try {
+                builder = ProxyBuilder.forClass(Class.forName(spec.className(), false, loader));
+            } catch (ClassNotFoundException | LinkageError e) {
+                System.err.println("PrebuiltProxyGenerator, skip group '" + group + "', "
+                        + spec.className() + " not in the stubs: " + e);
+                return;
+            }
+            if (spec.sharedClassLoader()) {
+                builder.withSharedClassLoader();
+            }
+            if (spec.trusted()) {
+                builder.markTrusted();
+            }
+            builder.interceptOnly(spec.intercepted());
+            builder.declareProxyClass(dexMaker);
+            if (first == null) {
+                first = builder;
+            }
+        }
+        first.configure(dexMaker);
+        String key = dexMaker.generateToDir(outDir);
+        System.out.println("PrebuiltProxyGenerator, group '" + group + "', " + specs.size()
+                + " classes -> " + key);
+    }
+
+    private static List<PrebuiltProxy> findSpecs(ClassLoader loader, String className) {
+        List<PrebuiltProxy> specs = new ArrayList<>();
+        try {
+            // Not initialized, only annotations are read.
+            Class<?> clazz = Class.forName(className, false, loader);
+            for (PrebuiltProxy spec : clazz.getAnnotationsByType(PrebuiltProxy.class)) {
+                specs.add(spec);
+            }
+        } catch (ClassNotFoundException | LinkageError e) {
+            // Classes depending on what is not on the classpath can not have specs we need.
+        }
+        return specs;
+    }
+
+    private static void listClassNames(File dir, String packagePrefix, List<String> out) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isDirectory()) {
+                listClassNames(file, packagePrefix + name + ".", out);
+            } else if (name.endsWith(".class") && !name.contains("$")) {
+                out.add(packagePrefix + name.substring(0, name.length() - ".class".length()));
+            }
+        }
+    }
+}
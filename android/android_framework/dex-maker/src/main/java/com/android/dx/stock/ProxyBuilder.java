@@ -47,9 +47,11 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 import github.tornaco.android.thanos.BuildProp;
 
@@ -111,6 +113,9 @@ import github.tornaco.android.thanos.BuildProp;
  *
  * <p>The {@link #finalize()} method on {@code Object} will not be proxied.
  *
+ * <p>A proxy wrapping an existing instance can forward the methods it does not intercept straight
+ * to that instance from the generated code, see {@link #delegateTo(Object, String...)}.
+ *
  * <p>You must provide a dex cache directory via the {@link #dexCache(File)} method. You should take
  * care not to make this a world-writable directory, so that third parties cannot inject code into
  * your application. A suitable parameter for these output directories would be something like this:
@@ -134,10 +139,17 @@ public final class ProxyBuilder<T> {
   public static final long VERSION =
       // System update
       // Thanox update
-      BuildProp.THANOS_VERSION_CODE + Build.FINGERPRINT.hashCode();
+      // Fingerprint is null off device, when generating prebuilt proxies.
+      BuildProp.THANOS_VERSION_CODE + String.valueOf(Build.FINGERPRINT).hashCode();
+
+  // Version of the generated code, part of the dex cache key. It should be updated if the
+  // implementation of the generated proxy class changes. Unlike VERSION, it does not change with
+  // the system or thanox, so prebuilt proxies match on any device with the same framework classes.
+  private static final int GENERATOR_VERSION = 1;
 
   private static final String FIELD_NAME_HANDLER = "$__handler";
   private static final String FIELD_NAME_METHODS = "$__methodArray";
+  private static final String FIELD_NAME_DELEGATE = "$__delegate";
 
   /**
    * A cache of all proxy classes ever generated. At the time of writing, Android's runtime doesn't
@@ -202,6 +214,9 @@ public final class ProxyBuilder<T> {
   private Method[] methods;
   private boolean sharedClassLoader;
   private boolean markTrusted;
+  private Object delegate;
+  // Sorted, null if not delegating.
+  private Set<String> interceptedMethodNames;
 
   private ProxyBuilder(Class<T> clazz) {
     baseClass = clazz;
@@ -282,6 +297,34 @@ public final class ProxyBuilder<T> {
     }
   }
 
+  private static void setDelegate(Object instance, Object delegate) {
+    try {
+      Field delegateField = instance.getClass().getDeclaredField(FIELD_NAME_DELEGATE);
+      delegateField.setAccessible(true);
+      delegateField.set(instance, delegate);
+    } catch (NoSuchFieldException e) {
+      // Should not be thrown, generated proxy class has been generated with this field.
+      throw new AssertionError(e);
+    } catch (IllegalAccessException e) {
+      // Should not be thrown, we just set the field to accessible.
+      throw new AssertionError(e);
+    }
+  }
+
+  private static Method[] getMethodsStaticField(Class<?> proxyClass) {
+    try {
+      Field methodArrayField = proxyClass.getDeclaredField(FIELD_NAME_METHODS);
+      methodArrayField.setAccessible(true);
+      return (Method[]) methodArrayField.get(null);
+    } catch (NoSuchFieldException e) {
+      // Should not be thrown, generated proxy class has been generated with this field.
+      throw new AssertionError(e);
+    } catch (IllegalAccessException e) {
+      // Should not be thrown, we just set the field to accessible.
+      throw new AssertionError(e);
+    }
+  }
+
   // TODO: test coverage for this
 
   /** Returns true if {@code c} is a proxy class created by this builder. */
@@ -331,6 +374,7 @@ public final class ProxyBuilder<T> {
       DexMaker dexMaker,
       TypeId<G> generatedType,
       Method[] methodsToProxy,
+      boolean[] delegateDirectly,
       TypeId<T> superclassType) {
     TypeId<InvocationHandler> handlerType = TypeId.get(InvocationHandler.class);
     TypeId<Method[]> methodArrayType = TypeId.get(Method[].class);
@@ -341,6 +385,7 @@ public final class ProxyBuilder<T> {
     TypeId<Object[]> objectArrayType = TypeId.get(Object[].class);
     MethodId<InvocationHandler, Object> methodInvoke =
         handlerType.getMethod(TypeId.OBJECT, "invoke", TypeId.OBJECT, methodType, objectArrayType);
+    FieldId<G, T> delegateField = generatedType.getField(superclassType, FIELD_NAME_DELEGATE);
     for (int m = 0; m < methodsToProxy.length; ++m) {
       /*
        * If the 5th method on the superclass Example that can be overridden were to look like
@@ -370,6 +415,12 @@ public final class ProxyBuilder<T> {
        *         return __handler.invoke(this, __methodArray[4],
        *                 new Object[] { param0, Integer.valueOf(param1) });
        *     }
+       *
+       * If the proxy delegates and doSomething is not intercepted, this goes before the above:
+       *
+       *         if ($__delegate != null) {
+       *             return $__delegate.doSomething(param0, param1);
+       *         }
        */
       Method method = methodsToProxy[m];
       String name = method.getName();
@@ -400,6 +451,16 @@ public final class ProxyBuilder<T> {
         aBoxedResult = code.newLocal(TypeId.get(aBoxedClass));
       }
       Local<InvocationHandler> nullHandler = code.newLocal(handlerType);
+      Local<T> localDelegate = null;
+      Local<T> nullDelegate = null;
+      Local<?> delegateResult = null;
+      MethodId<T, ?> delegateMethod = null;
+      if (delegateDirectly[m]) {
+        localDelegate = code.newLocal(superclassType);
+        nullDelegate = code.newLocal(superclassType);
+        delegateResult = code.newLocal(resultType);
+        delegateMethod = superclassType.getMethod(resultType, name, argTypes);
+      }
 
       Local<?>[] superArgs2 = null;
       Local<?> superResult2 = null;
@@ -415,6 +476,26 @@ public final class ProxyBuilder<T> {
         abstractMethodError = code.newLocal(abstractMethodErrorClass);
       }
 
+      if (delegateDirectly[m]) {
+        // if ($__delegate != null) call it directly, no boxing nor reflection.
+        Label delegateNullCase = new Label();
+        code.iget(delegateField, localDelegate, localThis);
+        code.loadConstant(nullDelegate, null);
+        code.compare(Comparison.EQ, delegateNullCase, nullDelegate, localDelegate);
+        Local<?>[] delegateArgs = new Local<?>[argClasses.length];
+        for (int i = 0; i < delegateArgs.length; ++i) {
+          delegateArgs[i] = code.getParameter(i, argTypes[i]);
+        }
+        if (void.class.equals(returnType)) {
+          code.invokeVirtual(delegateMethod, null, localDelegate, delegateArgs);
+          code.returnVoid();
+        } else {
+          invokeVirtual(delegateMethod, code, localDelegate, delegateArgs, delegateResult);
+          code.returnValue(delegateResult);
+        }
+        code.mark(delegateNullCase);
+      }
+
       code.loadConstant(methodIndex, m);
       code.sget(allMethods, methodArray);
       code.aget(thisMethod, methodArray, methodIndex);
@@ -499,6 +580,12 @@ public final class ProxyBuilder<T> {
     superCode.invokeSuper(superMethod, superResult, superThis, superArgs);
   }
 
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static void invokeVirtual(
+      MethodId method, Code code, Local instance, Local[] args, Local result) {
+    code.invokeVirtual(method, result, instance, args);
+  }
+
   private static Local<?> boxIfRequired(Code code, Local<?> parameter, Local<Object> temp) {
     MethodId<?, ?> unboxMethod = PRIMITIVE_TYPE_TO_UNBOX_METHOD.get(parameter.getType());
     if (unboxMethod == null) {
@@ -540,7 +627,11 @@ public final class ProxyBuilder<T> {
   }
 
   private static <T, G extends T> void generateConstructorsAndFields(
-      DexMaker dexMaker, TypeId<G> generatedType, TypeId<T> superType, Class<T> superClass) {
+      DexMaker dexMaker,
+      TypeId<G> generatedType,
+      TypeId<T> superType,
+      Class<T> superClass,
+      boolean delegating) {
     TypeId<InvocationHandler> handlerType = TypeId.get(InvocationHandler.class);
     TypeId<Method[]> methodArrayType = TypeId.get(Method[].class);
     FieldId<G, InvocationHandler> handlerField =
@@ -548,6 +639,10 @@ public final class ProxyBuilder<T> {
     dexMaker.declare(handlerField, PRIVATE, null);
     FieldId<G, Method[]> allMethods = generatedType.getField(methodArrayType, FIELD_NAME_METHODS);
     dexMaker.declare(allMethods, PRIVATE | STATIC, null);
+    if (delegating) {
+      FieldId<G, T> delegateField = generatedType.getField(superType, FIELD_NAME_DELEGATE);
+      dexMaker.declare(delegateField, PRIVATE, null);
+    }
     for (Constructor<T> constructor : getConstructorsToOverwrite(superClass)) {
       if (constructor.getModifiers() == Modifier.FINAL) {
         continue;
@@ -574,8 +669,15 @@ public final class ProxyBuilder<T> {
     return (Constructor<T>[]) clazz.getDeclaredConstructors();
   }
 
-  private static <T> String getMethodNameForProxyOf(Class<T> clazz, List<Class<?>> interfaces) {
+  private static <T> String getMethodNameForProxyOf(
+      Class<T> clazz, List<Class<?>> interfaces, Set<String> interceptedMethodNames) {
     String interfacesHash = Integer.toHexString(interfaces.hashCode());
+    if (interceptedMethodNames != null) {
+      // Proxies intercepting other methods differ in code, not in methods, keep them apart.
+      String interceptedHash = Integer.toHexString(interceptedMethodNames.hashCode());
+      return clazz.getName().replace(".", "/")
+          + "_" + interfacesHash + "_" + interceptedHash + "_DelegateProxy";
+    }
     return clazz.getName().replace(".", "/") + "_" + interfacesHash + "_Proxy";
   }
 
@@ -681,6 +783,23 @@ public final class ProxyBuilder<T> {
     return this;
   }
 
+  /**
+   * Wrap {@code delegate}, an instance of the class to proxy. Methods not named in {@code
+   * interceptedMethodNames} are forwarded to it by the generated code directly, only the intercepted
+   * methods go through the handler.
+   *
+   * <p>Protected and package private methods are forwarded directly only with {@link
+   * #withSharedClassLoader()}, the rest of them go through the handler too.
+   *
+   * <p>If the handler is a {@link DelegatingInvocationHandler}, its method handles of the
+   * intercepted methods are resolved in {@link #build()}.
+   */
+  public ProxyBuilder<T> delegateTo(Object delegate, String... interceptedMethodNames) {
+    this.delegate = delegate;
+    this.interceptedMethodNames = new TreeSet<>(Arrays.asList(interceptedMethodNames));
+    return this;
+  }
+
   /**
    * Create a new instance of the class to proxy.
    *
@@ -697,6 +816,9 @@ public final class ProxyBuilder<T> {
     check(
         constructorArgTypes.length == constructorArgValues.length,
         "constructorArgValues.length != constructorArgTypes.length");
+    check(
+        interceptedMethodNames == null || baseClass.isInstance(delegate),
+        "delegate is not an instance of " + baseClass.getName());
     Class<? extends T> proxyClass = buildProxyClass();
     Constructor<? extends T> constructor;
     try {
@@ -722,9 +844,24 @@ public final class ProxyBuilder<T> {
       throw launderCause(e);
     }
     setInvocationHandler(result, handler);
+    if (interceptedMethodNames != null) {
+      setDelegate(result, delegate);
+      if (handler instanceof DelegatingInvocationHandler) {
+        prepareDelegateHandles(proxyClass, (DelegatingInvocationHandler) handler);
+      }
+    }
     return result;
   }
 
+  private void prepareDelegateHandles(
+      Class<?> proxyClass, DelegatingInvocationHandler delegatingHandler) {
+    for (Method method : getMethodsStaticField(proxyClass)) {
+      if (interceptedMethodNames.contains(method.getName())) {
+        delegatingHandler.prepare(method);
+      }
+    }
+  }
+
   /**
    * Generate a proxy class. Note that new instances of this class will not automatically have an an
    * invocation handler, even if {@link #handler(InvocationHandler)} was called. The handler must be
@@ -732,17 +869,9 @@ public final class ProxyBuilder<T> {
    * InvocationHandler)}.
    */
   public Class<? extends T> buildProxyClass() throws IOException {
-    ClassLoader requestedClassloader;
-    if (sharedClassLoader) {
-      requestedClassloader = baseClass.getClassLoader();
-    } else {
-      requestedClassloader = parentClassLoader;
-    }
-
     // try the cache to see if we've generated this one before
     // we only populate the map with matching types
-    ProxiedClass<T> cacheKey =
-        new ProxiedClass<>(baseClass, interfaces, requestedClassloader, sharedClassLoader);
+    ProxiedClass<T> cacheKey = getCacheKey();
     @SuppressWarnings("unchecked")
     Class<? extends T> proxyClass = (Class) generatedProxyClasses.get(cacheKey);
     if (proxyClass != null) {
@@ -751,10 +880,85 @@ public final class ProxyBuilder<T> {
 
     // the cache missed; generate the class
     DexMaker dexMaker = new DexMaker();
-    String generatedName = getMethodNameForProxyOf(baseClass, interfaces);
+    Method[] methodsToProxy = declareProxyClass(dexMaker);
+    ClassLoader classLoader = generateAndLoad(dexMaker);
+    return loadProxyClass(classLoader, methodsToProxy, cacheKey);
+  }
+
+  /**
+   * Generates the proxy classes of all {@code builders} not generated yet into one dex, loaded by
+   * one class loader, so they share the dex header, string, type and method pools, and the cost of
+   * loading. {@link #build()} and {@link #buildProxyClass()} of these builders then find their
+   * class generated.
+   *
+   * <p>The builders must use the same dex cache, parent class loader and options, and their proxied
+   * classes the same class loader with {@link #withSharedClassLoader()}.
+   *
+   * @throws IOException if an exception occurred writing to the {@code dexCache} directory.
+   * @throws IllegalArgumentException if the builders can not go into one dex.
+   */
+  public static void buildProxyClasses(List<? extends ProxyBuilder<?>> builders)
+      throws IOException {
+    Map<ProxiedClass<?>, ProxyBuilder<?>> missing = new LinkedHashMap<>();
+    for (ProxyBuilder<?> builder : builders) {
+      ProxiedClass<?> cacheKey = builder.getCacheKey();
+      if (!generatedProxyClasses.containsKey(cacheKey)) {
+        missing.put(cacheKey, builder);
+      }
+    }
+    if (missing.isEmpty()) {
+      return;
+    }
+
+    ProxyBuilder<?> first = missing.values().iterator().next();
+    ProxiedClass<?> firstKey = missing.keySet().iterator().next();
+    DexMaker dexMaker = new DexMaker();
+    List<Method[]> methodsToProxy = new ArrayList<>(missing.size());
+    for (Map.Entry<ProxiedClass<?>, ProxyBuilder<?>> entry : missing.entrySet()) {
+      ProxyBuilder<?> builder = entry.getValue();
+      check(
+          builder.dexCache.equals(first.dexCache)
+              && builder.parentClassLoader == first.parentClassLoader
+              && entry.getKey().requestedClassloader == firstKey.requestedClassloader
+              && builder.sharedClassLoader == first.sharedClassLoader
+              && builder.markTrusted == first.markTrusted,
+          "cannot generate " + builder.baseClass + " with " + first.baseClass + " in one dex");
+      methodsToProxy.add(builder.declareProxyClass(dexMaker));
+    }
+    ClassLoader classLoader = first.generateAndLoad(dexMaker);
+    int i = 0;
+    for (Map.Entry<ProxiedClass<?>, ProxyBuilder<?>> entry : missing.entrySet()) {
+      entry.getValue().loadProxyClass(classLoader, methodsToProxy.get(i++), entry.getKey());
+    }
+  }
+
+  private ProxiedClass<T> getCacheKey() {
+    ClassLoader requestedClassloader;
+    if (sharedClassLoader) {
+      requestedClassloader = baseClass.getClassLoader();
+    } else {
+      requestedClassloader = parentClassLoader;
+    }
+    return new ProxiedClass<>(
+        baseClass, interfaces, requestedClassloader, sharedClassLoader, interceptedMethodNames);
+  }
+
+  /**
+   * Sets the names of the intercepted methods without a delegate yet, only to declare the proxy
+   * class of {@link #delegateTo(Object, String...)} for prebuilt proxies.
+   */
+  ProxyBuilder<T> interceptOnly(String... interceptedMethodNames) {
+    this.interceptedMethodNames = new TreeSet<>(Arrays.asList(interceptedMethodNames));
+    return this;
+  }
+
+  /** Declares the proxy class to {@code dexMaker}, returns the methods it proxies. */
+  Method[] declareProxyClass(DexMaker dexMaker) {
+    String generatedName = getMethodNameForProxyOf(baseClass, interfaces, interceptedMethodNames);
     TypeId<? extends T> generatedType = TypeId.get("L" + generatedName + ";");
     TypeId<T> superType = TypeId.get(baseClass);
-    generateConstructorsAndFields(dexMaker, generatedType, superType, baseClass);
+    generateConstructorsAndFields(
+        dexMaker, generatedType, superType, baseClass, interceptedMethodNames != null);
 
     Method[] methodsToProxy;
     if (methods == null) {
@@ -788,11 +992,32 @@ public final class ProxyBuilder<T> {
           }
         });
 
-    generateCodeForAllMethods(dexMaker, generatedType, methodsToProxy, superType);
+    boolean[] delegateDirectly = new boolean[methodsToProxy.length];
+    for (int i = 0; i < methodsToProxy.length; i++) {
+      delegateDirectly[i] = canDelegateDirectly(methodsToProxy[i]);
+      // The code differs with the modifiers and declaring class of the proxied method.
+      dexMaker.addCacheKeyInput(
+          generatedName + " " + methodsToProxy[i] + (delegateDirectly[i] ? " delegate" : ""));
+    }
+    generateCodeForAllMethods(dexMaker, generatedType, methodsToProxy, delegateDirectly, superType);
     dexMaker.declare(
         generatedType, generatedName + ".generated", PUBLIC, superType, getInterfacesAsTypeIds());
+    return methodsToProxy;
+  }
+
+  private ClassLoader generateAndLoad(DexMaker dexMaker) throws IOException {
+    configure(dexMaker);
+    if (sharedClassLoader) {
+      return dexMaker.generateAndLoad(null, dexCache);
+    } else {
+      return dexMaker.generateAndLoad(parentClassLoader, dexCache);
+    }
+  }
+
+  /** Sets the options of this builder to {@code dexMaker}, the same for prebuilt proxies. */
+  void configure(DexMaker dexMaker) {
     if (sharedClassLoader) {
-      dexMaker.setSharedClassLoader(requestedClassloader);
+      dexMaker.setSharedClassLoader(baseClass.getClassLoader());
     }
     if (markTrusted) {
       // The proxied class might have blacklisted methods. Blacklisting methods (and fields)
@@ -806,12 +1031,14 @@ public final class ProxyBuilder<T> {
       // all generated classes as trusted.
       dexMaker.markAsTrusted();
     }
-    ClassLoader classLoader;
-    if (sharedClassLoader) {
-      classLoader = dexMaker.generateAndLoad(null, dexCache);
-    } else {
-      classLoader = dexMaker.generateAndLoad(parentClassLoader, dexCache);
-    }
+    dexMaker.setGeneratorVersion("ProxyBuilder " + GENERATOR_VERSION);
+    dexMaker.setPrebuiltDexLoader(ProxyBuilder.class.getClassLoader());
+  }
+
+  private Class<? extends T> loadProxyClass(
+      ClassLoader classLoader, Method[] methodsToProxy, ProxiedClass<?> cacheKey) {
+    String generatedName = getMethodNameForProxyOf(baseClass, interfaces, interceptedMethodNames);
+    Class<? extends T> proxyClass;
     try {
       proxyClass = loadClass(classLoader, generatedName);
     } catch (IllegalAccessError e) {
@@ -826,6 +1053,18 @@ public final class ProxyBuilder<T> {
     return proxyClass;
   }
 
+  private boolean canDelegateDirectly(Method method) {
+    if (interceptedMethodNames == null || interceptedMethodNames.contains(method.getName())) {
+      return false;
+    }
+    // Methods of the extra interfaces are not implemented by the delegate.
+    if (!method.getDeclaringClass().isAssignableFrom(baseClass)) {
+      return false;
+    }
+    // Calling protected or package private methods of another instance needs the same package.
+    return Modifier.isPublic(method.getModifiers()) || sharedClassLoader;
+  }
+
   // The type cast is safe: the generated type will extend the base class type.
   @SuppressWarnings("unchecked")
   private Class<? extends T> loadClass(ClassLoader classLoader, String generatedName)
@@ -983,15 +1222,21 @@ public final class ProxyBuilder<T> {
 
     final boolean sharedClassLoader;
 
+    // Null if not delegating.
+    final Set<String> interceptedMethodNames;
+
     private ProxiedClass(
         Class<U> clazz,
         List<Class<?>> interfaces,
         ClassLoader requestedClassloader,
-        boolean sharedClassLoader) {
+        boolean sharedClassLoader,
+        Set<String> interceptedMethodNames) {
       this.clazz = clazz;
       this.interfaces = new ArrayList<>(interfaces);
       this.requestedClassloader = requestedClassloader;
       this.sharedClassLoader = sharedClassLoader;
+      this.interceptedMethodNames =
+          interceptedMethodNames == null ? null : new TreeSet<>(interceptedMethodNames);
     }
 
     @Override
@@ -1007,7 +1252,10 @@ public final class ProxyBuilder<T> {
       return clazz == that.clazz
           && interfaces.equals(that.interfaces)
           && requestedClassloader == that.requestedClassloader
-          && sharedClassLoader == that.sharedClassLoader;
+          && sharedClassLoader == that.sharedClassLoader
+          && (interceptedMethodNames == null
+              ? that.interceptedMethodNames == null
+              : interceptedMethodNames.equals(that.interceptedMethodNames));
     }
 
     @Override
@@ -1015,7 +1263,8 @@ public final class ProxyBuilder<T> {
       return clazz.hashCode()
           + interfaces.hashCode()
           + requestedClassloader.hashCode()
-          + (sharedClassLoader ? 1 : 0);
+          + (sharedClassLoader ? 1 : 0)
+          + (interceptedMethodNames == null ? 0 : interceptedMethodNames.hashCode());
     }
   }
 }
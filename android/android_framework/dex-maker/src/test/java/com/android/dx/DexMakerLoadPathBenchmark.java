@@ -0,0 +1,87 @@
+package com.android.dx;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a dex cache miss in {@link DexMaker#generateAndLoad} up to the class loader, with the
+ * dex loaded from memory, which only generates it, against the file path, which also writes it
+ * and the manifest to the dex cache.
+ * <p>
+ * Class loading itself needs an Android runtime and is not measured here.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DexMakerLoadPathBenchmark {
+
+    @Param({"10", "100"})
+    public int methods;
+
+    private File dir;
+    private DexCache cache;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("dexcache").toFile();
+        cache = new DexCache(dir);
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        dir.delete();
+    }
+
+    @Benchmark
+    public byte[] inMemory() {
+        return newDexMaker(methods).generate();
+    }
+
+    @Benchmark
+    public byte[] file() throws IOException {
+        byte[] dex = newDexMaker(methods).generate();
+        cache.write("bench", dex);
+        return dex;
+    }
+
+    static DexMaker newDexMaker(int methods) {
+        DexMaker dexMaker = new DexMaker();
+        TypeId<?> type = TypeId.get("Lbench/Generated;");
+        dexMaker.declare(type, "Generated.generated", Modifier.PUBLIC, TypeId.OBJECT);
+        for (int i = 0; i < methods; i++) {
+            MethodId<?, String> method = type.getMethod(TypeId.STRING, "m" + i, TypeId.INT);
+            Code code = dexMaker.declare(method, Modifier.PUBLIC | Modifier.STATIC);
+            Local<String> result = code.newLocal(TypeId.STRING);
+            code.loadConstant(result, "value" + i);
+            code.returnValue(result);
+        }
+        return dexMaker;
+    }
+}
@@ -0,0 +1,54 @@
+package com.android.dx.merge;
+
+import com.android.dx.command.dexer.DxContext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merge time of large synthetic dex files with {@link DexMerger#setParallelism} 1 and 4. Run with
+ * {@code -Pjmh.prof=gc} to see the memory cost of holding whole sections.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DexMergerBenchmark {
+
+    @Param({"4", "16"})
+    public int dexes;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private byte[][] inputs;
+
+    @Setup
+    public void setup() {
+        inputs = new byte[dexes][];
+        for (int i = 0; i < dexes; i++) {
+            inputs[i] = SyntheticDexes.generate(i, 500);
+        }
+    }
+
+    @Benchmark
+    public int merge() throws IOException {
+        DexMerger merger = new DexMerger(SyntheticDexes.toDexes(inputs), CollisionPolicy.KEEP_FIRST, new DxContext());
+        merger.setParallelism(parallelism);
+        return merger.merge().getLength();
+    }
+}
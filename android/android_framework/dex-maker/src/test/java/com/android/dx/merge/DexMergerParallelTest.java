@@ -0,0 +1,57 @@
+package com.android.dx.merge;
+
+import com.android.dx.command.dexer.DxContext;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class DexMergerParallelTest {
+
+    @Test
+    public void givenDexes_whenMergeInParallel_thenSameBytesAsSingleThread() throws IOException {
+        for (int count : new int[]{2, 3, 5}) {
+            byte[][] inputs = inputs(count);
+
+            byte[] single = merge(inputs, 1, Integer.MAX_VALUE);
+            byte[] parallel = merge(inputs, 4, Integer.MAX_VALUE);
+
+            Assert.assertArrayEquals("dexes: " + count, single, parallel);
+        }
+    }
+
+    @Test
+    public void givenDexes_whenMergeAndCompactInParallel_thenSameBytesAsSingleThread() throws IOException {
+        for (int count : new int[]{2, 3, 5}) {
+            byte[][] inputs = inputs(count);
+
+            byte[] single = merge(inputs, 1, 0);
+            byte[] parallel = merge(inputs, 4, 0);
+
+            Assert.assertArrayEquals("dexes: " + count, single, parallel);
+        }
+    }
+
+    @Test
+    public void givenMoreThreadsThanDexes_whenMerge_thenSameBytesAsSingleThread() throws IOException {
+        byte[][] inputs = inputs(2);
+
+        Assert.assertArrayEquals(merge(inputs, 1, Integer.MAX_VALUE), merge(inputs, 16, Integer.MAX_VALUE));
+    }
+
+    private static byte[][] inputs(int count) {
+        byte[][] inputs = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            inputs[i] = SyntheticDexes.generate(i, 30);
+        }
+        return inputs;
+    }
+
+    private static byte[] merge(byte[][] inputs, int parallelism, int compactWasteThreshold) throws IOException {
+        DexMerger merger = new DexMerger(SyntheticDexes.toDexes(inputs), CollisionPolicy.KEEP_FIRST, new DxContext());
+        merger.setParallelism(parallelism);
+        merger.setCompactWasteThreshold(compactWasteThreshold);
+        return merger.merge().getBytes();
+    }
+}
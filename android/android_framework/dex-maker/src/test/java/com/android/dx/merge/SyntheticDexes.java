@@ -0,0 +1,50 @@
+package com.android.dx.merge;
+
+import com.android.dex.Dex;
+import com.android.dx.Code;
+import com.android.dx.DexMaker;
+import com.android.dx.Local;
+import com.android.dx.MethodId;
+import com.android.dx.TypeId;
+
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+
+/**
+ * Generated dex files whose ids partly overlap between seeds, so merging them has both shared and
+ * distinct strings, types, fields and methods to sort.
+ */
+final class SyntheticDexes {
+
+    private SyntheticDexes() {
+    }
+
+    static byte[] generate(int seed, int classes) {
+        DexMaker dexMaker = new DexMaker();
+        for (int c = 0; c < classes; c++) {
+            TypeId<?> type = TypeId.get("Lp" + (c % 7) + "/C" + c + "_" + (seed % 2) + ";");
+            dexMaker.declare(type, "C.java", Modifier.PUBLIC, TypeId.OBJECT, TypeId.get(Runnable.class));
+            for (int f = 0; f < 5; f++) {
+                dexMaker.declare(type.getField(TypeId.INT, "f" + ((f + seed) % 9)),
+                        Modifier.PUBLIC | Modifier.STATIC, f + seed);
+            }
+            for (int m = 0; m < 6; m++) {
+                MethodId<?, String> method =
+                        type.getMethod(TypeId.STRING, "m" + ((m * 3 + seed) % 11), TypeId.INT, TypeId.LONG);
+                Code code = dexMaker.declare(method, Modifier.PUBLIC | Modifier.STATIC);
+                Local<String> result = code.newLocal(TypeId.STRING);
+                code.loadConstant(result, "str" + ((m + c + seed) % 17));
+                code.returnValue(result);
+            }
+        }
+        return dexMaker.generate();
+    }
+
+    static Dex[] toDexes(byte[][] bytes) throws IOException {
+        Dex[] dexes = new Dex[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            dexes[i] = new Dex(bytes[i].clone());
+        }
+        return dexes;
+    }
+}
@@ -0,0 +1,81 @@
+package com.android.dx.stock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of calling through to the delegate of an intercepted proxy method, with
+ * {@link DelegatingInvocationHandler#invokeDelegate} against {@link Method#invoke} and a bound
+ * handle called with {@link MethodHandle#invokeWithArguments}, which it used before.
+ * <p>
+ * Runs on the JVM, ART compiles method handles differently, so compare the ratios only.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DelegatingInvocationHandlerBenchmark {
+
+    public static class Firewall {
+        public boolean checkBroadcast(Object intent, int callerUid, String callerPackage, int receivingUid) {
+            return callerUid != receivingUid && intent != null && callerPackage != null;
+        }
+    }
+
+    private static final class Handler extends DelegatingInvocationHandler {
+        Handler(Object delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            return invokeDelegate(method, args);
+        }
+    }
+
+    private final Firewall delegate = new Firewall();
+    private final Object[] args = {new Object(), 10001, "com.example.app", 10002};
+
+    private Method method;
+    private Handler handler;
+    private MethodHandle boundHandle;
+
+    @Setup
+    public void setup() throws Exception {
+        method = Firewall.class.getMethod("checkBroadcast", Object.class, int.class, String.class, int.class);
+        method.setAccessible(true);
+        handler = new Handler(delegate);
+        handler.prepare(method);
+        boundHandle = MethodHandles.lookup().unreflect(method).bindTo(delegate);
+    }
+
+    @Benchmark
+    public Object methodInvoke() throws Exception {
+        return method.invoke(delegate, args);
+    }
+
+    @Benchmark
+    public Object invokeWithArguments() throws Throwable {
+        return boundHandle.invokeWithArguments(args);
+    }
+
+    @Benchmark
+    public Object invokeDelegate() throws Throwable {
+        return handler.invoke(null, method, args);
+    }
+}
@@ -0,0 +1,93 @@
+package com.android.dx.stock;
+
+import com.android.dx.DexMaker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Generating the proxy classes of 1, 5 and 20 builders into one dex, as
+ * {@link ProxyBuilder#buildProxyClasses(List)} does, against one dex each.
+ * <p>
+ * Class loading needs an Android runtime, so this measures declaring and generating the dex
+ * only. {@link #batchedDexBytes()} and {@link #separateDexBytes()} return the total dex size,
+ * run with {@code -Pjmh.prof=gc} to see the memory allocated per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProxyBatchBenchmark {
+    private static final Class<?>[] INTERFACES = {
+            Runnable.class, Comparable.class, CharSequence.class, Iterable.class, Collection.class,
+            List.class, Set.class, Map.class, Queue.class, Deque.class,
+            Iterator.class, ListIterator.class, Comparator.class, Callable.class, Closeable.class,
+            NavigableMap.class, NavigableSet.class, Function.class, Supplier.class, Consumer.class,
+            BiFunction.class, Predicate.class,
+    };
+
+    @Param({"1", "5", "20"})
+    public int proxies;
+
+    private final List<ProxyBuilder<Object>> builders = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        builders.clear();
+        for (int i = 0; i < proxies; i++) {
+            builders.add(ProxyBuilder.forClass(Object.class).implementing(INTERFACES[i]));
+        }
+    }
+
+    @Benchmark
+    public int batchedDexBytes() {
+        DexMaker dexMaker = new DexMaker();
+        for (ProxyBuilder<Object> builder : builders) {
+            builder.declareProxyClass(dexMaker);
+        }
+        return dexMaker.generate().length;
+    }
+
+    @Benchmark
+    public int separateDexBytes() {
+        int bytes = 0;
+        for (ProxyBuilder<Object> builder : builders) {
+            DexMaker dexMaker = new DexMaker();
+            builder.declareProxyClass(dexMaker);
+            bytes += dexMaker.generate().length;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,54 @@
+package android.content.pm;
+
+import android.content.ComponentName;
+import android.content.Intent;
+
+import java.util.List;
+
+/**
+ * Stub of the services class of Android 13, not in the SDK jar. Declares what the proxy of
+ * AMSPackageInternalHooks overrides, for prebuilt proxies.
+ */
+public abstract class PackageManagerInternal {
+
+    public PackageManagerInternal() {
+        throw new RuntimeException("Stub!");
+    }
+
+    public abstract ResolveInfo resolveService(Intent intent, String resolvedType, long flags, int userId,
+                                               int callingUid);
+
+    public abstract ResolveInfo resolveIntent(Intent intent, String resolvedType, long flags,
+                                              long privateResolveFlags, int userId, boolean resolveForStart,
+                                              int filterCallingUid);
+
+    public abstract List<ResolveInfo> queryIntentActivities(Intent intent, String resolvedType, long flags,
+                                                            int filterCallingUid, int userId);
+
+    public abstract List<ResolveInfo> queryIntentServices(Intent intent, long flags, int callingUid, int userId);
+
+    public abstract ComponentName getHomeActivitiesAsUser(List<ResolveInfo> allHomeCandidates, int userId);
+
+    public abstract ApplicationInfo getApplicationInfo(String packageName, long flags, int filterCallingUid,
+                                                       int userId);
+
+    public abstract PackageInfo getPackageInfo(String packageName, long flags, int filterCallingUid, int userId);
+
+    public abstract List<ApplicationInfo> getInstalledApplications(long flags, int userId, int callingUid);
+
+    public abstract int getPackageUid(String packageName, long flags, int userId);
+
+    public abstract String getNameForUid(int uid);
+
+    public abstract int getPackageTargetSdkVersion(String packageName);
+
+    public abstract boolean isPackageDataProtected(int userId, String packageName);
+
+    public abstract boolean isPackageEphemeral(int userId, String packageName);
+
+    public abstract boolean isPackageSuspended(String packageName, int userId);
+
+    public abstract boolean filterAppAccess(String packageName, int callingUid, int userId);
+
+    public abstract String[] getKnownPackageNames(int knownPackage, int userId);
+}
@@ -0,0 +1,49 @@
+package com.android.server.firewall;
+
+import android.content.ComponentName;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.os.Handler;
+
+/**
+ * Stub of the services class of Android 13, not in the SDK jar. Declares what the proxy of
+ * IFWHooks overrides, for prebuilt proxies.
+ */
+public class IntentFirewall {
+    public static final int TYPE_ACTIVITY = 0;
+    public static final int TYPE_BROADCAST = 1;
+    public static final int TYPE_SERVICE = 2;
+
+    public interface AMSInterface {
+        int checkComponentPermission(String permission, int pid, int uid, int owningUid, boolean exported);
+
+        Object getAMSLock();
+    }
+
+    public IntentFirewall(AMSInterface ams, Handler handler) {
+        throw new RuntimeException("Stub!");
+    }
+
+    public boolean checkStartActivity(Intent intent, int callerUid, int callerPid, String resolvedType,
+                                      ApplicationInfo resolvedApp) {
+        throw new RuntimeException("Stub!");
+    }
+
+    public boolean checkService(ComponentName resolvedService, Intent intent, int callerUid, int callerPid,
+                                String resolvedType, ApplicationInfo resolvedApp) {
+        throw new RuntimeException("Stub!");
+    }
+
+    public boolean checkBroadcast(Intent intent, int callerUid, int callerPid, String resolvedType,
+                                  int receivingUid) {
+        throw new RuntimeException("Stub!");
+    }
+
+    boolean checkComponentPermission(String permission, int pid, int uid, int owningUid, boolean exported) {
+        throw new RuntimeException("Stub!");
+    }
+
+    boolean signaturesMatch(int uid1, int uid2) {
+        throw new RuntimeException("Stub!");
+    }
+}
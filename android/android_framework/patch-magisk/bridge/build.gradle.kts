@@ -5,9 +5,29 @@ plugins {
 dependencies {
     compileOnly("org.projectlombok:lombok:1.18.34")
     annotationProcessor("org.projectlombok:lombok:1.18.34")
+    annotationProcessor(project(":annotation_processors:hook_log_check"))
 
     implementation(project(":android_framework:base"))
     compileOnly(project(":android_framework:hidden-api"))
 
     implementation(libs.guava.android)
-}
\ No newline at end of file
+
+    testImplementation(libs.jmh.core)
+    testAnnotationProcessor(libs.jmh.generator.annprocess)
+    // Binder interfaces the proxies implement, loaded from the SDK stubs on the JVM.
+    testImplementation(project(":android_framework:hidden-api"))
+}
+
+// Run the JMH benchmarks under src/test, e.g. -Pjmh.includes=ProxyDispatchBenchmark
+val jmh by tasks.registering(JavaExec::class) {
+    group = "benchmark"
+    dependsOn("testClasses")
+    classpath = sourceSets.test.get().runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    args((findProperty("jmh.includes") as String?) ?: ".*Benchmark")
+}
+
+// Fail on XLog.v/d calls building their message eagerly, see HookLogCheckPlugin.
+tasks.named<JavaCompile>("compileJava") {
+    options.compilerArgs.add("-Xplugin:HookLogCheck")
+}
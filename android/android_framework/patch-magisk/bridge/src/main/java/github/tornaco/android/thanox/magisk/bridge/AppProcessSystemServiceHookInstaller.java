@@ -15,8 +15,7 @@ import android.util.Singleton;
 
 import com.elvishew.xlog.XLog;
 
-import java.util.Arrays;
-
+import github.tornaco.android.thanos.core.util.HookLog;
 import github.tornaco.android.thanos.core.util.PkgUtils;
 import github.tornaco.android.thanox.magisk.bridge.proxy.Proxies;
 import github.tornaco.android.thanox.magisk.bridge.proxy.am.ActivityManagerProxyProvider;
@@ -51,7 +50,7 @@ public class AppProcessSystemServiceHookInstaller {
                     final IBinder orig = ServiceManager.getService(Context.ACTIVITY_SERVICE);
                     final IBinder b = orig == null ? null : new ActivityManagerProxyProvider().provide(orig);
                     final IActivityManager am = IActivityManager.Stub.asInterface(b);
-                    XLog.d("IActivityManagerSingletonProxy create " + am);
+                    XLog.d("IActivityManagerSingletonProxy create %s", am);
                     return am;
                 }
             };
@@ -63,7 +62,7 @@ public class AppProcessSystemServiceHookInstaller {
                     final IBinder orig = ServiceManager.getService(Context.ACTIVITY_TASK_SERVICE);
                     final IBinder b = orig == null ? null : new ActivityTaskManagerProxyProvider().provide(orig);
                     final IActivityTaskManager am = IActivityTaskManager.Stub.asInterface(b);
-                    XLog.d("IActivityTaskManagerSingletonProxy create " + am);
+                    XLog.d("IActivityTaskManagerSingletonProxy create %s", am);
                     return am;
                 }
             };
@@ -84,8 +83,10 @@ public class AppProcessSystemServiceHookInstaller {
     private void installServiceManagerCacheHook() {
         @SuppressWarnings("unchecked")
         ArrayMap<String, IBinder> arrayMap = (ArrayMap<String, IBinder>) XposedHelpers.getStaticObjectField(ServiceManager.class, "sCache");
-        XLog.d("installServiceManagerCacheHook.. %s", Arrays.toString(arrayMap.keySet().toArray()));
-        for (String name : arrayMap.keySet().toArray(new String[0])) {
+        HookLog.d(() -> "installServiceManagerCacheHook.. " + arrayMap.keySet());
+        // Only look up the services we proxy, the rest of the cache is never touched.
+        // The proxy wraps the binder only, its interface is created on first queryLocalInterface.
+        for (String name : Proxies.cachedServiceNames()) {
             IBinder legacy = arrayMap.get(name);
             if (legacy != null) {
                 IBinder proxyBinder = Proxies.forCached(name, legacy);
@@ -3,12 +3,12 @@ package github.tornaco.android.thanox.magisk.bridge;
 import android.os.Build;
 
 import com.elvishew.xlog.LogConfiguration;
-import com.elvishew.xlog.LogLevel;
 import com.elvishew.xlog.XLog;
 import com.elvishew.xlog.printer.AndroidPrinter;
 import com.elvishew.xlog.printer.Printer;
 
 import github.tornaco.android.thanos.core.util.AbstractSafeR;
+import github.tornaco.android.thanos.core.util.HookLog;
 import github.tornaco.android.thanos.core.util.OsUtils;
 
 public class ThanoxBridge {
@@ -16,8 +16,9 @@ public class ThanoxBridge {
 
     static {
         Printer androidPrinter = new AndroidPrinter();
+        // Verbose and debug logs are only printed in debug builds.
         XLog.init(new LogConfiguration.Builder()
-                        .logLevel(LogLevel.ALL)
+                        .logLevel(HookLog.LEVEL)
                         .tag("Thanox-Magisk-Bridge")
                         .build(),
                 androidPrinter);
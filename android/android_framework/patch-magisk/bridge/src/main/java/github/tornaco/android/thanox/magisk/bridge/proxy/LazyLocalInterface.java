@@ -0,0 +1,38 @@
+package github.tornaco.android.thanox.magisk.bridge.proxy;
+
+import android.os.IInterface;
+
+import util.os.BinderProxy;
+
+/**
+ * Build the proxy interface of a binder on its first queryLocalInterface, and hand out the same
+ * one after. A process never asking for the service never pays for the proxy.
+ */
+public abstract class LazyLocalInterface implements BinderProxy.InvocationHandler {
+    private final String descriptor;
+    private volatile IInterface proxy;
+
+    protected LazyLocalInterface(String descriptor) {
+        this.descriptor = descriptor;
+    }
+
+    @Override
+    public IInterface onQueryLocalInterface(String descriptor, IInterface iInterface) {
+        if (!this.descriptor.equals(descriptor)) {
+            return iInterface;
+        }
+        IInterface p = proxy;
+        if (p == null) {
+            synchronized (this) {
+                p = proxy;
+                if (p == null) {
+                    p = create();
+                    proxy = p;
+                }
+            }
+        }
+        return p;
+    }
+
+    protected abstract IInterface create();
+}
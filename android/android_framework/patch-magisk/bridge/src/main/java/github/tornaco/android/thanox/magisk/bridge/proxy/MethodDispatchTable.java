@@ -0,0 +1,50 @@
+package github.tornaco.android.thanox.magisk.bridge.proxy;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Resolve a proxied {@link Method} to a small int id once, so the invocation handler can
+ * switch on it instead of comparing method names on every call.
+ * <p>
+ * Methods not registered resolve to {@link #PASS_THROUGH}, the handler should invoke
+ * the original interface at once for them.
+ * <p>
+ * A proxy class passes the same {@link Method} instance on every call, so resolved ids are
+ * looked up by identity, Method#equals and Method#hashCode cost more than the name
+ * comparisons this table replaces. The map is copied on write, it only grows until every
+ * method of the interface has been called once.
+ */
+public final class MethodDispatchTable {
+    public static final int PASS_THROUGH = 0;
+
+    private final Map<String, Integer> nameToId = new HashMap<>();
+    private volatile Map<Method, Integer> methodToId = new IdentityHashMap<>();
+
+    /**
+     * Register before this table is used, id must not be {@link #PASS_THROUGH}.
+     */
+    public MethodDispatchTable register(String methodName, int id) {
+        if (id == PASS_THROUGH) {
+            throw new IllegalArgumentException("Id " + PASS_THROUGH + " is reserved for pass through.");
+        }
+        nameToId.put(methodName, id);
+        return this;
+    }
+
+    public int idOf(Method method) {
+        Integer id = methodToId.get(method);
+        if (id == null) {
+            Integer registered = nameToId.get(method.getName());
+            id = registered == null ? PASS_THROUGH : registered;
+            synchronized (this) {
+                Map<Method, Integer> resolved = new IdentityHashMap<>(methodToId);
+                resolved.put(method, id);
+                methodToId = resolved;
+            }
+        }
+        return id;
+    }
+}
@@ -1,28 +1,33 @@
 package github.tornaco.android.thanox.magisk.bridge.proxy;
 
+import android.content.Context;
 import android.os.IBinder;
 
-import com.google.common.collect.Lists;
+import com.google.common.collect.ImmutableMap;
 
-import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import github.tornaco.android.thanox.magisk.bridge.proxy.notification.NotificationManagerProxyProvider;
 
 public class Proxies {
-    private static final List<ProxyProvider> PROVIDERS_CACHE = Lists.newArrayList(
-            new NotificationManagerProxyProvider()
+    // Service name -> provider.
+    private static final Map<String, ProxyProvider> PROVIDERS_CACHE = ImmutableMap.of(
+            Context.NOTIFICATION_SERVICE, new NotificationManagerProxyProvider()
     );
 
+    /**
+     * @return Names of the services in ServiceManager cache we proxy.
+     */
+    public static Set<String> cachedServiceNames() {
+        return PROVIDERS_CACHE.keySet();
+    }
+
     public static IBinder forCached(String name, IBinder legacyBinder) {
         if (name == null || legacyBinder == null) {
             return null;
         }
-        for (ProxyProvider p : PROVIDERS_CACHE) {
-            IBinder pb = p.isForService(name) ? p.provide(legacyBinder) : null;
-            if (pb != null) {
-                return pb;
-            }
-        }
-        return null;
+        ProxyProvider p = PROVIDERS_CACHE.get(name);
+        return p != null && p.isForService(name) ? p.provide(legacyBinder) : null;
     }
-}
\ No newline at end of file
+}
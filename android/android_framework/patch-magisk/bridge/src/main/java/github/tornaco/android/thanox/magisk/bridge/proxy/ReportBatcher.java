@@ -0,0 +1,120 @@
+package github.tornaco.android.thanox.magisk.bridge.proxy;
+
+import android.util.Log;
+
+import com.elvishew.xlog.XLog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import github.tornaco.android.thanos.core.annotation.GuardedBy;
+
+/**
+ * Collect reports from hooked calls of the app and hand them to thanox in one batch
+ * off the calling thread, so the app never waits for a report round trip.
+ * <p>
+ * A report equal to the last queued one can be merged into it, see {@link #merge}, so an app
+ * polling in a loop queues one report. Reports arriving while the queue is full are handed to
+ * {@link #onQueueFull}, which drops them by default, a report is never worth blocking the app.
+ * They are counted and logged with the next batch.
+ */
+public abstract class ReportBatcher<T> {
+    // One shared thread for all batchers, it exits when idle.
+    private static final ScheduledThreadPoolExecutor EXECUTOR;
+
+    static {
+        EXECUTOR = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "thanox-report");
+            t.setDaemon(true);
+            return t;
+        });
+        EXECUTOR.setKeepAliveTime(10, TimeUnit.SECONDS);
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private final String name;
+    private final long delayMillis;
+    private final int maxPending;
+
+    private final Object lock = new Object();
+    @GuardedBy("lock")
+    private List<T> pending = new ArrayList<>();
+    @GuardedBy("lock")
+    private boolean scheduled;
+    @GuardedBy("lock")
+    private long overflowed;
+
+    /**
+     * @param delayMillis How long to wait for more reports before sending the batch.
+     * @param maxPending  Max reports waiting to be sent.
+     */
+    protected ReportBatcher(String name, long delayMillis, int maxPending) {
+        this.name = name;
+        this.delayMillis = delayMillis;
+        this.maxPending = maxPending;
+    }
+
+    public void report(T report) {
+        synchronized (lock) {
+            if (!pending.isEmpty() && merge(pending.get(pending.size() - 1), report)) {
+                return;
+            }
+            if (pending.size() < maxPending) {
+                pending.add(report);
+                if (!scheduled) {
+                    scheduled = true;
+                    EXECUTOR.schedule(this::drain, delayMillis, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+            overflowed++;
+        }
+        onQueueFull(report);
+    }
+
+    private void drain() {
+        List<T> batch;
+        long overflowedCount;
+        synchronized (lock) {
+            batch = pending;
+            pending = new ArrayList<>();
+            scheduled = false;
+            overflowedCount = overflowed;
+            overflowed = 0;
+        }
+        if (overflowedCount > 0) {
+            XLog.w("ReportBatcher %s, queue full for %s reports", name, overflowedCount);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            onReport(batch);
+        } catch (Throwable e) {
+            XLog.w("ReportBatcher %s, fail report: %s", name, Log.getStackTraceString(e));
+        }
+    }
+
+    /**
+     * Called with the lock held, do not block.
+     *
+     * @return True if report is merged into the queued one, and should not be queued.
+     */
+    protected boolean merge(T queued, T report) {
+        return false;
+    }
+
+    /**
+     * Called on the calling thread, without the lock, for a report that does not fit in the queue.
+     * Drop it by default.
+     */
+    protected void onQueueFull(T report) {
+    }
+
+    /**
+     * Called on the report thread, with reports in arrival order.
+     */
+    protected abstract void onReport(List<T> batch) throws Exception;
+}
@@ -12,6 +12,7 @@ import java.lang.reflect.Proxy;
 import java.util.Arrays;
 import java.util.Map;
 
+import github.tornaco.android.thanos.core.util.HookLog;
 import github.tornaco.android.thanox.magisk.bridge.util.ReflectionUtils;
 
 class ServiceFetcherProxy {
@@ -20,7 +21,7 @@ class ServiceFetcherProxy {
     static void installInto(Map<String, Object> fetcherMap) {
         for (String name : fetcherMap.keySet().toArray(new String[0])) {
             Object originalFetcher = fetcherMap.get(name);
-            XLog.d("ServiceFetcherProxy, installInto, originalFetcher " + name);
+            XLog.d("ServiceFetcherProxy, installInto, originalFetcher %s", name);
             if (originalFetcher != null) {
                 Object proxyFetcher = newProxy(originalFetcher, name);
                 XLog.d("ServiceFetcherProxy, installInto, proxyFetcher: %s", proxyFetcher);
@@ -37,7 +38,7 @@ class ServiceFetcherProxy {
     @Nullable
     private static Object newProxy(Object originalFetcher, String name) {
         try {
-            XLog.d("ServiceFetcherProxy newProxy: " + name);
+            XLog.d("ServiceFetcherProxy newProxy: %s", name);
             @SuppressLint("PrivateApi")
             Class<?> serviceFetcherClass = Class.forName("android.app.SystemServiceRegistry$ServiceFetcher");
             XLog.d("ServiceFetcherProxy serviceFetcherClass: %s", serviceFetcherClass);
@@ -51,7 +52,7 @@ class ServiceFetcherProxy {
                     }
                     Object res = method.invoke(originalFetcher, args);
                     if (DEBUG) {
-                        XLog.d("ServiceFetcherProxy invoke: %s %s %s", method.getName(), Arrays.toString(args), res);
+                        HookLog.d(() -> "ServiceFetcherProxy invoke: " + method.getName() + " " + Arrays.toString(args) + " " + res);
                     }
                     return res;
                 }
@@ -11,7 +11,9 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.Arrays;
 
-import github.tornaco.android.thanos.core.app.ThanosManagerNative;
+import github.tornaco.android.thanos.core.util.HookLog;
+import github.tornaco.android.thanox.magisk.bridge.proxy.LazyLocalInterface;
+import github.tornaco.android.thanox.magisk.bridge.proxy.MethodDispatchTable;
 import github.tornaco.android.thanox.magisk.bridge.proxy.ProxyProvider;
 import util.ExceptionTransformedInvocationHandler;
 import util.os.BinderProxy;
@@ -19,6 +21,17 @@ import util.os.BinderProxy;
 public class ActivityManagerProxyProvider implements ProxyProvider, ExceptionTransformedInvocationHandler {
     private static final boolean DEBUG_AMS = false;
 
+    private static final int BIND_ISOLATED_SERVICE = 1;
+    private static final int START_SERVICE = 2;
+    private static final int GET_CONTENT_PROVIDER = 3;
+
+    private static final MethodDispatchTable DISPATCH = new MethodDispatchTable()
+            .register("bindIsolatedService", BIND_ISOLATED_SERVICE)
+            .register("startService", START_SERVICE)
+            .register("getContentProvider", GET_CONTENT_PROVIDER);
+
+    private final ProviderVerdictCache providerVerdictCache = new ProviderVerdictCache();
+
     @Override
     public IBinder provide(IBinder legacyBinder) {
         return proxyActivityManager(legacyBinder);
@@ -30,32 +43,35 @@ public class ActivityManagerProxyProvider implements ProxyProvider, ExceptionTra
     }
 
     private IBinder proxyActivityManager(IBinder original) {
-        return new BinderProxy(original, new BinderProxy.InvocationHandler() {
+        return new BinderProxy(original, new LazyLocalInterface(IActivityManager.class.getName()) {
             @Override
-            public IInterface onQueryLocalInterface(String descriptor, IInterface iInterface) {
-                if (IActivityManager.class.getName().equals(descriptor)) {
-                    IActivityManager am = IActivityManager.Stub.asInterface(original);
-                    return (IInterface) Proxy.newProxyInstance(ClassLoader.getSystemClassLoader(),
-                            new Class[]{IActivityManager.class},
-                            (instance, method, args) -> {
-                                if (DEBUG_AMS) {
-                                    XLog.d("IActivityManager %s %s", method.getName(), Arrays.toString(args));
-                                }
+            protected IInterface create() {
+                IActivityManager am = IActivityManager.Stub.asInterface(original);
+                return (IInterface) Proxy.newProxyInstance(ClassLoader.getSystemClassLoader(),
+                        new Class[]{IActivityManager.class},
+                        (instance, method, args) -> {
+                            int id = DISPATCH.idOf(method);
+                            if (id == MethodDispatchTable.PASS_THROUGH) {
+                                return tryInvoke(am, method, args);
+                            }
+
+                            if (DEBUG_AMS) {
+                                HookLog.d(() -> "IActivityManager " + method.getName() + " " + Arrays.toString(args));
+                            }
 
-                                if ("bindIsolatedService".equals(method.getName())) {
+                            switch (id) {
+                                case BIND_ISOLATED_SERVICE: {
                                     // FIX Service binding error.
                                     int res = (int) tryInvoke(am, method, args);
-                                    XLog.d("IActivityManager bindIsolatedService, res=" + res);
+                                    XLog.d("IActivityManager bindIsolatedService, res=%s", res);
                                     if (res < 0) {
-                                        XLog.d("IActivityManager bindIsolatedService result < 0, we will fix it to 0, "
+                                        HookLog.d(() -> "IActivityManager bindIsolatedService result < 0, we will fix it to 0, "
                                                 + Arrays.toString(args));
                                         res = 0;
                                     }
                                     return res;
-                                    // BREAK!!!
                                 }
-
-                                if ("startService".equals(method.getName())) {
+                                case START_SERVICE: {
                                     // FIX Service start error.
                                     ComponentName componentName =
                                             (ComponentName) tryInvoke(am, method, args);
@@ -65,30 +81,27 @@ public class ActivityManagerProxyProvider implements ProxyProvider, ExceptionTra
                                     if (componentName.getPackageName().equals("!")
                                             || componentName.getPackageName().equals("?")
                                             || componentName.getPackageName().equals("!!")) {
-                                        XLog.d("IActivityManager Try to fix startServiceLocked ERROR throw by system!!!"
+                                        HookLog.d(() -> "IActivityManager Try to fix startServiceLocked ERROR throw by system!!!"
                                                 + Arrays.toString(args));
                                         return null;
                                     }
                                     return componentName;
-                                    // BREAK!!!
                                 }
-
                                 // ContentProviderHolder getContentProvider(IApplicationThread caller, String callingPackage,
                                 // String name, int userId, boolean stable);
-                                if ("getContentProvider".equals(method.getName())) {
+                                case GET_CONTENT_PROVIDER:
                                     return handleGetProvider(am, method, args);
-                                }
-
-                                return tryInvoke(am, method, args);
-                            });
-                }
-                return iInterface;
+                                default:
+                                    return tryInvoke(am, method, args);
+                            }
+                        });
             }
         });
     }
 
     private Object handleGetProvider(IActivityManager am, Method method, Object[] args) throws Throwable {
-        if (!ThanosManagerNative.isServiceInstalled()) {
+        github.tornaco.android.thanos.core.app.IActivityManager thanosAm = providerVerdictCache.getService();
+        if (thanosAm == null) {
             XLog.d("IActivityTaskManager, handleGetProvider, Thanox not installed...");
             return tryInvoke(am, method, args);
         }
@@ -96,10 +109,7 @@ public class ActivityManagerProxyProvider implements ProxyProvider, ExceptionTra
         String name = (String) args[2];
         int userId = (int) args[args.length - 2];
         XLog.d("IActivityManager getContentProvider: %s %s %s", callingPackage, name, userId);
-        boolean res =
-                ThanosManagerNative.getDefault()
-                        .getActivityManager()
-                        .checkGetContentProvider(callingPackage, name, userId);
+        boolean res = providerVerdictCache.checkGetContentProvider(thanosAm, callingPackage, name, userId);
         if (!res) {
             return null;
         }
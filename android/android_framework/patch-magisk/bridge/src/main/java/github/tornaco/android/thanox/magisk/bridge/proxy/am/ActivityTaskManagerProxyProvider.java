@@ -16,15 +16,20 @@ import com.elvishew.xlog.XLog;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
+import github.tornaco.android.thanos.core.app.RecentTaskExcludeVerdicts;
 import github.tornaco.android.thanos.core.app.ThanosManagerNative;
 import github.tornaco.android.thanos.core.pm.Pkg;
+import github.tornaco.android.thanos.core.util.HookLog;
 import github.tornaco.android.thanos.core.util.PkgUtils;
 import github.tornaco.android.thanox.magisk.bridge.proxy.Args;
+import github.tornaco.android.thanox.magisk.bridge.proxy.LazyLocalInterface;
+import github.tornaco.android.thanox.magisk.bridge.proxy.MethodDispatchTable;
 import github.tornaco.android.thanox.magisk.bridge.proxy.ProxyProvider;
 import util.ExceptionTransformedInvocationHandler;
 import util.os.BinderProxy;
@@ -32,6 +37,13 @@ import util.os.BinderProxy;
 public class ActivityTaskManagerProxyProvider implements ProxyProvider, ExceptionTransformedInvocationHandler {
     private static final boolean DEBUG = false;
 
+    private static final int START_ACTIVITY = 1;
+    private static final int GET_RECENT_TASKS = 2;
+
+    private static final MethodDispatchTable DISPATCH = new MethodDispatchTable()
+            .register("startActivity", START_ACTIVITY)
+            .register("getRecentTasks", GET_RECENT_TASKS);
+
     @Override
     public IBinder provide(IBinder legacyBinder) {
         return proxyActivityTaskManager(legacyBinder);
@@ -43,37 +55,43 @@ public class ActivityTaskManagerProxyProvider implements ProxyProvider, Exceptio
     }
 
     private IBinder proxyActivityTaskManager(IBinder original) {
-        return new BinderProxy(original, new BinderProxy.InvocationHandler() {
+        return new BinderProxy(original, new LazyLocalInterface(IActivityTaskManager.class.getName()) {
             @Override
-            public IInterface onQueryLocalInterface(String descriptor, IInterface iInterface) {
-                if (IActivityTaskManager.class.getName().equals(descriptor)) {
-                    IActivityTaskManager am = IActivityTaskManager.Stub.asInterface(original);
-                    return (IInterface) Proxy.newProxyInstance(ClassLoader.getSystemClassLoader(),
-                            new Class[]{IActivityTaskManager.class},
-                            (instance, method, args) -> {
-                                XLog.d("IActivityTaskManager %s %s", method.getName(), Arrays.toString(args));
-                                // Early return...
-                                if (!ThanosManagerNative.isServiceInstalled()) {
-                                    XLog.d("IActivityTaskManager, Thanox not installed...");
-                                    return tryInvoke(am, method, args);
-                                }
+            protected IInterface create() {
+                IActivityTaskManager am = IActivityTaskManager.Stub.asInterface(original);
+                return (IInterface) Proxy.newProxyInstance(ClassLoader.getSystemClassLoader(),
+                        new Class[]{IActivityTaskManager.class},
+                        (instance, method, args) -> {
+                            int id = DISPATCH.idOf(method);
+                            if (id == MethodDispatchTable.PASS_THROUGH) {
+                                return tryInvoke(am, method, args);
+                            }
 
-                                try {
-                                    if ("startActivity".equals(method.getName())) {
+                            HookLog.d(() -> "IActivityTaskManager " + method.getName() + " " + Arrays.toString(args));
+                            // Early return...
+                            if (!ThanosManagerNative.isServiceInstalled()) {
+                                XLog.d("IActivityTaskManager, Thanox not installed...");
+                                return tryInvoke(am, method, args);
+                            }
+
+                            try {
+                                switch (id) {
+                                    case START_ACTIVITY:
                                         if (!handleStartActivity(args)) {
                                             return ActivityManager.START_SUCCESS;
                                         }
-                                    } else if ("getRecentTasks".equals(method.getName())) {
+                                        break;
+                                    case GET_RECENT_TASKS:
                                         return handleGetRecentTask(am, method, args);
-                                    }
-                                } catch (Throwable e) {
-                                    XLog.d("Error handle IActivityTaskManager" + Log.getStackTraceString(e));
+                                    default:
+                                        break;
                                 }
+                            } catch (Throwable e) {
+                                HookLog.d(() -> "Error handle IActivityTaskManager" + Log.getStackTraceString(e));
+                            }
 
-                                return tryInvoke(am, method, args);
-                            });
-                }
-                return iInterface;
+                            return tryInvoke(am, method, args);
+                        });
             }
         });
     }
@@ -85,7 +103,7 @@ public class ActivityTaskManagerProxyProvider implements ProxyProvider, Exceptio
     //            int flags, in ProfilerInfo profilerInfo, in Bundle options);
     //    int startActivities(in IApplicationThread caller, in String callingPackage,
     private boolean handleStartActivity(Object[] args) throws android.os.RemoteException {
-        if (DEBUG) XLog.v("handleStartActivity, args = " + Arrays.toString(args));
+        if (DEBUG) HookLog.v(() -> "handleStartActivity, args = " + Arrays.toString(args));
         String callingPackage = (String) args[1];
         // We'd better dynamic look up.
         // Android 29 -> 30 arg index has been changed.
@@ -101,7 +119,7 @@ public class ActivityTaskManagerProxyProvider implements ProxyProvider, Exceptio
                     args,
                     "ActivityTaskManagerProxyProvider#handleStartActivity-resultToIndex",
                     -1);
-            if (DEBUG) XLog.v("handleStartActivity, resultToIndex = " + resultToIndex);
+            if (DEBUG) XLog.v("handleStartActivity, resultToIndex = %s", resultToIndex);
             IBinder resultTo = resultToIndex > 0 ? (IBinder) args[resultToIndex] : null;
 
             int userId = UserHandle.getCallingUserId();
@@ -130,16 +148,63 @@ public class ActivityTaskManagerProxyProvider implements ProxyProvider, Exceptio
         ParceledListSlice<ActivityManager.RecentTaskInfo> recentTasks
                 = (ParceledListSlice<ActivityManager.RecentTaskInfo>) tryInvoke(am, method, args);
         List<ActivityManager.RecentTaskInfo> taskInfoList = recentTasks.getList();
-        XLog.d("getRecentTasks: %s", Arrays.toString(taskInfoList.toArray()));
-        taskInfoList = taskInfoList.stream().filter((Predicate<TaskInfo>) taskInfo -> {
-            try {
-                return !shouldHideFromRecent(taskInfo);
-            } catch (RemoteException e) {
-                XLog.d("shouldHideFromRecent error");
-                return true;
+        XLog.d("getRecentTasks: %s", taskInfoList);
+        if (taskInfoList.isEmpty()) {
+            return recentTasks;
+        }
+
+        List<Pkg> pkgs = new ArrayList<>(taskInfoList.size());
+        for (TaskInfo taskInfo : taskInfoList) {
+            pkgs.add(pkgOf(taskInfo));
+        }
+        RecentTaskExcludeVerdicts verdicts = null;
+        try {
+            verdicts = ThanosManagerNative.getDefault()
+                    .getActivityManager()
+                    .getRecentTaskExcludeSettingForPackages(pkgs);
+        } catch (RemoteException e) {
+            XLog.d("getRecentTaskExcludeSettingForPackages error");
+        }
+        // Old server does not answer the batch query.
+        if (verdicts == null || verdicts.settings == null || verdicts.settings.length != pkgs.size()) {
+            taskInfoList = taskInfoList.stream().filter((Predicate<TaskInfo>) taskInfo -> {
+                try {
+                    return !shouldHideFromRecent(taskInfo);
+                } catch (RemoteException e) {
+                    XLog.d("shouldHideFromRecent error");
+                    return true;
+                }
+            }).collect(Collectors.toList());
+            return new ParceledListSlice<>(taskInfoList);
+        }
+
+        List<ActivityManager.RecentTaskInfo> visibleTaskInfoList = new ArrayList<>(taskInfoList.size());
+        for (int i = 0; i < taskInfoList.size(); i++) {
+            Pkg targetPkg = pkgs.get(i);
+            boolean hide = targetPkg != null
+                    && !targetPkg.equals(verdicts.frontPkg)
+                    && verdicts.settings[i] == github.tornaco.android.thanos.core.app.ActivityManager.ExcludeRecentSetting.EXCLUDE;
+            if (!hide) {
+                visibleTaskInfoList.add(taskInfoList.get(i));
             }
-        }).collect(Collectors.toList());
-        return new ParceledListSlice<>(taskInfoList);
+        }
+        return new ParceledListSlice<>(visibleTaskInfoList);
+    }
+
+    /**
+     * @return Null if the package of this task is unknown.
+     */
+    @SuppressLint("NewApi" /* We will only support P above */)
+    private static Pkg pkgOf(TaskInfo taskInfo) {
+        Intent intent = taskInfo.baseIntent;
+        if (intent == null) {
+            return null;
+        }
+        String pkgName = PkgUtils.packageNameOf(intent);
+        if (pkgName == null) {
+            return null;
+        }
+        return new Pkg(pkgName, taskInfo.userId);
     }
 
     @SuppressLint("NewApi" /* We will only support P above */)
@@ -0,0 +1,105 @@
+package github.tornaco.android.thanox.magisk.bridge.proxy.am;
+
+import android.os.RemoteException;
+
+import github.tornaco.android.thanos.core.IThanos;
+import github.tornaco.android.thanos.core.app.ThanosManagerNative;
+import github.tornaco.android.thanos.core.secure.ops.IAppOpsChangeListener;
+import github.tornaco.android.thanos.core.secure.ops.IAppOpsService;
+import github.tornaco.android.thanos.core.util.GenerationCache;
+import github.tornaco.android.thanos.core.util.GenerationCache.Generation;
+import github.tornaco.android.thanos.core.util.GenerationCache.Key;
+
+/**
+ * Process local cache of thanox app ops decisions, so a checkOperation/noteOperation of the app
+ * does not cost three binder calls into thanox every time.
+ * <p>
+ * Cached are the ops service, the global ops enabled flag and the mode of each (code, uid, pkg).
+ * Server bumps a generation whenever a mode, ops enabled or op remind setting changes, and pushes
+ * it to {@link IAppOpsChangeListener}, all decisions of an older generation are dropped then.
+ * If the server does not support the listener, nothing but the service is cached.
+ * <p>
+ * Op with remind enabled is never cached, server should see every check of it to remind.
+ */
+final class AppOpsDecisionCache {
+    // Drop all when exceeded, an app only checks a few ops in practice.
+    private static final int MAX_ENTRIES = 1024;
+    // Mode of this key should always be asked from server.
+    private static final int NOT_CACHEABLE = Integer.MIN_VALUE;
+    // Holds the ops enabled flag, 1 or 0, no op has a negative code.
+    private static final Key OPS_ENABLED = Key.of(null, null, -1, -1);
+
+    private final Object lock = new Object();
+    private final GenerationCache<Key, Integer> cache = new GenerationCache<>("AppOpsDecisionCache", MAX_ENTRIES);
+
+    private volatile IAppOpsService service;
+
+    private final IAppOpsChangeListener listener = new IAppOpsChangeListener.Stub() {
+        @Override
+        public void onOpsChanged(long generation) {
+            cache.invalidate(generation);
+        }
+    };
+
+    /**
+     * @return Null if thanox is not installed.
+     */
+    IAppOpsService getService() throws RemoteException {
+        IAppOpsService ops = service;
+        if (ops != null) {
+            return ops;
+        }
+        synchronized (lock) {
+            if (service != null) {
+                return service;
+            }
+            IThanos thanos = ThanosManagerNative.getDefault();
+            if (thanos == null) {
+                return null;
+            }
+            IAppOpsService newService = thanos.getAppOpsService();
+            if (newService == null) {
+                return null;
+            }
+            cache.register(() -> newService.registerOpsChangeListener(listener));
+            service = newService;
+            return newService;
+        }
+    }
+
+    boolean isOpsEnabled(IAppOpsService ops) throws RemoteException {
+        Generation<Key, Integer> g = cache.current();
+        if (g == null) {
+            return ops.isOpsEnabled();
+        }
+        Integer cached = g.get(OPS_ENABLED);
+        if (cached != null) {
+            return cached != 0;
+        }
+        boolean enabled = ops.isOpsEnabled();
+        g.put(OPS_ENABLED, enabled ? 1 : 0);
+        return enabled;
+    }
+
+    int checkOperation(IAppOpsService ops, int code, int uid, String pkg) throws RemoteException {
+        Generation<Key, Integer> g = cache.current();
+        if (g == null) {
+            return ops.checkOperation(code, uid, pkg);
+        }
+        Key key = Key.of(pkg, null, code, uid);
+        Integer cached = g.get(key);
+        if (cached != null && cached != NOT_CACHEABLE) {
+            return cached;
+        }
+        if (cached != null) {
+            // Remind enabled, no need to ask for the remind setting again.
+            return ops.checkOperation(code, uid, pkg);
+        }
+        // Server with the listener answers the mode and remind setting in one call.
+        int[] modeAndRemind = ops.checkOperationAndRemind(code, uid, pkg);
+        int mode = modeAndRemind[0];
+        boolean remind = modeAndRemind[1] != 0;
+        g.put(key, remind ? NOT_CACHEABLE : mode);
+        return mode;
+    }
+}
@@ -1,25 +1,43 @@
 package github.tornaco.android.thanox.magisk.bridge.proxy.am;
 
 import android.app.AppOpsManager;
+import android.app.SyncNotedAppOp;
+import android.os.Build;
 import android.os.IBinder;
 import android.os.IInterface;
 
 import com.android.internal.app.IAppOpsService;
-import com.elvishew.xlog.XLog;
 
+import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.Arrays;
 
-import github.tornaco.android.thanos.core.IThanos;
-import github.tornaco.android.thanos.core.app.ThanosManagerNative;
+import github.tornaco.android.thanos.core.util.HookLog;
 import github.tornaco.android.thanos.core.util.PkgUtils;
+import github.tornaco.android.thanox.magisk.bridge.proxy.MethodDispatchTable;
 import github.tornaco.android.thanox.magisk.bridge.proxy.ProxyProvider;
 import util.ExceptionTransformedInvocationHandler;
 import util.os.BinderProxy;
 
+/**
+ * Not registered in {@link github.tornaco.android.thanox.magisk.bridge.proxy.Proxies}, app ops of
+ * app processes are not hooked.
+ */
 public class AppOpsManagerProxyProvider implements ProxyProvider, ExceptionTransformedInvocationHandler {
     private static final boolean DEBUG_OPS = false;
 
+    private static final int CHECK_OR_NOTE_OPERATION = 1;
+    private static final int START_OPERATION = 2;
+    private static final int FINISH_OPERATION = 3;
+
+    private static final MethodDispatchTable DISPATCH = new MethodDispatchTable()
+            .register("checkOperation", CHECK_OR_NOTE_OPERATION)
+            .register("noteOperation", CHECK_OR_NOTE_OPERATION)
+            .register("startOperation", START_OPERATION)
+            .register("finishOperation", FINISH_OPERATION);
+
+    private final AppOpsDecisionCache decisionCache = new AppOpsDecisionCache();
+
     @Override
     public IBinder provide(IBinder legacyBinder) {
         return proxyAppOpsManager(legacyBinder);
@@ -39,38 +57,44 @@ public class AppOpsManagerProxyProvider implements ProxyProvider, ExceptionTrans
                     return (IInterface) Proxy.newProxyInstance(ClassLoader.getSystemClassLoader(),
                             new Class[]{IAppOpsService.class},
                             (instance, method, args) -> {
+                                int id = DISPATCH.idOf(method);
+                                if (id == MethodDispatchTable.PASS_THROUGH) {
+                                    return tryInvoke(am, method, args);
+                                }
+
                                 if (DEBUG_OPS) {
-                                    XLog.d("IAppOpsService %s %s", method.getName(), Arrays.toString(args));
+                                    HookLog.d(() -> "IAppOpsService " + method.getName() + " " + Arrays.toString(args));
                                 }
 
-                                IThanos thanos = ThanosManagerNative.getDefault();
-                                if (thanos == null) {
+                                github.tornaco.android.thanos.core.secure.ops.IAppOpsService ops = decisionCache.getService();
+                                if (ops == null) {
                                     return tryInvoke(am, method, args);
                                 }
 
-                                if ("checkOperation".equals(method.getName()) || "noteOperation".equals(method.getName())) {
+                                if (id == CHECK_OR_NOTE_OPERATION) {
                                     int uid = (int) args[1];
                                     if (PkgUtils.isSystemOrPhoneOrShell(uid)) {
                                         return tryInvoke(am, method, args);
                                     }
-                                    github.tornaco.android.thanos.core.secure.ops.IAppOpsService ops = ThanosManagerNative.getDefault()
-                                            .getAppOpsService();
-                                    boolean opsEnabled = ops.isOpsEnabled();
+                                    boolean opsEnabled = decisionCache.isOpsEnabled(ops);
                                     if (!opsEnabled) {
                                         return tryInvoke(am, method, args);
                                     }
                                     int code = (int) args[0];
                                     String pkgName = (String) args[2];
-                                    int mode = ops.checkOperation(code, uid, pkgName);
+                                    int mode = decisionCache.checkOperation(ops, code, uid, pkgName);
                                     if (mode == AppOpsManager.MODE_IGNORED) {
-                                        return AppOpsManager.MODE_IGNORED;
+                                        // String attributionTag of noteOperation, absent for checkOperation.
+                                        Object ignored = ignoredResult(method, code, pkgName,
+                                                args.length > 3 && args[3] instanceof String ? (String) args[3] : null);
+                                        if (ignored != null) {
+                                            return ignored;
+                                        }
                                     }
                                 }
 
-                                if (("startOperation".equals(method.getName()))) {
-                                    github.tornaco.android.thanos.core.secure.ops.IAppOpsService ops = ThanosManagerNative.getDefault()
-                                            .getAppOpsService();
-                                    boolean opsEnabled = ops.isOpsEnabled();
+                                if (id == START_OPERATION) {
+                                    boolean opsEnabled = decisionCache.isOpsEnabled(ops);
                                     if (!opsEnabled) {
                                         // Report.
                                         ops.onStartOp(
@@ -89,9 +113,13 @@ public class AppOpsManagerProxyProvider implements ProxyProvider, ExceptionTrans
                                     }
 
                                     String pkgName = (String) args[3];
-                                    int mode = ops.checkOperation(code, uid, pkgName);
-                                    if (mode == AppOpsManager.MODE_IGNORED) {
-                                        return AppOpsManager.MODE_IGNORED;
+                                    int mode = decisionCache.checkOperation(ops, code, uid, pkgName);
+                                    Object ignored = mode == AppOpsManager.MODE_IGNORED
+                                            ? ignoredResult(method, code, pkgName,
+                                            args.length > 4 && args[4] instanceof String ? (String) args[4] : null)
+                                            : null;
+                                    if (ignored != null) {
+                                        return ignored;
                                     } else {
                                         // Report.
                                         ops.onStartOp(
@@ -102,9 +130,7 @@ public class AppOpsManagerProxyProvider implements ProxyProvider, ExceptionTrans
                                     }
                                 }
 
-                                if (("finishOperation".equals(method.getName()))) {
-                                    github.tornaco.android.thanos.core.secure.ops.IAppOpsService ops = ThanosManagerNative.getDefault()
-                                            .getAppOpsService();
+                                if (id == FINISH_OPERATION) {
                                     // Report.
                                     ops.onFinishOp(
                                             (IBinder) args[0],
@@ -120,4 +146,21 @@ public class AppOpsManagerProxyProvider implements ProxyProvider, ExceptionTrans
             }
         });
     }
+
+    /**
+     * noteOperation and startOperation return SyncNotedAppOp since S, an int before.
+     *
+     * @return MODE_IGNORED typed as the method returns it, null if the type is unknown,
+     * the call should go to the original then.
+     */
+    private static Object ignoredResult(Method method, int code, String pkgName, String attributionTag) {
+        Class<?> type = method.getReturnType();
+        if (type == int.class) {
+            return AppOpsManager.MODE_IGNORED;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S && type == SyncNotedAppOp.class) {
+            return new SyncNotedAppOp(AppOpsManager.MODE_IGNORED, code, attributionTag, pkgName);
+        }
+        return null;
+    }
 }
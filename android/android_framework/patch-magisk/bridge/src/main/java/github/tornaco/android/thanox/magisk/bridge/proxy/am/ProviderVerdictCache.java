@@ -0,0 +1,106 @@
+package github.tornaco.android.thanox.magisk.bridge.proxy.am;
+
+import android.os.RemoteException;
+import android.os.SystemClock;
+
+import com.elvishew.xlog.XLog;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import github.tornaco.android.thanos.core.IThanos;
+import github.tornaco.android.thanos.core.app.IActivityManager;
+import github.tornaco.android.thanos.core.app.IProviderVerdictChangeListener;
+import github.tornaco.android.thanos.core.app.ThanosManagerNative;
+import github.tornaco.android.thanos.core.util.GenerationCache;
+import github.tornaco.android.thanos.core.util.GenerationCache.Generation;
+import github.tornaco.android.thanos.core.util.GenerationCache.Key;
+
+/**
+ * Process local cache of thanox checkGetContentProvider answers, keyed by
+ * (calling package, authority, userId), so an app asking for the settings or media provider
+ * again and again does not ask thanox each time.
+ * <p>
+ * Server bumps a generation whenever an answer may change, and pushes it to
+ * {@link IProviderVerdictChangeListener}, all answers of an older generation are dropped then.
+ * If the server does not support the listener, every lookup asks server as before.
+ * <p>
+ * Hit rate and time saved are logged every {@link #STATS_LOG_INTERVAL} lookups.
+ */
+final class ProviderVerdictCache {
+    // Drop all when exceeded, an app only touches a few authorities in practice.
+    private static final int MAX_ENTRIES = 512;
+    private static final long STATS_LOG_INTERVAL = 1000;
+
+    private final Object lock = new Object();
+    private final GenerationCache<Key, Boolean> cache = new GenerationCache<>("ProviderVerdictCache", MAX_ENTRIES);
+
+    private volatile IActivityManager service;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong missNanos = new AtomicLong();
+
+    private final IProviderVerdictChangeListener listener = new IProviderVerdictChangeListener.Stub() {
+        @Override
+        public void onProviderVerdictChanged(long generation) {
+            cache.invalidate(generation);
+        }
+    };
+
+    /**
+     * @return Null if thanox is not installed.
+     */
+    IActivityManager getService() throws RemoteException {
+        IActivityManager am = service;
+        if (am != null) {
+            return am;
+        }
+        synchronized (lock) {
+            if (service != null) {
+                return service;
+            }
+            IThanos thanos = ThanosManagerNative.getDefault();
+            if (thanos == null) {
+                return null;
+            }
+            IActivityManager newService = thanos.getActivityManager();
+            if (newService == null) {
+                return null;
+            }
+            cache.register(() -> newService.registerProviderVerdictChangeListener(listener));
+            service = newService;
+            return newService;
+        }
+    }
+
+    boolean checkGetContentProvider(IActivityManager am, String callingPackage, String authority, int userId)
+            throws RemoteException {
+        Generation<Key, Boolean> g = cache.current();
+        if (g == null) {
+            return am.checkGetContentProvider(callingPackage, authority, userId);
+        }
+        Key key = Key.of(callingPackage, authority, userId, 0);
+        Boolean cached = g.get(key);
+        if (cached != null) {
+            onLookup(true, 0);
+            return cached;
+        }
+        long startNanos = SystemClock.elapsedRealtimeNanos();
+        boolean verdict = am.checkGetContentProvider(callingPackage, authority, userId);
+        onLookup(false, SystemClock.elapsedRealtimeNanos() - startNanos);
+        g.put(key, verdict);
+        return verdict;
+    }
+
+    private void onLookup(boolean hit, long missCostNanos) {
+        long hits = hit ? hitCount.incrementAndGet() : hitCount.get();
+        long misses = hit ? missCount.get() : missCount.incrementAndGet();
+        long totalMissNanos = hit ? missNanos.get() : missNanos.addAndGet(missCostNanos);
+        if ((hits + misses) % STATS_LOG_INTERVAL == 0) {
+            // Each hit saves a transaction, which costs about the average miss.
+            long savedMillis = misses == 0 ? 0 : hits * (totalMissNanos / misses) / 1_000_000;
+            XLog.i("ProviderVerdictCache, hit %s/%s (%s%%), saved about %sms",
+                    hits, hits + misses, hits * 100 / (hits + misses), savedMillis);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package github.tornaco.android.thanox.magisk.bridge.proxy.content;
+
+import android.content.ClipData;
+import android.os.Binder;
+import android.util.Log;
+
+import com.elvishew.xlog.XLog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import github.tornaco.android.thanos.core.IThanos;
+import github.tornaco.android.thanos.core.app.ThanosManagerNative;
+import github.tornaco.android.thanos.core.pm.Pkg;
+import github.tornaco.android.thanos.core.secure.ops.IAppOpsService;
+import github.tornaco.android.thanox.magisk.bridge.proxy.ReportBatcher;
+
+/**
+ * Report clipboard access of the app to thanox off the app thread.
+ * <p>
+ * A burst of accesses is sent as one {@link IAppOpsService#onStartOps}, with a record for every
+ * access, repeated reads of the same caller are queued as one access with a count. An old server
+ * without it replies false, then each access is sent through onStartOp as before. Every clip set
+ * is sent to the notification manager, in order.
+ * <p>
+ * An access that does not fit in the queue is sent on the app thread, the server must not miss it.
+ */
+final class ClipboardAccessReporter extends ReportBatcher<ClipboardAccessReporter.Access> {
+    private static final long REPORT_DELAY_MILLIS = 200;
+    private static final int MAX_PENDING_REPORTS = 256;
+
+    static final class Access {
+        final int code;
+        final int uid;
+        final String packageName;
+        // Set for write only.
+        final ClipData clip;
+        final Pkg clipCaller;
+        // Guarded by the batcher.
+        int count = 1;
+
+        Access(int code, int uid, String packageName) {
+            this(code, uid, packageName, null, null);
+        }
+
+        Access(int code, int uid, String packageName, ClipData clip, Pkg clipCaller) {
+            this.code = code;
+            this.uid = uid;
+            this.packageName = packageName;
+            this.clip = clip;
+            this.clipCaller = clipCaller;
+        }
+    }
+
+    // False once the server replies it has no onStartOps.
+    private volatile boolean batchSupported = true;
+
+    ClipboardAccessReporter() {
+        super("ClipboardAccess", REPORT_DELAY_MILLIS, MAX_PENDING_REPORTS);
+    }
+
+    @Override
+    protected boolean merge(Access queued, Access report) {
+        if (queued.clip == null && report.clip == null && queued.code == report.code && isSameCaller(queued, report)) {
+            queued.count++;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected void onQueueFull(Access report) {
+        try {
+            onReport(Collections.singletonList(report));
+        } catch (Throwable e) {
+            XLog.w("ClipboardAccessReporter, fail report: " + Log.getStackTraceString(e));
+        }
+    }
+
+    @Override
+    protected void onReport(List<Access> batch) throws Exception {
+        IThanos thanos = ThanosManagerNative.getDefault();
+        if (thanos == null) {
+            return;
+        }
+        List<Access> run = new ArrayList<>();
+        for (Access access : batch) {
+            // One call for each run of the same caller, in most cases the whole batch.
+            if (!run.isEmpty() && !isSameCaller(run.get(0), access)) {
+                reportRun(thanos, run);
+                run.clear();
+            }
+            run.add(access);
+        }
+        reportRun(thanos, run);
+    }
+
+    private static boolean isSameCaller(Access a, Access b) {
+        return a.uid == b.uid && (a.packageName == null ? b.packageName == null : a.packageName.equals(b.packageName));
+    }
+
+    private void reportRun(IThanos thanos, List<Access> run) throws Exception {
+        if (run.isEmpty()) {
+            return;
+        }
+        int size = 0;
+        for (Access access : run) {
+            size += access.count;
+        }
+        int[] codes = new int[size];
+        int i = 0;
+        for (Access access : run) {
+            for (int n = 0; n < access.count; n++) {
+                codes[i++] = access.code;
+            }
+        }
+        Access first = run.get(0);
+        IAppOpsService ops = thanos.getAppOpsService();
+        if (!batchSupported || !ops.onStartOps(first.uid, first.packageName, codes)) {
+            // Old server replies nothing, read as false.
+            batchSupported = false;
+            for (int code : codes) {
+                ops.onStartOp(new Binder(), code, first.uid, first.packageName);
+            }
+        }
+        for (Access access : run) {
+            if (access.clip != null) {
+                thanos.getNotificationManager().onSetPrimaryClip(access.clip, access.clipCaller);
+            }
+        }
+    }
+}
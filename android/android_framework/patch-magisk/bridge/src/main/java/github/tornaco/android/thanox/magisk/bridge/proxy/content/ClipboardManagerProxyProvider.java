@@ -12,13 +12,14 @@ import android.os.ServiceManager;
 
 import com.elvishew.xlog.XLog;
 
-import github.tornaco.android.thanos.core.app.ThanosManager;
 import github.tornaco.android.thanos.core.pm.Pkg;
 import github.tornaco.android.thanos.core.secure.ops.AppOpsManager;
-import util.Consumer;
 import util.XposedHelpers;
 
 public class ClipboardManagerProxyProvider {
+    // Shared by all proxies of this process.
+    private static final ClipboardAccessReporter ACCESS_REPORTER = new ClipboardAccessReporter();
+
     public static ClipboardManager provide(Context context) {
         try {
             return new ClipboardManagerProxy(context);
@@ -44,31 +45,22 @@ public class ClipboardManagerProxyProvider {
         @Override
         public ClipData getPrimaryClip() {
             XLog.d("ClipboardManagerProxy getPrimaryClip");
-            ThanosManager.from(context).ifServiceInstalled(new Consumer<ThanosManager>() {
-                @Override
-                public void accept(ThanosManager thanosManager) {
-                    thanosManager.getAppOpsManager()
-                            .onStartOp(new Binder(),
-                                    AppOpsManager.OP_READ_CLIPBOARD,
-                                    Binder.getCallingUid(),
-                                    context.getPackageName());
-                }
-            });
+            ACCESS_REPORTER.report(new ClipboardAccessReporter.Access(
+                    AppOpsManager.OP_READ_CLIPBOARD,
+                    Binder.getCallingUid(),
+                    context.getPackageName()));
             return super.getPrimaryClip();
         }
 
         @Override
         public void setPrimaryClip(ClipData clip) {
             XLog.d("ClipboardManagerProxy setPrimaryClip");
-            ThanosManager.from(context).ifServiceInstalled(thanosManager -> {
-                thanosManager.getAppOpsManager()
-                        .onStartOp(new Binder(),
-                                AppOpsManager.OP_WRITE_CLIPBOARD,
-                                Binder.getCallingUid(),
-                                context.getPackageName());
-
-                thanosManager.getNotificationManager().onSetPrimaryClip(clip, Pkg.currentUserPkg(context.getPackageName()));
-            });
+            ACCESS_REPORTER.report(new ClipboardAccessReporter.Access(
+                    AppOpsManager.OP_WRITE_CLIPBOARD,
+                    Binder.getCallingUid(),
+                    context.getPackageName(),
+                    clip,
+                    Pkg.currentUserPkg(context.getPackageName())));
             super.setPrimaryClip(clip);
         }
 
@@ -96,7 +88,7 @@ public class ClipboardManagerProxyProvider {
 
         public ClipData getStashPrimaryClip() {
             ClipData res = (ClipData) XposedHelpers.callMethod(stockManager, "getStashPrimaryClip");
-            XLog.d("getStashPrimaryClip: " + res);
+            XLog.d("getStashPrimaryClip: %s", res);
             return res;
         }
 
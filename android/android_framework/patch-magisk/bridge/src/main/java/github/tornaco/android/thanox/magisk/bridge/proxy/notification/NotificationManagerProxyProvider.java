@@ -12,6 +12,8 @@ import java.util.Arrays;
 
 import github.tornaco.android.thanos.core.app.ThanosManagerNative;
 import github.tornaco.android.thanos.core.n.NotificationRecord;
+import github.tornaco.android.thanos.core.util.HookLog;
+import github.tornaco.android.thanox.magisk.bridge.proxy.LazyLocalInterface;
 import github.tornaco.android.thanox.magisk.bridge.proxy.ProxyProvider;
 import util.ExceptionTransformedInvocationHandler;
 import util.os.BinderProxy;
@@ -28,22 +30,19 @@ public class NotificationManagerProxyProvider implements ProxyProvider, Exceptio
     }
 
     private IBinder proxyNotificationManager(IBinder original) {
-        return new BinderProxy(original, new BinderProxy.InvocationHandler() {
+        return new BinderProxy(original, new LazyLocalInterface(INotificationManager.class.getName()) {
             @Override
-            public IInterface onQueryLocalInterface(String descriptor, IInterface iInterface) {
-                if (INotificationManager.class.getName().equals(descriptor)) {
-                    INotificationManager am = INotificationManager.Stub.asInterface(original);
-                    return (IInterface) Proxy.newProxyInstance(ClassLoader.getSystemClassLoader(),
-                            new Class[]{INotificationManager.class},
-                            (instance, method, args) -> {
-                                XLog.d("INotificationManager %s %s", method.getName(), Arrays.toString(args));
-                                if ("enqueueTextToast".equals(method.getName())) {
-                                    handleEnqueueTextToast(args);
-                                }
-                                return tryInvoke(am, method, args);
-                            });
-                }
-                return iInterface;
+            protected IInterface create() {
+                INotificationManager am = INotificationManager.Stub.asInterface(original);
+                return (IInterface) Proxy.newProxyInstance(ClassLoader.getSystemClassLoader(),
+                        new Class[]{INotificationManager.class},
+                        (instance, method, args) -> {
+                            HookLog.d(() -> "INotificationManager " + method.getName() + " " + Arrays.toString(args));
+                            if ("enqueueTextToast".equals(method.getName())) {
+                                handleEnqueueTextToast(args);
+                            }
+                            return tryInvoke(am, method, args);
+                        });
             }
         });
     }
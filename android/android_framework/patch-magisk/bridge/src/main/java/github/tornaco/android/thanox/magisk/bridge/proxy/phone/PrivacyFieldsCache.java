@@ -0,0 +1,182 @@
+package github.tornaco.android.thanox.magisk.bridge.proxy.phone;
+
+import android.os.RemoteException;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import github.tornaco.android.thanos.core.IThanos;
+import github.tornaco.android.thanos.core.app.ThanosManagerNative;
+import github.tornaco.android.thanos.core.secure.IPrivacyChangeListener;
+import github.tornaco.android.thanos.core.secure.IPrivacyManager;
+import github.tornaco.android.thanos.core.secure.field.Fields;
+import github.tornaco.android.thanos.core.util.GenerationCache;
+import github.tornaco.android.thanos.core.util.GenerationCache.Generation;
+import github.tornaco.android.thanox.magisk.bridge.proxy.ReportBatcher;
+
+/**
+ * Process local snapshot of the fields profile selected for a package, so telephony getters
+ * polled by the app are answered without asking thanox each time.
+ * <p>
+ * A snapshot is loaded at first use of a package, and dropped when server pushes a new
+ * generation through {@link IPrivacyChangeListener}, which happens when privacy enabled or
+ * any selected profile changes. Cheat records of getters served from the snapshot are sent
+ * to server in batches, through the oneway {@link IPrivacyManager#reportPrivacyCheats}.
+ * <p>
+ * If the server does not support the listener, every getter asks server as before.
+ */
+final class PrivacyFieldsCache {
+    private static final long REPORT_DELAY_MILLIS = 1000;
+    private static final int MAX_PENDING_REPORTS = 512;
+    // Drop all when exceeded, a process only runs a few packages in practice.
+    private static final int MAX_PROFILES = 256;
+
+    private static final class Cheat {
+        final String pkg;
+        final int op;
+        // Guarded by the batcher.
+        int count = 1;
+
+        Cheat(String pkg, int op) {
+            this.pkg = pkg;
+            this.op = op;
+        }
+    }
+
+    private static final class Profile {
+        // Null if nothing to cheat for this package.
+        final Fields fields;
+
+        Profile(Fields fields) {
+            this.fields = fields;
+        }
+    }
+
+    private final Object lock = new Object();
+    private final GenerationCache<String, Profile> cache = new GenerationCache<>("PrivacyFieldsCache", MAX_PROFILES);
+
+    private volatile IPrivacyManager service;
+
+    private final IPrivacyChangeListener listener = new IPrivacyChangeListener.Stub() {
+        @Override
+        public void onPrivacyChanged(long generation) {
+            cache.invalidate(generation);
+        }
+    };
+
+    private final ReportBatcher<Cheat> cheatReporter = new ReportBatcher<Cheat>("PrivacyCheats",
+            REPORT_DELAY_MILLIS, MAX_PENDING_REPORTS) {
+        @Override
+        protected boolean merge(Cheat queued, Cheat report) {
+            if (queued.op == report.op && queued.pkg.equals(report.pkg)) {
+                queued.count++;
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        protected void onReport(List<Cheat> batch) throws Exception {
+            reportCheats(batch);
+        }
+    };
+
+    /**
+     * @return Null if thanox is not installed.
+     */
+    IPrivacyManager getService() throws RemoteException {
+        IPrivacyManager priv = service;
+        if (priv != null) {
+            return priv;
+        }
+        synchronized (lock) {
+            if (service != null) {
+                return service;
+            }
+            IThanos thanos = ThanosManagerNative.getDefault();
+            if (thanos == null) {
+                return null;
+            }
+            IPrivacyManager newService = thanos.getPrivacyManager();
+            if (newService == null) {
+                return null;
+            }
+            cache.register(() -> newService.registerPrivacyChangeListener(listener));
+            service = newService;
+            return newService;
+        }
+    }
+
+    /**
+     * @return Fields to cheat the privacy op of this package, null if not cheated.
+     */
+    Fields getFields(IPrivacyManager priv, String pkg, int privacyOp) throws RemoteException {
+        Generation<String, Profile> g = cache.current();
+        if (g == null) {
+            return queryFields(priv, pkg, privacyOp);
+        }
+        Profile profile = g.get(pkg);
+        if (profile == null) {
+            profile = new Profile(loadFields(priv, pkg));
+            g.put(pkg, profile);
+        }
+        if (profile.fields != null) {
+            cheatReporter.report(new Cheat(pkg, privacyOp));
+        }
+        return profile.fields;
+    }
+
+    private static Fields queryFields(IPrivacyManager priv, String pkg, int privacyOp) throws RemoteException {
+        if (!priv.isPrivacyEnabled()) {
+            return null;
+        }
+        if (!priv.isPackageFieldsProfileSelected(pkg)) {
+            return null;
+        }
+        // Server records the cheat.
+        return priv.getSelectedFieldsProfileForPackage(pkg, privacyOp);
+    }
+
+    private static Fields loadFields(IPrivacyManager priv, String pkg) throws RemoteException {
+        if (!priv.isPrivacyEnabled()) {
+            return null;
+        }
+        // Load by id, getSelectedFieldsProfileForPackage records a cheat.
+        String profileId = priv.getSelectedFieldsProfileIdForPackage(pkg);
+        if (profileId == null) {
+            return null;
+        }
+        return priv.getFieldsProfileById(profileId);
+    }
+
+    private void reportCheats(List<Cheat> batch) throws RemoteException {
+        IPrivacyManager priv = service;
+        if (priv == null) {
+            return;
+        }
+        // Pkg -> (op -> count)
+        Map<String, Map<Integer, Integer>> counts = new LinkedHashMap<>();
+        for (Cheat cheat : batch) {
+            Map<Integer, Integer> opCounts = counts.get(cheat.pkg);
+            if (opCounts == null) {
+                opCounts = new LinkedHashMap<>();
+                counts.put(cheat.pkg, opCounts);
+            }
+            Integer count = opCounts.get(cheat.op);
+            opCounts.put(cheat.op, count == null ? cheat.count : count + cheat.count);
+        }
+        for (Map.Entry<String, Map<Integer, Integer>> e : counts.entrySet()) {
+            Map<Integer, Integer> opCounts = e.getValue();
+            int[] ops = new int[opCounts.size()];
+            int[] opCountArray = new int[opCounts.size()];
+            int i = 0;
+            for (Map.Entry<Integer, Integer> opCount : opCounts.entrySet()) {
+                ops[i] = opCount.getKey();
+                opCountArray[i] = opCount.getValue();
+                i++;
+            }
+            priv.reportPrivacyCheats(e.getKey(), ops, opCountArray);
+        }
+    }
+}
@@ -6,14 +6,14 @@ import android.telephony.TelephonyManager;
 
 import com.elvishew.xlog.XLog;
 
-import github.tornaco.android.thanos.core.IThanos;
-import github.tornaco.android.thanos.core.app.ThanosManagerNative;
 import github.tornaco.android.thanos.core.secure.IPrivacyManager;
 import github.tornaco.android.thanos.core.secure.PrivacyManager;
 import github.tornaco.android.thanos.core.secure.field.Fields;
 import github.tornaco.android.thanos.core.util.function.Function;
 
 public class TelephonyManagerProxyFactory {
+    // Shared by all proxies of this process.
+    private static final PrivacyFieldsCache FIELDS_CACHE = new PrivacyFieldsCache();
 
     public static TelephonyManager newProxy(Context context) {
         return new TelephonyManagerProxy(context);
@@ -183,30 +183,14 @@ public class TelephonyManagerProxyFactory {
                     return orElseValue;
                 }
 
-                IThanos thanos = ThanosManagerNative.getDefault();
-                if (thanos == null) {
-                    XLog.d("getHookFieldProfileOr, thanos == null");
-                    return orElseValue;
-                }
-                IPrivacyManager priv = thanos.getPrivacyManager();
+                IPrivacyManager priv = FIELDS_CACHE.getService();
                 if (priv == null) {
                     XLog.d("getHookFieldProfileOr, priv == null");
                     return orElseValue;
                 }
-                if (!priv.isPrivacyEnabled()) {
-                    XLog.d("getHookFieldProfileOr, !isPrivacyEnabled");
-                    return orElseValue;
-                }
-
-                boolean enabledUid = priv.isPackageFieldsProfileSelected(callPackageName);
-                if (!enabledUid) {
-                    XLog.d("getHookFieldProfileOr, !enabledUid");
-                    return orElseValue;
-                }
 
                 // Skip if not set.
-                Fields f = priv
-                        .getSelectedFieldsProfileForPackage(callPackageName, privacyOp);
+                Fields f = FIELDS_CACHE.getFields(priv, callPackageName, privacyOp);
                 if (f == null) {
                     XLog.d("getHookFieldProfileOr, selected f is null");
                     return orElseValue;
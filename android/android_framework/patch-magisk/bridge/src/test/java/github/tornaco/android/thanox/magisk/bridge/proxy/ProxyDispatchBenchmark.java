@@ -0,0 +1,140 @@
+package github.tornaco.android.thanox.magisk.bridge.proxy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+import util.ExceptionTransformedInvocationHandler;
+
+/**
+ * Per-call overhead of a binder interface proxy, for a hooked and an unhooked method.
+ * <p>
+ * Both handlers have the shape of ActivityManagerProxyProvider: nameChain compares method
+ * names like the proxies did before, table resolves the method through
+ * {@link MethodDispatchTable} and switches on the id. Both reach the original through
+ * tryInvoke, direct calls the original without a proxy as the floor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProxyDispatchBenchmark implements ExceptionTransformedInvocationHandler {
+
+    public interface Service {
+        int bindIsolatedService(int flags);
+
+        int startService(int flags);
+
+        int getContentProvider(int flags);
+
+        int getRunningAppProcesses(int flags);
+    }
+
+    private static final int BIND_ISOLATED_SERVICE = 1;
+    private static final int START_SERVICE = 2;
+    private static final int GET_CONTENT_PROVIDER = 3;
+
+    private static final MethodDispatchTable DISPATCH = new MethodDispatchTable()
+            .register("bindIsolatedService", BIND_ISOLATED_SERVICE)
+            .register("startService", START_SERVICE)
+            .register("getContentProvider", GET_CONTENT_PROVIDER);
+
+    private static final class Original implements Service {
+        @Override
+        public int bindIsolatedService(int flags) {
+            return -flags;
+        }
+
+        @Override
+        public int startService(int flags) {
+            return flags;
+        }
+
+        @Override
+        public int getContentProvider(int flags) {
+            return flags;
+        }
+
+        @Override
+        public int getRunningAppProcesses(int flags) {
+            return flags;
+        }
+    }
+
+    private final Service original = new Original();
+    private Service nameChain;
+    private Service table;
+    private int flags = 1;
+
+    @Setup
+    public void setup() {
+        nameChain = (Service) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Service.class},
+                (instance, method, args) -> {
+                    if ("bindIsolatedService".equals(method.getName())) {
+                        int res = (int) tryInvoke(original, method, args);
+                        return res < 0 ? 0 : res;
+                    }
+                    if ("startService".equals(method.getName())) {
+                        return tryInvoke(original, method, args);
+                    }
+                    if ("getContentProvider".equals(method.getName())) {
+                        return tryInvoke(original, method, args);
+                    }
+                    return tryInvoke(original, method, args);
+                });
+        table = (Service) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Service.class},
+                (instance, method, args) -> {
+                    int id = DISPATCH.idOf(method);
+                    if (id == MethodDispatchTable.PASS_THROUGH) {
+                        return tryInvoke(original, method, args);
+                    }
+                    switch (id) {
+                        case BIND_ISOLATED_SERVICE: {
+                            int res = (int) tryInvoke(original, method, args);
+                            return res < 0 ? 0 : res;
+                        }
+                        case START_SERVICE:
+                        case GET_CONTENT_PROVIDER:
+                        default:
+                            return tryInvoke(original, method, args);
+                    }
+                });
+    }
+
+    @Benchmark
+    public int hookedNameChain() {
+        return nameChain.bindIsolatedService(flags);
+    }
+
+    @Benchmark
+    public int hookedTable() {
+        return table.bindIsolatedService(flags);
+    }
+
+    @Benchmark
+    public int unhookedNameChain() {
+        return nameChain.getRunningAppProcesses(flags);
+    }
+
+    @Benchmark
+    public int unhookedTable() {
+        return table.getRunningAppProcesses(flags);
+    }
+
+    @Benchmark
+    public int unhookedDirect() {
+        return original.getRunningAppProcesses(flags);
+    }
+}
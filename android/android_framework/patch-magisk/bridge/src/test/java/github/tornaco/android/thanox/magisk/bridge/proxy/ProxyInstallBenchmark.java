@@ -0,0 +1,118 @@
+package github.tornaco.android.thanox.magisk.bridge.proxy;
+
+import android.app.IActivityManager;
+import android.app.IActivityTaskManager;
+import android.app.INotificationManager;
+import android.os.IBinder;
+import android.os.IInterface;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+import util.os.BinderProxy;
+
+/**
+ * Cost of installing the app process proxies of activity, activity_task and notification.
+ * <p>
+ * Install benchmarks run once in each fresh fork, as in a cold app process: installLazy is
+ * what AppProcessSystemServiceHookInstaller pays now, eager also builds every proxy interface
+ * up front, firstQueryEach is a process that uses all three services. The query benchmarks
+ * compare a warm queryLocalInterface before (a new proxy per query) and after (reused).
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProxyInstallBenchmark {
+
+    private static final Class<?>[] SERVICES = {
+            IActivityManager.class, IActivityTaskManager.class, INotificationManager.class
+    };
+
+    private IBinder original;
+    private IBinder installed;
+
+    @Setup
+    public void setup() {
+        original = (IBinder) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{IBinder.class},
+                (instance, method, args) -> method.getReturnType() == boolean.class ? false : null);
+        installed = install(IActivityManager.class);
+        installed.queryLocalInterface(IActivityManager.class.getName());
+    }
+
+    private static IInterface newProxy(Class<?> service) {
+        return (IInterface) Proxy.newProxyInstance(ProxyInstallBenchmark.class.getClassLoader(),
+                new Class[]{service}, (instance, method, args) -> null);
+    }
+
+    private IBinder install(Class<?> service) {
+        return new BinderProxy(original, new LazyLocalInterface(service.getName()) {
+            @Override
+            protected IInterface create() {
+                return newProxy(service);
+            }
+        });
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(10)
+    public void installLazy(Blackhole bh) {
+        for (Class<?> service : SERVICES) {
+            bh.consume(install(service));
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(10)
+    public void installEager(Blackhole bh) {
+        for (Class<?> service : SERVICES) {
+            bh.consume(install(service));
+            bh.consume(newProxy(service));
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(10)
+    public void installLazyThenFirstQueryEach(Blackhole bh) {
+        for (Class<?> service : SERVICES) {
+            bh.consume(install(service).queryLocalInterface(service.getName()));
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    @Fork(1)
+    public IInterface queryNewProxyEachTime() {
+        return newProxy(IActivityManager.class);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    @Fork(1)
+    public IInterface queryReused() {
+        return installed.queryLocalInterface(IActivityManager.class.getName());
+    }
+}
@@ -7,10 +7,51 @@ dependencies {
 
     compileOnly("org.projectlombok:lombok:1.18.34")
     annotationProcessor("org.projectlombok:lombok:1.18.34")
+    annotationProcessor(project(":annotation_processors:hook_log_check"))
 
     implementation(project(":android_framework:base"))
     implementation(project(":android_framework:services"))
     implementation(project(":android_framework:patch-common"))
     compileOnly(project(":android_framework:hidden-api"))
     implementation(project(":android_framework:dex-maker"))
-}
\ No newline at end of file
+}
+// Generate the proxy classes of the @PrebuiltProxy specs at build time, packaged into the jar,
+// so system_server only runs dx for a proxy whose framework class differs from the stubs.
+// Services classes not in the SDK jar are stubbed in hidden-api. To generate against a real
+// framework instead, pass its jars, e.g. services.jar converted to class files, by
+// -Pthanox.prebuiltProxy.frameworkJars=a.jar:b.jar, they come before the stubs.
+val prebuiltProxyFrameworkJars = (findProperty("thanox.prebuiltProxy.frameworkJars") as String?)
+    ?.split(File.pathSeparator)
+    ?.filter { it.isNotBlank() }
+    .orEmpty()
+val prebuiltProxyDir = layout.buildDirectory.dir("generated/prebuiltProxies")
+
+val generatePrebuiltProxies by tasks.registering(JavaExec::class) {
+    group = "dex"
+
+    // Carries the compile tasks as dependencies, not "classes", which includes processResources.
+    val classesDirs = sourceSets.main.get().output.classesDirs
+    inputs.files(classesDirs)
+    inputs.files(prebuiltProxyFrameworkJars)
+    outputs.dir(prebuiltProxyDir)
+
+    classpath = files(prebuiltProxyFrameworkJars, classesDirs, configurations.compileClasspath)
+    mainClass.set("com.android.dx.stock.PrebuiltProxyGenerator")
+    argumentProviders.add(CommandLineArgumentProvider {
+        listOf(prebuiltProxyDir.get().asFile.path) + classesDirs.files.map { it.path }
+    })
+    doFirst {
+        delete(prebuiltProxyDir)
+    }
+}
+
+// Packaged by the jar, as a resources dir of main it would make processResources, and so
+// "classes", depend on this task, which needs the classes.
+tasks.jar {
+    from(generatePrebuiltProxies)
+}
+
+// Fail on XLog.v/d calls building their message eagerly, see HookLogCheckPlugin.
+tasks.named<JavaCompile>("compileJava") {
+    options.compilerArgs.add("-Xplugin:HookLogCheck")
+}
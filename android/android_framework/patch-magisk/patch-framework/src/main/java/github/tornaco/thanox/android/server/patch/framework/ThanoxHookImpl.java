@@ -59,7 +59,7 @@ public class ThanoxHookImpl implements IThanoxHook {
 
     @Override
     public void installHooks(boolean isSystemServer) {
-        XLog.d("ThanoxHookImpl, installHooks...isSystemServer? " + isSystemServer);
+        XLog.d("ThanoxHookImpl, installHooks...isSystemServer? %s", isSystemServer);
         if (isSystemServer) {
             waitForSystemReady(new AbstractSafeR() {
                 @Override
@@ -6,10 +6,22 @@ import static github.tornaco.thanox.android.server.patch.framework.hooks.am.AppE
 import static github.tornaco.thanox.android.server.patch.framework.hooks.am.IFWHooks.installIFW;
 import static github.tornaco.thanox.android.server.patch.framework.hooks.app.usage.UsageStatsManagerInternalHooks.installUsageStatsService;
 
+import android.os.SystemClock;
+
+import com.android.dx.stock.BaseProxyFactory;
+import com.android.dx.stock.ProxyBuilder;
 import com.elvishew.xlog.XLog;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import github.tornaco.android.thanos.core.util.AbstractSafeR;
+
 import github.tornaco.android.thanos.services.patch.common.LocalServices;
 import github.tornaco.android.thanos.services.patch.common.am.AMSLifeCycleHelper;
+import github.tornaco.thanox.android.server.patch.framework.hooks.app.usage.UsageStatsManagerInternalHooks;
+import now.fortuitous.config.ServiceConfigs;
 
 public class AMSHooks {
 
@@ -31,6 +43,7 @@ public class AMSHooks {
                         }
 
                         attachActiveServices(ams);
+                        prepareProxyClasses(ams, classLoader);
                         installPackageManagerInternalHooks(ams, classLoader);
                         installIFW(ams, classLoader);
                         installAppExitInfoTracker(ams);
@@ -42,4 +55,33 @@ public class AMSHooks {
         }
     }
 
+    /**
+     * Generate the proxy classes of the hooks below in one dex, the hooks then find them generated.
+     * If this fails, each hook generates its own.
+     * <p>
+     * The dex is prebuilt from the {@code @PrebuiltProxy} specs of group "ams" of these hooks,
+     * keep them in sync.
+     */
+    private static void prepareProxyClasses(Object ams, ClassLoader classLoader) {
+        new AbstractSafeR() {
+            @Override
+            public void runSafety() throws Exception {
+                File dexCacheDir = BaseProxyFactory.dexCacheDir(ServiceConfigs.baseServerTmpDir());
+                List<ProxyBuilder<?>> builders = new ArrayList<>();
+                for (ProxyBuilder<?> builder : new ProxyBuilder<?>[]{
+                        AMSPackageInternalHooks.newProxyBuilderForAMS(ams, classLoader, dexCacheDir),
+                        IFWHooks.newProxyBuilderForAMS(ams, classLoader, dexCacheDir),
+                        UsageStatsManagerInternalHooks.newProxyBuilderForAMS(ams, classLoader, dexCacheDir)}) {
+                    if (builder != null) {
+                        builders.add(builder);
+                    }
+                }
+                long startNanos = SystemClock.elapsedRealtimeNanos();
+                ProxyBuilder.buildProxyClasses(builders);
+                XLog.i("AMSHooks prepareProxyClasses, %s classes in %sus",
+                        builders.size(), (SystemClock.elapsedRealtimeNanos() - startNanos) / 1000);
+            }
+        }.setName("AMSHooks prepareProxyClasses").run();
+    }
+
 }
\ No newline at end of file
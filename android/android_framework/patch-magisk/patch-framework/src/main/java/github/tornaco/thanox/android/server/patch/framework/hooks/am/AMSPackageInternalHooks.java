@@ -6,12 +6,13 @@ import android.content.pm.ResolveInfo;
 import android.content.pm.ServiceInfo;
 
 import com.android.dx.stock.BaseProxyFactory;
+import com.android.dx.stock.DelegatingInvocationHandler;
+import com.android.dx.stock.PrebuiltProxy;
 import com.android.dx.stock.ProxyBuilder;
 import com.elvishew.xlog.XLog;
 
 import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 
 import github.tornaco.android.thanos.core.util.AbstractSafeR;
@@ -28,6 +29,8 @@ import util.XposedHelpersExt;
  * <p>
  * So, here we proxy PackageManagerInternal and return null if the Service should not be start.
  */
+@PrebuiltProxy(className = "android.content.pm.PackageManagerInternal",
+        intercepted = "resolveService", group = "ams")
 public class AMSPackageInternalHooks {
 
     static void installPackageManagerInternalHooks(Object ams, ClassLoader classLoader) {
@@ -37,7 +40,7 @@ public class AMSPackageInternalHooks {
             public void runSafety() {
                 // PackageManagerInternal mPackageManagerInt;
                 // https://github.com/LineageOS/android_frameworks_base/blob/lineage-17.1/services/core/java/com/android/server/am/ActivityManagerService.java
-                Object mPackageManagerInt = XposedHelpersExt.callMethodWithPreferredNames(ams, new String[]{"getPackageManagerInternal", "getPackageManagerInternalLocked"});
+                Object mPackageManagerInt = getPackageManagerInternal(ams);
                 XLog.w("AMSPackageInternalHooks installPackageManagerInternalHooks, mPackageManagerInt: %s", mPackageManagerInt);
                 if (mPackageManagerInt == null) return;
                 Object proxy = new PackageManagerInternalProxyFactory(classLoader)
@@ -50,6 +53,28 @@ public class AMSPackageInternalHooks {
     }
 
 
+    private static Object getPackageManagerInternal(Object ams) {
+        return XposedHelpersExt.callMethodWithPreferredNames(ams, new String[]{"getPackageManagerInternal", "getPackageManagerInternalLocked"});
+    }
+
+    /**
+     * Builder of the proxy class for the PackageManagerInternal of ams, null if there is none.
+     */
+    static ProxyBuilder<?> newProxyBuilderForAMS(Object ams, ClassLoader classLoader, File dexCacheDir) {
+        Object mPackageManagerInt = getPackageManagerInternal(ams);
+        if (mPackageManagerInt == null) return null;
+        return newProxyBuilder(mPackageManagerInt, classLoader, dexCacheDir);
+    }
+
+    private static ProxyBuilder<?> newProxyBuilder(Object original, ClassLoader classLoader, File dexCacheDir) {
+        return ProxyBuilder.forClass(PackageManagerInternalHelper.INSTANCE.packageManagerInternalClass(classLoader))
+                .dexCache(dexCacheDir)
+                .withSharedClassLoader()
+                .markTrusted()
+                // Other methods are called on original by the proxy directly.
+                .delegateTo(original, "resolveService");
+    }
+
     @SuppressWarnings({"rawtypes", "Convert2Lambda"})
     private static class PackageManagerInternalProxyFactory extends BaseProxyFactory {
         private final ClassLoader systemServerClassLoader;
@@ -67,23 +92,20 @@ public class AMSPackageInternalHooks {
             if (original == null) return null;
             XLog.w("AMSPackageInternalHooks PackageManagerInternalProxyFactory#newProxy0, original: %s", original);
 
-            return ProxyBuilder.forClass(PackageManagerInternalHelper.INSTANCE.packageManagerInternalClass(systemServerClassLoader))
-                    .dexCache(dexCacheDir)
-                    .withSharedClassLoader()
-                    .markTrusted()
-                    .handler(new InvocationHandler() {
+            return newProxyBuilder(original, systemServerClassLoader, dexCacheDir)
+                    .handler(new DelegatingInvocationHandler(original) {
                         @Override
                         public Object invoke(Object proxy, Method method, Object[] args)
                                 throws Throwable {
-                            method.setAccessible(true);
+                            Object res = invokeDelegate(method, args);
                             if ("resolveService".equals(method.getName())) {
                                 try {
-                                    return handleCheckService(original, method, args);
+                                    return handleCheckService((ResolveInfo) res, args);
                                 } catch (Throwable e) {
                                     XLog.e("handleCheckService error", e);
                                 }
                             }
-                            return method.invoke(original, args);
+                            return res;
                         }
                     })
                     .build();
@@ -92,8 +114,7 @@ public class AMSPackageInternalHooks {
         //  public abstract ResolveInfo resolveService(Intent intent, String resolvedType,
         //           int flags, int userId, int callingUid);
         // resolveService [Intent { cmp=com.google.android.gms/.auth.GetToken }, null, 268436480, 0, 10153]
-        private ResolveInfo handleCheckService(Object original, Method method, Object[] args) throws Exception {
-            ResolveInfo resolveInfo = (ResolveInfo) method.invoke(original, args);
+        private ResolveInfo handleCheckService(ResolveInfo resolveInfo, Object[] args) {
             if (resolveInfo == null) {
                 XLog.v("AMSPackageInternalHooks handleCheckService, resolveInfo is null...");
                 return null;
@@ -0,0 +1,122 @@
+package github.tornaco.thanox.android.server.patch.framework.hooks.am;
+
+import android.content.Intent;
+import android.os.Process;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.os.UserHandle;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import github.tornaco.android.thanos.core.IPrinter;
+import github.tornaco.android.thanos.core.app.IBroadcastVerdictChangeListener;
+import github.tornaco.android.thanos.core.util.GenerationCache;
+import github.tornaco.android.thanos.core.util.GenerationCache.Generation;
+import github.tornaco.android.thanos.core.util.GenerationCache.Key;
+import now.fortuitous.BootStrap;
+
+/**
+ * System server local cache of thanox checkBroadcast answers for the IntentFirewall proxy, keyed by
+ * (action, receiver uid, caller uid class), so a broadcast fanning out to hundreds of receivers
+ * does not ask thanox for each receiver again and again.
+ * <p>
+ * Server bumps a generation whenever an answer may change, and pushes it to
+ * {@link IBroadcastVerdictChangeListener}, all answers of an older generation are dropped then.
+ * If the listener can not be registered, every check asks server as before.
+ * <p>
+ * Hit, miss and latency histograms are dumped by server through the listener.
+ */
+final class BroadcastVerdictCache {
+    // Drop all when exceeded.
+    private static final int MAX_ENTRIES = 4096;
+    // Server may not be ready for the early broadcasts.
+    private static final long REGISTER_RETRY_INTERVAL_MILLIS = 5000;
+
+    private final Object lock = new Object();
+    private final GenerationCache<Key, Boolean> cache = new GenerationCache<>("BroadcastVerdictCache", MAX_ENTRIES);
+
+    private volatile boolean registered;
+    private volatile long nextRegisterTime;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final LatencyHistogram hitLatency = new LatencyHistogram();
+    private final LatencyHistogram missLatency = new LatencyHistogram();
+
+    private final IBroadcastVerdictChangeListener listener = new IBroadcastVerdictChangeListener.Stub() {
+        @Override
+        public void onBroadcastVerdictChanged(long generation) {
+            cache.invalidate(generation);
+        }
+
+        @Override
+        public void dump(IPrinter p) throws RemoteException {
+            BroadcastVerdictCache.this.dump(p);
+        }
+    };
+
+    boolean checkBroadcast(Intent intent, int receiverUid, int callerUid) {
+        long startNanos = SystemClock.elapsedRealtimeNanos();
+        ensureRegistered();
+        Generation<Key, Boolean> g = cache.current();
+        String action = intent.getAction();
+        if (g == null || action == null) {
+            return queryVerdict(intent, receiverUid, callerUid);
+        }
+        Key key = Key.of(action, null, receiverUid, callerClassOf(callerUid));
+        Boolean cached = g.get(key);
+        if (cached != null) {
+            hitCount.incrementAndGet();
+            hitLatency.record(SystemClock.elapsedRealtimeNanos() - startNanos);
+            return cached;
+        }
+        boolean verdict = queryVerdict(intent, receiverUid, callerUid);
+        missCount.incrementAndGet();
+        missLatency.record(SystemClock.elapsedRealtimeNanos() - startNanos);
+        g.put(key, verdict);
+        return verdict;
+    }
+
+    private static boolean queryVerdict(Intent intent, int receiverUid, int callerUid) {
+        return BootStrap.THANOS_X
+                .getActivityManagerService()
+                .checkBroadcast(intent, receiverUid, callerUid);
+    }
+
+    // System uids are the same caller in every user, apps are told apart by uid.
+    private static int callerClassOf(int callerUid) {
+        int appId = UserHandle.getAppId(callerUid);
+        return appId < Process.FIRST_APPLICATION_UID ? appId : callerUid;
+    }
+
+    private void ensureRegistered() {
+        long now = SystemClock.elapsedRealtime();
+        if (registered || now < nextRegisterTime) {
+            return;
+        }
+        synchronized (lock) {
+            if (registered || now < nextRegisterTime) {
+                return;
+            }
+            registered = cache.register(() -> BootStrap.THANOS_X
+                    .getActivityManagerService()
+                    .registerBroadcastVerdictChangeListener(listener));
+            if (!registered) {
+                nextRegisterTime = now + REGISTER_RETRY_INTERVAL_MILLIS;
+            }
+        }
+    }
+
+    private void dump(IPrinter p) throws RemoteException {
+        Generation<Key, Boolean> g = cache.current();
+        long hits = hitCount.get();
+        long misses = missCount.get();
+        long total = hits + misses;
+        p.println("BroadcastVerdictCache: generation=" + (g == null ? "disabled" : g.value)
+                + ", entries=" + (g == null ? 0 : g.size())
+                + ", hit=" + hits + ", miss=" + misses
+                + ", hitRate=" + (total == 0 ? 0 : hits * 100 / total) + "%");
+        p.println("  hit latency: " + hitLatency.format());
+        p.println("  miss latency: " + missLatency.format());
+    }
+}
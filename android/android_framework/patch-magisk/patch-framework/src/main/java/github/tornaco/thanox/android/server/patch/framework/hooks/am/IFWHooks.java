@@ -8,21 +8,25 @@ import android.os.Handler;
 import android.os.UserHandle;
 
 import com.android.dx.stock.BaseProxyFactory;
+import com.android.dx.stock.DelegatingInvocationHandler;
+import com.android.dx.stock.PrebuiltProxy;
 import com.android.dx.stock.ProxyBuilder;
 import com.elvishew.xlog.XLog;
 
 import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 
 import github.tornaco.android.thanos.core.util.AbstractSafeR;
+import github.tornaco.android.thanos.core.util.HookLog;
 import now.fortuitous.BootStrap;
 import now.fortuitous.config.ServiceConfigs;
 import github.tornaco.android.thanos.services.patch.common.firewall.IFWHelper;
 import util.XposedHelpers;
 
+@PrebuiltProxy(className = "com.android.server.firewall.IntentFirewall",
+        intercepted = {"checkBroadcast", "checkStartActivity"}, group = "ams")
 class IFWHooks {
 
     static void installIFW(Object ams, ClassLoader classLoader) {
@@ -40,6 +44,24 @@ class IFWHooks {
     }
 
 
+    /**
+     * Builder of the proxy class for the IntentFirewall of ams, null if there is none.
+     */
+    static ProxyBuilder<?> newProxyBuilderForAMS(Object ams, ClassLoader classLoader, File dexCacheDir) {
+        Object ifw = XposedHelpers.getObjectField(ams, "mIntentFirewall");
+        if (ifw == null) return null;
+        return newProxyBuilder(ifw, classLoader, dexCacheDir);
+    }
+
+    private static ProxyBuilder<?> newProxyBuilder(Object ifw, ClassLoader classLoader, File dexCacheDir) {
+        return ProxyBuilder.forClass(IFWHelper.INSTANCE.ifwClass(classLoader))
+                .dexCache(dexCacheDir)
+                .withSharedClassLoader()
+                .markTrusted()
+                // Other methods are called on ifw by the proxy directly.
+                .delegateTo(ifw, "checkBroadcast", "checkStartActivity");
+    }
+
     private static class IFWProxyBuilder {
         @SuppressWarnings("unchecked")
         @Nullable
@@ -60,6 +82,7 @@ class IFWHooks {
             private final Object amsInterface;
             private final Handler handler;
             private final ClassLoader systemServerClassLoader;
+            private final BroadcastVerdictCache broadcastVerdictCache = new BroadcastVerdictCache();
 
             public IWFProxyFactory(Object amsInterface, Handler handler, ClassLoader systemServerClassLoader) {
                 this.amsInterface = amsInterface;
@@ -76,19 +99,15 @@ class IFWHooks {
                 if (local == null) return null;
                 XLog.i("IFWHooks IWFProxyFactory#newProxy0, local: %s", local);
 
-                return ProxyBuilder.forClass(IFWHelper.INSTANCE.ifwClass(systemServerClassLoader))
-                        .dexCache(dexCacheDir)
+                return newProxyBuilder(local, systemServerClassLoader, dexCacheDir)
                         // public IntentFirewall(AMSInterface ams, Handler handler)
                         .constructorArgTypes(IFWHelper.INSTANCE.amsInterfaceClass(systemServerClassLoader), Handler.class)
                         .constructorArgValues(amsInterface, handler)
-                        .withSharedClassLoader()
-                        .markTrusted()
-                        .handler(new InvocationHandler() {
+                        .handler(new DelegatingInvocationHandler(local) {
                             @Override
                             public Object invoke(Object proxy, Method method, Object[] args)
                                     throws Throwable {
-                                method.setAccessible(true);
-                                XLog.v("IFWHooks: %s %s", method.getName(), Arrays.toString(args));
+                                HookLog.v(() -> "IFWHooks: " + method.getName() + " " + Arrays.toString(args));
                                 try {
                                     if ("checkBroadcast".equals(method.getName())) {
                                         Boolean hookRes = handleCheckBroadcast(args);
@@ -107,7 +126,7 @@ class IFWHooks {
                                     XLog.e("IFWHooks IWFProxy error", e);
                                 }
 
-                                return method.invoke(local, args);
+                                return invokeDelegate(method, args);
                             }
                         })
                         .build();
@@ -118,10 +137,7 @@ class IFWHooks {
                 int recUid = (int) args[4];
                 Intent intent = (Intent) args[0];
                 if (intent == null) return null;
-                boolean res =
-                        BootStrap.THANOS_X
-                                .getActivityManagerService()
-                                .checkBroadcast(intent, recUid, callerUid);
+                boolean res = broadcastVerdictCache.checkBroadcast(intent, recUid, callerUid);
                 if (!res) {
                     return false;
                 }
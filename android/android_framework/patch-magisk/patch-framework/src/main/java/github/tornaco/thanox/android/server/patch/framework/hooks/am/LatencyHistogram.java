@@ -0,0 +1,42 @@
+package github.tornaco.thanox.android.server.patch.framework.hooks.am;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free latency histogram with power of two microsecond buckets.
+ */
+final class LatencyHistogram {
+    // Bucket 0 is < 1us, bucket i is < 2^i us, the last one takes the rest.
+    private static final int BUCKET_COUNT = 16;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    void record(long nanos) {
+        long micros = nanos / 1000;
+        int bucket = micros <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(micros);
+        buckets.incrementAndGet(Math.min(bucket, BUCKET_COUNT - 1));
+    }
+
+    /**
+     * Non empty buckets, like "<1us:12 <4us:3 >=16384us:1".
+     */
+    String format() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = buckets.get(i);
+            if (count == 0) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            if (i == BUCKET_COUNT - 1) {
+                sb.append(">=").append(1L << (i - 1));
+            } else {
+                sb.append('<').append(1L << i);
+            }
+            sb.append("us:").append(count);
+        }
+        return sb.length() == 0 ? "empty" : sb.toString();
+    }
+}
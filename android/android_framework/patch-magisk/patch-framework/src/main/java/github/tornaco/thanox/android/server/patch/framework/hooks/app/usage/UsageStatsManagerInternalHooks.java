@@ -5,22 +5,25 @@ import android.content.ComponentName;
 import android.content.Intent;
 
 import com.android.dx.stock.BaseProxyFactory;
+import com.android.dx.stock.DelegatingInvocationHandler;
+import com.android.dx.stock.PrebuiltProxy;
 import com.android.dx.stock.ProxyBuilder;
 import com.elvishew.xlog.XLog;
 
 import java.io.File;
-import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 
 import github.tornaco.android.thanos.core.util.AbstractSafeR;
+import github.tornaco.android.thanos.core.util.HookLog;
 import now.fortuitous.BootStrap;
 import now.fortuitous.config.ServiceConfigs;
 import github.tornaco.android.thanos.services.patch.common.usage.UsageStatsManagerInternalHelper;
-import util.ExceptionTransformedInvocationHandler;
 import util.XposedHelpers;
 import util.XposedHelpersExt;
 
+@PrebuiltProxy(className = "android.app.usage.UsageStatsManagerInternal",
+        intercepted = "reportEvent", group = "ams")
 public class UsageStatsManagerInternalHooks {
 
     public static void installUsageStatsService(Object ams, ClassLoader classLoader) {
@@ -44,6 +47,24 @@ public class UsageStatsManagerInternalHooks {
         XLog.i("UsageStatsManagerInternalHooks installed");
     }
 
+    /**
+     * Builder of the proxy class for the UsageStatsManagerInternal of ams, null if there is none.
+     */
+    public static ProxyBuilder<?> newProxyBuilderForAMS(Object ams, ClassLoader classLoader, File dexCacheDir) {
+        Object original = XposedHelpers.getObjectField(ams, "mUsageStatsService");
+        if (original == null) return null;
+        return newProxyBuilder(original, classLoader, dexCacheDir);
+    }
+
+    private static ProxyBuilder<?> newProxyBuilder(Object original, ClassLoader classLoader, File dexCacheDir) {
+        return ProxyBuilder.forClass(UsageStatsManagerInternalHelper.INSTANCE.usmInternalClass(classLoader))
+                .dexCache(dexCacheDir)
+                .withSharedClassLoader()
+                .markTrusted()
+                // Other methods are called on original by the proxy directly.
+                .delegateTo(original, "reportEvent");
+    }
+
     private static class UsageStatsManagerProxyFactory extends BaseProxyFactory<Object> {
         private final ClassLoader classLoader;
 
@@ -53,22 +74,17 @@ public class UsageStatsManagerInternalHooks {
 
         @Override
         protected Object onCreateProxy(Object original, File dexCacheDir) throws Exception {
-            return ProxyBuilder.forClass(UsageStatsManagerInternalHelper.INSTANCE.usmInternalClass(classLoader))
-                    .dexCache(dexCacheDir)
-                    .withSharedClassLoader()
-                    .markTrusted()
+            return newProxyBuilder(original, classLoader, dexCacheDir)
                     .handler(new UsageStatsManagerInvocationHandler(original))
                     .build();
         }
     }
 
-    private static class UsageStatsManagerInvocationHandler implements InvocationHandler,
-            ExceptionTransformedInvocationHandler {
-        // UsageStatsManagerInternal
-        private final Object original;
+    private static class UsageStatsManagerInvocationHandler extends DelegatingInvocationHandler {
 
+        // original: UsageStatsManagerInternal
         public UsageStatsManagerInvocationHandler(Object original) {
-            this.original = original;
+            super(original);
         }
 
         @Override
@@ -83,11 +99,11 @@ public class UsageStatsManagerInternalHooks {
                     ComponentName.class)) {
                 handleReportEvent(args);
             }
-            return tryInvoke(original, method, args);
+            return invokeDelegate(method, args);
         }
 
         private void handleReportEvent(Object[] args) {
-            XLog.d("UsageStatsManagerInternalHooks handleReportEvent %s", Arrays.toString(args));
+            HookLog.d(() -> "UsageStatsManagerInternalHooks handleReportEvent " + Arrays.toString(args));
             try {
                 int userId = (int) args[1];
                 int type = (int) args[2];
@@ -4,14 +4,10 @@ import com.elvishew.xlog.XLog;
 
 import java.util.List;
 
-import github.tornaco.android.thanos.core.n.NotificationRecord;
 import github.tornaco.android.thanos.core.util.obs.ListProxy;
 import now.fortuitous.BootStrap;
 import github.tornaco.android.thanos.services.patch.common.LocalServices;
 import github.tornaco.android.thanos.services.patch.common.notification.NMSHelper;
-import now.fortuitous.util.NotificationRecordUtils;
-import io.reactivex.Completable;
-import io.reactivex.schedulers.Schedulers;
 import util.Consumer;
 import util.XposedHelpers;
 
@@ -33,7 +29,7 @@ public class NotificationManagerServiceHooks {
                             // Install list proxy.
                             List mNotificationList =
                                     (List) XposedHelpers.getObjectField(service, "mNotificationList");
-                            XLog.d("mNotificationList: " + mNotificationList);
+                            XLog.d("mNotificationList: %s", mNotificationList);
                             @SuppressWarnings("unchecked")
                             List proxyList = NotificationRecordListProxy.newProxy(mNotificationList);
                             XposedHelpers.setObjectField(service, "mNotificationList", proxyList);
@@ -49,6 +45,8 @@ public class NotificationManagerServiceHooks {
 
 
     private static class NotificationRecordListProxy<T> extends ListProxy<T> {
+        // Called with NMS lock held, only queue the record here.
+        private static final NotificationRecordIngestion INGESTION = new NotificationRecordIngestion();
 
         NotificationRecordListProxy(List<T> orig) {
             super(orig);
@@ -61,34 +59,14 @@ public class NotificationManagerServiceHooks {
         @Override
         public void add(int i, T e) {
             super.add(i, e);
-            Completable.fromRunnable(
-                    () -> {
-                        NotificationRecord record = NotificationRecordUtils.fromNotificationRecord(e);
-                        if (record != null) {
-                            BootStrap.THANOS_X
-                                    .getNotificationManagerService()
-                                    .onAddNotificationRecord(record);
-                        }
-                    })
-                    .subscribeOn(Schedulers.trampoline())
-                    .subscribe();
+            INGESTION.onAdd(e);
         }
 
         @Override
         public boolean add(T e) {
             boolean added = super.add(e);
             if (added) {
-                Completable.fromRunnable(
-                        () -> {
-                            NotificationRecord record = NotificationRecordUtils.fromNotificationRecord(e);
-                            if (record != null) {
-                                BootStrap.THANOS_X
-                                        .getNotificationManagerService()
-                                        .onAddNotificationRecord(record);
-                            }
-                        })
-                        .subscribeOn(Schedulers.trampoline())
-                        .subscribe();
+                INGESTION.onAdd(e);
             }
             return added;
         }
@@ -97,17 +75,7 @@ public class NotificationManagerServiceHooks {
         public T remove(int i) {
             T removed = super.remove(i);
             if (removed != null) {
-                Completable.fromRunnable(
-                        () -> {
-                            NotificationRecord record = NotificationRecordUtils.fromNotificationRecord(removed);
-                            if (record != null) {
-                                BootStrap.THANOS_X
-                                        .getNotificationManagerService()
-                                        .onRemoveNotificationRecord(record);
-                            }
-                        })
-                        .subscribeOn(Schedulers.trampoline())
-                        .subscribe();
+                INGESTION.onRemove(removed);
             }
             return removed;
         }
@@ -116,17 +84,7 @@ public class NotificationManagerServiceHooks {
         public boolean remove(Object object) {
             boolean removed = super.remove(object);
             if (removed) {
-                Completable.fromRunnable(
-                        () -> {
-                            NotificationRecord record = NotificationRecordUtils.fromNotificationRecord(object);
-                            if (record != null) {
-                                BootStrap.THANOS_X
-                                        .getNotificationManagerService()
-                                        .onRemoveNotificationRecord(record);
-                            }
-                        })
-                        .subscribeOn(Schedulers.trampoline())
-                        .subscribe();
+                INGESTION.onRemove(object);
             }
             return removed;
         }
@@ -0,0 +1,190 @@
+package github.tornaco.thanox.android.server.patch.framework.hooks.content;
+
+import android.util.Log;
+
+import com.elvishew.xlog.XLog;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import github.tornaco.android.thanos.core.n.NotificationRecord;
+import now.fortuitous.BootStrap;
+import now.fortuitous.util.NotificationRecordUtils;
+
+/**
+ * Hand records added to or removed from NMS#mNotificationList to thanox off the NMS lock.
+ * <p>
+ * The list hook converts the framework record with {@link NotificationRecordUtils} while NMS still
+ * holds its lock, the live record must not be read without it, and only queues the result. A worker
+ * thread reports queued records in batches, in the order they happened.
+ * <p>
+ * At most {@link #CAPACITY} ops are pending. A remove whose add is still pending cancels that add,
+ * thanox never needs to see either. Other ops arriving while the queue is full are dropped and
+ * counted, a record is never worth blocking NMS.
+ */
+final class NotificationRecordIngestion {
+    private static final int CAPACITY = 1024;
+    private static final int MAX_BATCH = 64;
+
+    private static final class Op {
+        final boolean add;
+        final NotificationRecord record;
+
+        Op(boolean add, NotificationRecord record) {
+            this.add = add;
+            this.record = record;
+        }
+    }
+
+    private final Object queueLock = new Object();
+    // Guarded by queueLock.
+    private final ArrayDeque<Op> queue = new ArrayDeque<>();
+    // Notification key -> its latest pending add, guarded by queueLock.
+    private final Map<String, Op> pendingAdds = new HashMap<>();
+
+    // Since boot, guarded by queueLock.
+    private long droppedAdds;
+    private long droppedRemoves;
+    private long coalesced;
+    // Worker only.
+    private long loggedDropped;
+    private long processed;
+
+    private final Object lock = new Object();
+    private volatile boolean started;
+
+    /**
+     * @param nmsRecord com.android.server.notification.NotificationRecord, called with NMS lock held.
+     */
+    void onAdd(Object nmsRecord) {
+        NotificationRecord record = toRecord(nmsRecord);
+        if (record == null) {
+            return;
+        }
+        ensureWorker();
+        synchronized (queueLock) {
+            if (queue.size() >= CAPACITY) {
+                droppedAdds++;
+                return;
+            }
+            Op op = new Op(true, record);
+            queue.addLast(op);
+            if (record.getNotificationId() != null) {
+                pendingAdds.put(record.getNotificationId(), op);
+            }
+            queueLock.notify();
+        }
+    }
+
+    /**
+     * @param nmsRecord com.android.server.notification.NotificationRecord, called with NMS lock held.
+     */
+    void onRemove(Object nmsRecord) {
+        NotificationRecord record = toRecord(nmsRecord);
+        if (record == null) {
+            return;
+        }
+        ensureWorker();
+        synchronized (queueLock) {
+            Op pendingAdd = record.getNotificationId() == null ? null : pendingAdds.get(record.getNotificationId());
+            if (pendingAdd != null && pendingAdd.record.equals(record)) {
+                // Scan from the tail, a short lived notification was added recently.
+                queue.removeLastOccurrence(pendingAdd);
+                pendingAdds.remove(record.getNotificationId());
+                coalesced++;
+                return;
+            }
+            if (queue.size() >= CAPACITY) {
+                droppedRemoves++;
+                return;
+            }
+            queue.addLast(new Op(false, record));
+            queueLock.notify();
+        }
+    }
+
+    private static NotificationRecord toRecord(Object nmsRecord) {
+        try {
+            return NotificationRecordUtils.fromNotificationRecord(nmsRecord);
+        } catch (Throwable e) {
+            XLog.w("NotificationRecordIngestion, fail convert: " + Log.getStackTraceString(e));
+            return null;
+        }
+    }
+
+    private void ensureWorker() {
+        if (started) {
+            return;
+        }
+        synchronized (lock) {
+            if (started) {
+                return;
+            }
+            Thread worker = new Thread(this::loop, "thanox-nr-ingestion");
+            worker.setDaemon(true);
+            worker.start();
+            started = true;
+        }
+    }
+
+    @SuppressWarnings("InfiniteLoopStatement")
+    private void loop() {
+        List<Op> batch = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            try {
+                long dropped;
+                long droppedRemovesSnapshot;
+                long coalescedSnapshot;
+                synchronized (queueLock) {
+                    while (queue.isEmpty()) {
+                        queueLock.wait();
+                    }
+                    while (batch.size() < MAX_BATCH && !queue.isEmpty()) {
+                        Op op = queue.pollFirst();
+                        if (op.add && op.record.getNotificationId() != null) {
+                            // A remove from now on must reach thanox.
+                            pendingAdds.remove(op.record.getNotificationId(), op);
+                        }
+                        batch.add(op);
+                    }
+                    dropped = droppedAdds + droppedRemoves;
+                    droppedRemovesSnapshot = droppedRemoves;
+                    coalescedSnapshot = coalesced;
+                }
+                for (Op op : batch) {
+                    ingest(op);
+                }
+                processed += batch.size();
+                logDropped(dropped, droppedRemovesSnapshot, coalescedSnapshot);
+            } catch (InterruptedException e) {
+                // Noop.
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void ingest(Op op) {
+        try {
+            if (op.add) {
+                BootStrap.THANOS_X.getNotificationManagerService().onAddNotificationRecord(op.record);
+            } else {
+                BootStrap.THANOS_X.getNotificationManagerService().onRemoveNotificationRecord(op.record);
+            }
+        } catch (Throwable e) {
+            XLog.w("NotificationRecordIngestion, fail ingest: " + Log.getStackTraceString(e));
+        }
+    }
+
+    private void logDropped(long dropped, long droppedRemoves, long coalesced) {
+        if (dropped != loggedDropped) {
+            XLog.w("NotificationRecordIngestion, queue full, dropped %s adds and %s removes since boot, %s new,"
+                            + " coalesced %s, processed %s",
+                    dropped - droppedRemoves, droppedRemoves, dropped - loggedDropped, coalesced, processed);
+            loggedDropped = dropped;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package github.tornaco.hooklog.check;
+
+import com.sun.source.tree.BinaryTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.LambdaExpressionTree;
+import com.sun.source.tree.LiteralTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.ParenthesizedTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.Plugin;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreePathScanner;
+import com.sun.source.util.Trees;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+
+/**
+ * Javac plugin for hook modules, enabled with -Xplugin:HookLogCheck, fails the build on a
+ * XLog.v or XLog.d call that builds its message eagerly.
+ * <p>
+ * Verbose and debug logs are dropped in release, but their arguments are still evaluated, on hot
+ * paths of system server and every app process. Flagged in the arguments, wherever they span lines:
+ * <ul>
+ * <li>String concatenation, unless all of its operands are literals.</li>
+ * <li>Arrays.toString, Arrays.deepToString and String.format.</li>
+ * </ul>
+ * Lambda bodies and anonymous classes are not evaluated by the call, so not flagged. Pass format
+ * args, or use HookLog with a supplier.
+ */
+public class HookLogCheckPlugin implements Plugin {
+    public static final String NAME = "HookLogCheck";
+
+    private static final String XLOG = "com.elvishew.xlog.XLog";
+    private static final String MESSAGE =
+            "Eager %s in debug log of hook code, pass format args or use HookLog with a supplier.";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void init(JavacTask task, String... args) {
+        Trees trees = Trees.instance(task);
+        Set<TypeElement> checked = new HashSet<>();
+        task.addTaskListener(new TaskListener() {
+            @Override
+            public void finished(TaskEvent e) {
+                // Types are attributed after analyze, nested classes are scanned with their top level class.
+                if (e.getKind() != TaskEvent.Kind.ANALYZE || e.getTypeElement() == null
+                        || e.getTypeElement().getNestingKind() != NestingKind.TOP_LEVEL
+                        || !checked.add(e.getTypeElement())) {
+                    return;
+                }
+                TreePath path = trees.getPath(e.getTypeElement());
+                if (path != null) {
+                    new LogCallScanner(trees, e.getCompilationUnit()).scan(path, null);
+                }
+            }
+        });
+    }
+
+    private static final class LogCallScanner extends TreePathScanner<Void, Void> {
+        private final Trees trees;
+        private final CompilationUnitTree unit;
+
+        LogCallScanner(Trees trees, CompilationUnitTree unit) {
+            this.trees = trees;
+            this.unit = unit;
+        }
+
+        @Override
+        public Void visitMethodInvocation(MethodInvocationTree tree, Void unused) {
+            if (isDebugLog(tree)) {
+                for (ExpressionTree arg : tree.getArguments()) {
+                    new EagerArgScanner(trees, unit).scan(new TreePath(getCurrentPath(), arg), null);
+                }
+            }
+            return super.visitMethodInvocation(tree, unused);
+        }
+
+        private boolean isDebugLog(MethodInvocationTree tree) {
+            if (!(tree.getMethodSelect() instanceof MemberSelectTree)) {
+                return false;
+            }
+            MemberSelectTree select = (MemberSelectTree) tree.getMethodSelect();
+            String name = select.getIdentifier().toString();
+            if (!name.equals("v") && !name.equals("d")) {
+                return false;
+            }
+            Element method = trees.getElement(new TreePath(getCurrentPath(), select));
+            if (method != null && method.getEnclosingElement() instanceof TypeElement) {
+                return ((TypeElement) method.getEnclosingElement()).getQualifiedName().contentEquals(XLOG);
+            }
+            // Not resolved, go by the name.
+            return select.getExpression() instanceof IdentifierTree
+                    && ((IdentifierTree) select.getExpression()).getName().contentEquals("XLog");
+        }
+    }
+
+    private static final class EagerArgScanner extends TreePathScanner<Void, Void> {
+        private final Trees trees;
+        private final CompilationUnitTree unit;
+
+        EagerArgScanner(Trees trees, CompilationUnitTree unit) {
+            this.trees = trees;
+            this.unit = unit;
+        }
+
+        @Override
+        public Void visitLambdaExpression(LambdaExpressionTree tree, Void unused) {
+            return null;
+        }
+
+        @Override
+        public Void visitClass(ClassTree tree, Void unused) {
+            return null;
+        }
+
+        @Override
+        public Void visitBinary(BinaryTree tree, Void unused) {
+            if (tree.getKind() == Tree.Kind.PLUS && isString(tree) && !isConstant(tree)) {
+                report(tree, "string concatenation");
+                return null;
+            }
+            return super.visitBinary(tree, unused);
+        }
+
+        @Override
+        public Void visitMethodInvocation(MethodInvocationTree tree, Void unused) {
+            if (tree.getMethodSelect() instanceof MemberSelectTree) {
+                MemberSelectTree select = (MemberSelectTree) tree.getMethodSelect();
+                String owner = select.getExpression().toString();
+                String name = select.getIdentifier().toString();
+                if ((owner.equals("Arrays") || owner.equals("java.util.Arrays"))
+                        && (name.equals("toString") || name.equals("deepToString"))) {
+                    report(tree, "Arrays." + name);
+                    return null;
+                }
+                if ((owner.equals("String") || owner.equals("java.lang.String")) && name.equals("format")) {
+                    report(tree, "String.format");
+                    return null;
+                }
+            }
+            return super.visitMethodInvocation(tree, unused);
+        }
+
+        private boolean isString(BinaryTree tree) {
+            TypeMirror type = trees.getTypeMirror(getCurrentPath());
+            if (type != null && type.getKind() != TypeKind.ERROR) {
+                return type.toString().equals("java.lang.String");
+            }
+            // Not attributed, a string literal operand makes it a concatenation.
+            return hasStringLiteral(tree.getLeftOperand()) || hasStringLiteral(tree.getRightOperand());
+        }
+
+        private static boolean hasStringLiteral(Tree tree) {
+            return tree.getKind() == Tree.Kind.STRING_LITERAL
+                    || (tree.getKind() == Tree.Kind.PLUS && (hasStringLiteral(((BinaryTree) tree).getLeftOperand())
+                    || hasStringLiteral(((BinaryTree) tree).getRightOperand())));
+        }
+
+        private static boolean isConstant(Tree tree) {
+            if (tree.getKind() == Tree.Kind.PARENTHESIZED) {
+                return isConstant(((ParenthesizedTree) tree).getExpression());
+            }
+            if (tree.getKind() == Tree.Kind.PLUS) {
+                BinaryTree binary = (BinaryTree) tree;
+                return isConstant(binary.getLeftOperand()) && isConstant(binary.getRightOperand());
+            }
+            return tree instanceof LiteralTree;
+        }
+
+        private void report(Tree tree, String what) {
+            trees.printMessage(Diagnostic.Kind.ERROR, String.format(MESSAGE, what), tree, unit);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package github.tornaco.hooklog.check;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+public class HookLogCheckPluginTest {
+
+    private static final String XLOG = "package com.elvishew.xlog;\n"
+            + "public class XLog {\n"
+            + "    public static void v(String msg, Object... args) {}\n"
+            + "    public static void d(String msg, Object... args) {}\n"
+            + "    public static void i(String msg, Object... args) {}\n"
+            + "}\n";
+
+    private static final class Source extends SimpleJavaFileObject {
+        private final String code;
+
+        Source(String className, String code) {
+            super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.code = code;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return code;
+        }
+    }
+
+    private static List<String> compile(String body) {
+        String hook = "package hook;\n"
+                + "import com.elvishew.xlog.XLog;\n"
+                + "import java.util.Arrays;\n"
+                + "import java.util.function.Supplier;\n"
+                + "class Hook {\n"
+                + "    static final String TAG = \"Hook\";\n"
+                + "    void run(String name, Object[] args) {\n"
+                + body
+                + "    }\n"
+                + "}\n";
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        List<String> options = Arrays.asList(
+                "-classpath", System.getProperty("java.class.path"),
+                "-proc:none",
+                "-d", System.getProperty("java.io.tmpdir"),
+                "-Xplugin:" + HookLogCheckPlugin.NAME);
+        compiler.getTask(null, null, diagnostics, options, null,
+                Arrays.asList(new Source("com.elvishew.xlog.XLog", XLOG), new Source("hook.Hook", hook))).call();
+        List<String> errors = new ArrayList<>();
+        for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+            if (d.getKind() == Diagnostic.Kind.ERROR) {
+                errors.add(d.getMessage(Locale.ROOT));
+            }
+        }
+        return errors;
+    }
+
+    @Test
+    public void givenConcatenationOnNextLine_whenCompile_thenFlagged() {
+        List<String> errors = compile("        XLog.d(\"name: \"\n"
+                + "                + name);\n");
+
+        Assert.assertEquals(1, errors.size());
+        Assert.assertTrue(errors.get(0), errors.get(0).contains("string concatenation"));
+    }
+
+    @Test
+    public void givenConcatenationOfVariables_whenCompile_thenFlagged() {
+        List<String> errors = compile("        String prefix = TAG;\n"
+                + "        XLog.v(prefix + name);\n");
+
+        Assert.assertEquals(1, errors.size());
+    }
+
+    @Test
+    public void givenArraysToStringArg_whenCompile_thenFlagged() {
+        List<String> errors = compile("        XLog.v(\"args: %s\",\n"
+                + "                Arrays.toString(args));\n");
+
+        Assert.assertEquals(1, errors.size());
+        Assert.assertTrue(errors.get(0), errors.get(0).contains("Arrays.toString"));
+    }
+
+    @Test
+    public void givenFormatArgs_whenCompile_thenPassed() {
+        Assert.assertEquals(new ArrayList<String>(), compile("        XLog.d(\"name: %s, args: %s\", name, args);\n"));
+    }
+
+    @Test
+    public void givenLiteralsOnly_whenCompile_thenPassed() {
+        Assert.assertEquals(new ArrayList<String>(), compile("        XLog.d(\"a long message, \"\n"
+                + "                + \"split on two lines\");\n"));
+    }
+
+    @Test
+    public void givenConcatenationInSupplier_whenCompile_thenPassed() {
+        Assert.assertEquals(new ArrayList<String>(), compile("        Supplier<String> s = () -> \"args: \" + Arrays.toString(args);\n"
+                + "        XLog.d(\"%s\", (Supplier<String>) () -> \"args: \" + Arrays.toString(args));\n"));
+    }
+
+    @Test
+    public void givenInfoLog_whenCompile_thenPassed() {
+        Assert.assertEquals(new ArrayList<String>(), compile("        XLog.i(\"name: \" + name);\n"));
+    }
+
+    @Test
+    public void givenIntegerAddition_whenCompile_thenPassed() {
+        Assert.assertEquals(new ArrayList<String>(), compile("        int a = 1, b = 2;\n"
+                + "        XLog.d(\"sum: %s\", a + b);\n"));
+    }
+}
@@ -34,6 +34,7 @@ include(":annotation_processors:xposed_hook_annotation")
 include(":annotation_processors:xposed_hook_compiler")
 include(":annotation_processors:permission-requester-annotation")
 include(":annotation_processors:permission-requester-compiler")
+include(":annotation_processors:hook_log_check")
 
 // Modules.
 include(":modules:module_ops")